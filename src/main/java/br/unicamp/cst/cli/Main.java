@@ -1,20 +1,38 @@
 package br.unicamp.cst.cli;
 
+import br.unicamp.cst.cli.commands.CSTCache;
 import br.unicamp.cst.cli.commands.CSTInit;
+import br.unicamp.cst.cli.commands.CSTInspect;
+import br.unicamp.cst.cli.commands.CSTCompare;
+import br.unicamp.cst.cli.commands.CSTLoadTest;
+import br.unicamp.cst.cli.commands.CSTReplay;
 import br.unicamp.cst.cli.commands.CSTRun;
 import br.unicamp.cst.cli.commands.CSTSave;
 import br.unicamp.cst.cli.commands.CSTAdd;
+import br.unicamp.cst.cli.commands.CSTSync;
+import br.unicamp.cst.cli.commands.CSTTrace;
+import br.unicamp.cst.cli.commands.CSTValidate;
+import br.unicamp.cst.cli.util.Constants;
 import picocli.CommandLine.Command;
 import picocli.CommandLine;
 
 @Command(name = "cst",
         synopsisSubcommandLabel = "COMMAND",
         mixinStandardHelpOptions = true,
-        version = "CST CLI - Beta version 0.2",
+        version = "CST CLI - Beta version " + Constants.CLI_VERSION,
         subcommands = {
             CSTInit.class,
             CSTSave.class,
             CSTRun.class,
+            CSTAdd.class,
+            CSTSync.class,
+            CSTValidate.class,
+            CSTCache.class,
+            CSTInspect.class,
+            CSTTrace.class,
+            CSTReplay.class,
+            CSTLoadTest.class,
+            CSTCompare.class,
         })
 public class Main implements Runnable {
     @CommandLine.Spec
@@ -1,55 +1,172 @@
 package br.unicamp.cst.cli.commands;
 
+import br.unicamp.cst.cli.data.AgentMindEditor;
+import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.data.MemoryConfig;
+import br.unicamp.cst.cli.util.Constants;
+import br.unicamp.cst.cli.util.OutputSink;
+import br.unicamp.cst.cli.util.TemplatesBundle;
+import org.yaml.snakeyaml.error.YAMLException;
+import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
 
-import java.util.Arrays;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 import java.util.concurrent.Callable;
 
-@Command(name = "add", description = "Adds a new codelet to the project structure")
+@Command(name = "add", description = "Adds a new codelet or memory to the project structure")
 public class CSTAdd implements Callable<Integer> {
-    private static final String CODELET = "1";
-    private static final String MEMORY_OBJECT = "2";
-    private static final String MEMORY_CONTAINER = "3";
-    private static final List<String> VALID_OPTIONS = Arrays.asList(CODELET, MEMORY_OBJECT, MEMORY_CONTAINER);
+    private static final String CODELET = "codelet";
+    private static final String MEMORY = "memory";
+    static final String FUSED_PROJECT = "Codelets of this project are fused, run 'cst init --overwrite' after changing its config";
+
+    @Parameters(index = "0", paramLabel = "ELEMENT", description = "Element to add: codelet or memory")
+    String element;
+
+    @Option(names = {"-n", "--name"}, required = true, description = "Name of the new element")
+    String name;
+
+    @Option(names = {"-g", "--group"}, required = true, description = "Group of the new element")
+    String group;
+
+    @Option(names = {"--in"}, split = ",", description = "Codelet inputs (comma separated)")
+    List<String> in = new ArrayList<>();
+
+    @Option(names = {"--out"}, split = ",", description = "Codelet outputs (comma separated)")
+    List<String> out = new ArrayList<>();
+
+    @Option(names = {"--broadcast"}, split = ",", description = "Codelet broadcast outputs (comma separated)")
+    List<String> broadcast = new ArrayList<>();
+
+    @Option(names = {"-t", "--type"}, defaultValue = MemoryConfig.OBJECT_TYPE, description = "Memory type: object, container, counter or queue")
+    String type;
+
+    @Option(names = {"--capacity"}, description = "Slots of a queue memory, rounded up to a power of two (default: " + MemoryConfig.DEFAULT_CAPACITY + ")")
+    Integer capacity;
+
+    @Option(names = {"--overflow"}, description = "What a full queue memory does with a new message: block, drop-oldest or drop-newest (default: block)")
+    String overflow;
+
+    @Option(names = {"--skeleton"}, defaultValue = CodeletConfig.PLAIN_SKELETON,
+            description = "Codelet skeleton: plain, or cached to look memories up once instead of on every cycle (default: ${DEFAULT-VALUE})")
+    String skeleton;
+
+    @Option(names = {"--mutable-numbers"},
+            description = "Update helpers also write doubles and longs in place, without boxing. Readers of those outputs then get a MutableNumber, read it as a Number")
+    boolean mutableNumbers;
+
+    @Option(names = {"--fsync"}, description = "Forces changed files to disk before finishing")
+    boolean fsync;
+
+    @Spec
+    CommandSpec spec;
 
     @Override
     public Integer call() throws Exception {
-        String options = Ansi.AUTO.string("Select element to add\n"
-                + "   (1) Codelet\n"
-                + "   (2) Memory Object\n"
-                + "   (3) Memory Container\n"
-                + " @|bold Select an option (default 1) [1..3]:|@ ");
-        System.out.print(options);
-        Scanner input = new Scanner(System.in);
-        String inputOption = input.nextLine();
-        String selected = "1";
-        if (!inputOption.isBlank() && VALID_OPTIONS.contains(inputOption))
-            selected = inputOption;
-        switch (selected){
-            case CODELET:
-                String askName = Ansi.AUTO.string("Codelet Name: ");
-                System.out.print(askName);
-                String codeletName = input.nextLine();
-                while (codeletName.isBlank())
-                    System.out.println(Ansi.AUTO.string("@|red Codelet name cannot be empty|@"));
-                    codeletName = input.nextLine();
-                System.out.print("Codelet inputs (comma separated): ");
-                String codeletInputs = input.nextLine();
-                System.out.print("Codelet outputs (comma separated): ");
-                String codeletOutputs = input.nextLine();
-                System.out.print("Codelet broadcast outputs (comma separated): ");
-                String codeletBroadcasts = input.nextLine();
-
-                break;
-            case MEMORY_OBJECT:
-                break;
-            case MEMORY_CONTAINER:
-                break;
+        if (!CODELET.equals(element) && !MEMORY.equals(element))
+            throw new CommandLine.ParameterException(spec.commandLine(), "Element must be 'codelet' or 'memory'");
+        if (!CodeletConfig.isValidSkeleton(skeleton))
+            throw new CommandLine.ParameterException(spec.commandLine(), "--skeleton must be 'plain' or 'cached'");
 
+        File projectRoot = ConfigParser.findProjectRoot();
+        File agentMindFile = projectRoot == null ? null : ConfigParser.findAgentMindFile(projectRoot);
+        if (agentMindFile == null) {
+            System.out.println("No project found! Please execute this command on a folder with a CST project.");
+            return 1;
         }
+
+        AgentMindEditor editor = AgentMindEditor.open(agentMindFile);
+        OutputSink sink = new OutputSink(fsync);
+        try {
+            int result = CODELET.equals(element) ? addCodelet(editor, sink, projectRoot) : addMemory(editor, sink, projectRoot);
+            sink.flush();
+            return result;
+        } catch (YAMLException e) {
+            System.out.println(Ansi.AUTO.string("@|red " + e.getMessage() + "|@"));
+            return 1;
+        }
+    }
+
+    private Integer addCodelet(AgentMindEditor editor, OutputSink sink, File projectRoot) {
+        if (editor.hasCodelet(name)) {
+            System.out.println(Ansi.AUTO.string("@|red Codelet " + name + " already exists|@"));
+            return 1;
+        }
+        if (editor.usesFusion()) {
+            System.out.println(Ansi.AUTO.string("@|red " + FUSED_PROJECT + "|@"));
+            return 1;
+        }
+        CodeletConfig codelet = new CodeletConfig(name);
+        codelet.setGroup(group);
+        codelet.setIn(in);
+        codelet.setOut(out);
+        codelet.setBroadcast(broadcast);
+
+        List<String> missing = new ArrayList<>();
+        for (List<String> memories : List.of(in, out, broadcast)) {
+            memories.stream().filter(m -> !editor.hasMemory(m)).forEach(missing::add);
+        }
+        if (!missing.isEmpty()) {
+            System.out.println(Ansi.AUTO.string("@|red Unknown memories: " + String.join(", ", missing) + "|@"));
+            return 1;
+        }
+
+        String packageName = editor.getPackageName();
+        File path = new File(projectRoot + "/src/main/java/" + packageName.replace(".", "/") + "/codelets/" + group.toLowerCase());
+        File codeletFile = new File(path, name + ".java");
+        boolean cachedHandles = CodeletConfig.CACHED_SKELETON.equals(skeleton);
+        if (!codeletFile.exists()) {
+            sink.write(codeletFile.toPath(), codelet.generateCode(packageName, editor.usesMetrics(),
+                    cachedHandles, editor.usesTrace(), editor.getQueueMemories(), mutableNumbers));
+            if (codelet.writesMutableNumbers(mutableNumbers, editor.getQueueMemories()))
+                writeMemoryClass(sink, projectRoot, packageName, Constants.MUTABLE_NUMBER_CLASS);
+        }
+
+        editor.addCodelet(codelet);
+        editor.save(sink);
         return 0;
     }
+
+    private Integer addMemory(AgentMindEditor editor, OutputSink sink, File projectRoot) {
+        if (editor.hasMemory(name)) {
+            System.out.println(Ansi.AUTO.string("@|red Memory " + name + " already exists|@"));
+            return 1;
+        }
+        MemoryConfig memory = new MemoryConfig(name);
+        memory.setType(type.toLowerCase());
+        memory.setGroup(group);
+        if (capacity != null || overflow != null) {
+            if (!memory.isQueue())
+                throw new CommandLine.ParameterException(spec.commandLine(), "--capacity and --overflow only apply to queue memories");
+            if (capacity != null && capacity < 1)
+                throw new CommandLine.ParameterException(spec.commandLine(), "--capacity must be at least 1");
+            if (overflow != null && !MemoryConfig.isValidOverflow(overflow))
+                throw new CommandLine.ParameterException(spec.commandLine(), MemoryConfig.OVERFLOW_PROBLEM);
+            memory.setCapacity(capacity);
+            memory.setOverflow(overflow);
+        }
+
+        if (MemoryConfig.COUNTER_TYPE.equals(memory.getType()))
+            writeMemoryClass(sink, projectRoot, editor.getPackageName(), Constants.STRIPED_COUNTER_CLASS);
+        if (memory.isQueue())
+            writeMemoryClass(sink, projectRoot, editor.getPackageName(), Constants.RING_BUFFER_MEMORY_CLASS);
+        editor.addMemory(memory);
+        editor.save(sink);
+        return 0;
+    }
+
+    // Projects generated without counter or queue memories, or without number helpers, do not have the class yet
+    static void writeMemoryClass(OutputSink sink, File projectRoot, String packageName, String className) {
+        File classFile = new File(projectRoot + "/src/main/java/" + packageName.replace(".", "/") + "/memory/" + className + ".java");
+        if (!classFile.exists())
+            sink.write(classFile.toPath(), TemplatesBundle.getInstance().getTemplate(className + "Template")
+                    .replace("{{rootPackage}}", packageName));
+    }
 }
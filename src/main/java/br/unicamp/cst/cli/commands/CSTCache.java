@@ -0,0 +1,95 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.util.LocalRepository;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@Command(name = "cache", description = "Stores a CST release in the local repository used by offline builds")
+public class CSTCache implements Callable<Integer> {
+    private static final Pattern CST_JAR = Pattern.compile("cst-(\\d[\\w.\\-]*)\\.jar");
+
+    @Parameters(index = "0", arity = "0..1", paramLabel = "SOURCE", description = "CST jar, or directory containing it and its pom")
+    Path source;
+
+    @Option(names = {"--cst-version"}, description = "Version to store the jar as (default: taken from the jar name)")
+    String cstVersion;
+
+    @Option(names = {"--pom"}, description = "Pom of the jar (default: the .pom next to the jar)")
+    Path pom;
+
+    @Option(names = {"--list"}, description = "Lists the cached CST versions")
+    boolean list;
+
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public Integer call() throws Exception {
+        LocalRepository repository = LocalRepository.getInstance();
+        if (list) {
+            List<String> versions = repository.listVersions();
+            if (versions.isEmpty())
+                System.out.println("No CST versions cached in " + repository.getRoot());
+            versions.forEach(System.out::println);
+            return 0;
+        }
+        if (source == null)
+            throw new CommandLine.ParameterException(spec.commandLine(), "Missing SOURCE, a CST jar or a directory containing it");
+
+        Path jar = findJar(source);
+        if (jar == null) {
+            System.out.println(Ansi.AUTO.string("@|red No CST jar found in " + source + "|@"));
+            return 1;
+        }
+        String version = cstVersion;
+        if (version == null) {
+            Matcher matcher = CST_JAR.matcher(jar.getFileName().toString());
+            if (!matcher.matches())
+                throw new CommandLine.ParameterException(spec.commandLine(), "Could not infer the version from " + jar.getFileName() + ", use --cst-version");
+            version = matcher.group(1);
+        }
+
+        Path jarPom = pom != null ? pom : jar.resolveSibling(jar.getFileName().toString().replaceAll("\\.jar$", ".pom"));
+        // Without the pom Gradle would resolve CST offline but none of its dependencies
+        if (!Files.isRegularFile(jarPom)) {
+            System.out.println(Ansi.AUTO.string("@|red No pom found at " + jarPom + ".|@ "
+                    + "Offline builds take the dependencies of CST from it, download cst-" + version
+                    + ".pom with the jar or pass it with --pom."));
+            return 1;
+        }
+        repository.install(version, jar, jarPom);
+        System.out.println("Cached CST " + version + " in " + repository.getRoot());
+        return 0;
+    }
+
+    private Path findJar(Path source) throws IOException {
+        if (Files.isRegularFile(source))
+            return source;
+        if (!Files.isDirectory(source))
+            return null;
+        try (Stream<Path> files = Files.list(source)) {
+            List<Path> jars = files.filter(f -> {
+                        String name = f.getFileName().toString();
+                        // With a version only its jar matches, otherwise the directory must hold a single cst jar
+                        return cstVersion == null ? CST_JAR.matcher(name).matches() : name.equals("cst-" + cstVersion + ".jar");
+                    })
+                    .sorted()
+                    .toList();
+            return jars.size() == 1 ? jars.get(0) : null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.runtime.BenchComparison;
+import br.unicamp.cst.cli.runtime.BenchComparison.Row;
+import br.unicamp.cst.cli.runtime.BenchComparison.Verdict;
+import br.unicamp.cst.cli.runtime.BenchRecord;
+import br.unicamp.cst.cli.runtime.BenchRecord.Metric;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import static br.unicamp.cst.cli.commands.CSTTraceAnalyze.duration;
+
+@Command(name = "compare", description = "Compares two runs recorded by 'cst replay' or 'cst loadtest' in " + BenchRecord.DIRECTORY
+        + ", with a 95% confidence interval of the change of each codelet and metric")
+public class CSTCompare implements Callable<Integer> {
+    private static final String ROW_FORMAT = "%-24s %-14s %12s %12s %9s %21s  %s";
+
+    @Parameters(index = "0", paramLabel = "RUN_A", description = "Baseline run: its id or the start of it, latest, latest~N, or a record file")
+    String runA;
+
+    @Parameters(index = "1", paramLabel = "RUN_B", description = "Run compared with the baseline, given the same way")
+    String runB;
+
+    @Option(names = {"--threshold"}, defaultValue = "5", description = "Smallest change in percent reported as a regression or an improvement (default: ${DEFAULT-VALUE})")
+    double threshold;
+
+    @Option(names = {"--fail-on-regression"}, description = "Exits with an error when any metric regressed significantly")
+    boolean failOnRegression;
+
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public Integer call() throws Exception {
+        if (threshold < 0)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--threshold cannot be negative");
+        File projectRoot = ConfigParser.findProjectRoot();
+        if (projectRoot == null)
+            projectRoot = new File(System.getProperty("user.dir"));
+
+        BenchRecord a;
+        BenchRecord b;
+        try {
+            a = BenchRecord.find(projectRoot, runA);
+            b = BenchRecord.find(projectRoot, runB);
+        } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red " + e.getMessage() + "|@"));
+            return 1;
+        }
+        if (!a.getKind().equals(b.getKind())) {
+            System.out.println(Ansi.AUTO.string("@|red Cannot compare a " + a.getKind() + " run with a " + b.getKind() + " run|@"));
+            return 1;
+        }
+
+        describe("A", a);
+        describe("B", b);
+        if (!a.getConfigHash().equals(b.getConfigHash()))
+            System.out.println(Ansi.AUTO.string("@|yellow The agent config changed between the runs|@"));
+        if (!a.getHost().equals(b.getHost()) || !a.getJvm().equals(b.getJvm()))
+            System.out.println(Ansi.AUTO.string("@|yellow The runs did not use the same host or JVM, differences may not come from the code|@"));
+
+        List<Row> rows = BenchComparison.compare(a, b, threshold / 100);
+        System.out.println();
+        System.out.println(String.format(ROW_FORMAT, "subject", "metric", "A", "B", "change", "95% interval", ""));
+        int regressions = 0;
+        for (Row row : rows) {
+            String verdict = switch (row.getVerdict()) {
+                case REGRESSION -> "@|red regression|@";
+                case IMPROVEMENT -> "@|green improvement|@";
+                case NO_CHANGE -> "no change";
+                case INCONCLUSIVE -> "single value";
+            };
+            if (row.getVerdict() == Verdict.REGRESSION)
+                regressions++;
+            String interval = Double.isNaN(row.getLow()) ? "-" : "[" + percent(row.getLow()) + ", " + percent(row.getHigh()) + "]";
+            System.out.println(Ansi.AUTO.string(String.format(ROW_FORMAT, row.getSubject(), row.getMetric(), value(row.getA()),
+                    value(row.getB()), percent(row.getChange()), interval, verdict)));
+        }
+        Set<String> unmatched = BenchComparison.unmatched(a, b);
+        if (!unmatched.isEmpty())
+            System.out.println("Only in one of the runs: " + String.join(", ", unmatched));
+
+        if (regressions > 0 && failOnRegression) {
+            System.out.println(Ansi.AUTO.string("@|red " + regressions + " significant regressions|@"));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Saves a run recorded by another command and tells how to compare it, a failure only warns since
+     * the results were already printed
+     */
+    static void save(BenchRecord record, File projectRoot) {
+        try {
+            record.save(projectRoot);
+            System.out.println("Recorded run " + record.getId() + ", compare it with 'cst compare <earlier run> " + record.getId() + "'");
+        } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|yellow Could not record the run in " + BenchRecord.DIRECTORY + ": " + e.getMessage() + "|@"));
+        }
+    }
+
+    private static void describe(String label, BenchRecord record) {
+        System.out.println(label + ": " + record.getId() + " at revision " + record.getRevision() + ", config " + record.getConfigHash()
+                + ", " + record.getJvm().getOrDefault("version", "?") + " on " + record.getHost().getOrDefault("name", "?"));
+    }
+
+    private static String value(Metric metric) {
+        if (metric.getUnit().equals("ns"))
+            return duration((long) metric.getMean());
+        return String.format(Locale.ROOT, "%.1f %s", metric.getMean(), metric.getUnit());
+    }
+
+    private static String percent(double fraction) {
+        return String.format(Locale.ROOT, "%+.1f%%", fraction * 100);
+    }
+}
@@ -2,7 +2,15 @@ package br.unicamp.cst.cli.commands;
 
 import br.unicamp.cst.cli.data.AgentConfig;
 import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.CodeletFusion;
+import br.unicamp.cst.cli.data.ConfigConflictException;
+import br.unicamp.cst.cli.data.ConfigLoader;
 import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.data.ExecutionConfig;
+import br.unicamp.cst.cli.data.MemoryConfig;
+import br.unicamp.cst.cli.util.LocalRepository;
+import br.unicamp.cst.cli.util.OutputSink;
+import br.unicamp.cst.cli.util.ResourceCache;
 import br.unicamp.cst.cli.util.TemplatesBundle;
 
 import com.github.javaparser.ParseProblemException;
@@ -14,17 +22,12 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Help.Ansi;
 
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.LoaderOptions;
-import org.yaml.snakeyaml.constructor.Constructor;
-
 import java.io.*;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
@@ -50,6 +53,42 @@ public class CSTInit implements Callable<Integer> {
     @Option(names = {"-d", "--dir"}, description = "Root directory for project initialization")
     Path rootFolder;
 
+    @Option(names = {"--fsync"}, description = "Forces generated files to disk before finishing")
+    boolean fsync;
+
+    @Option(names = {"--offline"}, description = "Builds only with the CST release stored by 'cst cache'")
+    boolean offline;
+
+    @Option(names = {"--metrics"}, description = "Publishes codelet and memory metrics through JMX and a local Prometheus endpoint")
+    boolean metrics;
+
+    @Option(names = {"--trace"}, description = "Records the memory reads and writes of the codelets to a trace file for 'cst trace analyze'")
+    boolean trace;
+
+    @Option(names = {"--capture"}, description = "Records the values written to the input memories to a capture file for 'cst replay'")
+    boolean capture;
+
+    @Option(names = {"--checkpoint"}, description = "Saves the memory contents to a checkpoint file and restores them when the agent starts again")
+    boolean checkpoint;
+
+    @Option(names = {"--fuse"}, description = "Runs chains of codelets linked by memories only they use as a single codelet")
+    boolean fuse;
+
+    @Option(names = {"--lock-free"}, description = "Creates the memories written by a single codelet as memories their readers read without locking")
+    boolean lockFree;
+
+    @Option(names = {"--execution"}, paramLabel = "MODE",
+            description = "Runs the codelets on platform threads, virtual threads, a pool of N threads or in order at N ticks per second: platform, virtual, pool:N or tick[:N]")
+    String execution;
+
+    @Option(names = {"--skeleton"}, defaultValue = CodeletConfig.PLAIN_SKELETON,
+            description = "Codelet skeleton: plain, or cached to look memories up once instead of on every cycle (default: ${DEFAULT-VALUE})")
+    String skeleton;
+
+    @Option(names = {"--mutable-numbers"},
+            description = "Update helpers also write doubles and longs in place, without boxing. Readers of those outputs then get a MutableNumber, read it as a Number")
+    boolean mutableNumbers;
+
     @Spec
     CommandSpec spec;
 
@@ -57,17 +96,29 @@ public class CSTInit implements Callable<Integer> {
 
     private AgentConfig agentConfig;
     private AgentConfig currAgentConfig;
+    private OutputSink sink;
 
     @Override
     public Integer call() {
+        if (!CodeletConfig.isValidSkeleton(skeleton))
+            throw new CommandLine.ParameterException(spec.commandLine(), "--skeleton must be 'plain' or 'cached'");
+        if (execution != null && ExecutionConfig.parse(execution) == null)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--execution must be 'platform', 'virtual', 'pool:N' or 'tick[:N]'");
         try {
+            if (offline && !LocalRepository.getInstance().contains(cstVersion)) {
+                System.out.println(Ansi.AUTO.string("@|red CST " + cstVersion + " is not cached.|@ "
+                        + "Run 'cst cache <jar> --cst-version " + cstVersion + "' before using --offline."));
+                return 1;
+            }
             input = new Scanner(System.in);
+            sink = new OutputSink(fsync);
             checkCurrDir();
             getAgentConfig();
             getRequiredParams();
             createDirs();
             initGradle();
             generateCode();
+            sink.flush();
             return 0;
         } catch (YAMLException e) {
             System.out.println("Configuration File contains errors. Could not parse configurations.");
@@ -75,6 +126,9 @@ public class CSTInit implements Callable<Integer> {
             String errorLine = errorLines[1] + "\n" + errorLines[2] + "\n" + errorLines[3];
             System.out.println(errorLine);
             return 1;
+        } catch (ConfigConflictException e) {
+            System.out.println("Included configuration files conflict: " + e.getMessage());
+            return 1;
         } catch (Exception e) {
             System.out.println(e.toString());
             e.printStackTrace();
@@ -162,81 +216,61 @@ public class CSTInit implements Callable<Integer> {
         path.mkdirs();
         String mainTemplate = TemplatesBundle.getInstance().getTemplate("MainTemplate");
         mainTemplate = mainTemplate.replace("{{rootPackage}}", packageName);
-        FileWriter writer = new FileWriter(path + "/Main.java");
-        writer.write(mainTemplate);
-        writer.close();
+        sink.write(Path.of(path + "/Main.java"), mainTemplate);
 
     }
 
     private void initGradle() throws IOException {
+        ResourceCache cache = ResourceCache.getInstance();
         // Gradle wrappers
         String osName = System.getProperty("os.name").toLowerCase();
         if (osName.contains("nix") || osName.contains("nux") || osName.contains("aix")) {
-            InputStream gradle = CSTInit.class.getResourceAsStream("/gradle/gradlew");
-            OutputStream streamOut = new FileOutputStream(rootFolder + "/gradlew");
-            byte[] buffer = new byte[4096];
-            int bytes;
-            while ((bytes = gradle.read(buffer)) > 0) {
-                streamOut.write(buffer, 0, bytes);
-            }
-            gradle.close();
-            streamOut.close();
-            // TODO: test if system type
-            Runtime.getRuntime().exec("chmod u+x " + rootFolder + "/gradlew");
+            // Other users of a shared checkout run the wrapper too
+            cache.copy("/gradle/gradlew", rootFolder.resolve("gradlew"), PosixFilePermissions.fromString("rwxr-xr-x"));
         } else {
-            InputStream gradle = CSTInit.class.getResourceAsStream("/gradle/gradlew.bat");
-            OutputStream streamOut = new FileOutputStream(rootFolder + "/gradlew.bat");
-            byte[] buffer = new byte[4096];
-            int bytes;
-            while ((bytes = gradle.read(buffer)) > 0) {
-                streamOut.write(buffer, 0, bytes);
-            }
-            gradle.close();
-            streamOut.close();
+            cache.copy("/gradle/gradlew.bat", rootFolder.resolve("gradlew.bat"), PosixFilePermissions.fromString("rw-r--r--"));
         }
 
         // Gradle Wrapper
-        File path = new File(rootFolder + "/gradle/wrapper");
-        path.mkdirs();
-
-        InputStream gradleJar = CSTInit.class.getResourceAsStream("/gradle/gradle/wrapper/gradle-wrapper.jar");
-        OutputStream streamOut = new FileOutputStream(rootFolder + "/gradle/wrapper/gradle-wrapper.jar");
-        byte[] buffer = new byte[4096];
-        int bytes;
-        while ((bytes = gradleJar.read(buffer)) > 0) {
-            streamOut.write(buffer, 0, bytes);
-        }
-
-        InputStream gradleProperties = CSTInit.class.getResourceAsStream("/gradle/gradle/wrapper/gradle-wrapper.properties");
-        streamOut = new FileOutputStream(rootFolder + "/gradle/wrapper/gradle-wrapper.properties");
-        buffer = new byte[4096];
-        while ((bytes = gradleProperties.read(buffer)) > 0) {
-            streamOut.write(buffer, 0, bytes);
-        }
+        cache.link("/gradle/gradle/wrapper/gradle-wrapper.jar", rootFolder.resolve("gradle/wrapper/gradle-wrapper.jar"));
+        // Properties are copied, projects commonly change the distribution url
+        cache.copy("/gradle/gradle/wrapper/gradle-wrapper.properties", rootFolder.resolve("gradle/wrapper/gradle-wrapper.properties"),
+                PosixFilePermissions.fromString("rw-r--r--"));
 
         // settings
         String settingsTemplate = TemplatesBundle.getInstance().getTemplate("settings");
         settingsTemplate = settingsTemplate.replace("{{projectName}}", projectName);
         File settingsGradle = new File(rootFolder + "/settings.gradle");
         if (overwrite || !settingsGradle.exists()) {
-            FileWriter writer = new FileWriter(rootFolder + "/settings.gradle");
-            writer.write(settingsTemplate);
-            writer.close();
+            sink.write(settingsGradle.toPath(), settingsTemplate);
         }
 
         // build
         String buildTemplate = TemplatesBundle.getInstance().getTemplate("build");
         buildTemplate = buildTemplate.replace("{{cstVersion}}", cstVersion);
         buildTemplate = buildTemplate.replace("{{mainClass}}", packageName + ".Main");
+        LocalRepository repository = LocalRepository.getInstance();
+        if (repository.contains(cstVersion))
+            buildTemplate = buildTemplate.replace("{{localRepository}}", TAB + "// CST releases stored by 'cst cache', checked first\n"
+                    + TAB + "maven { url '" + repository.getRoot().toUri() + "' }");
+        else
+            buildTemplate = buildTemplate.replace("{{localRepository}}\n", "");
         File buildGradle = new File(rootFolder + "/build.gradle");
         if (overwrite || !buildGradle.exists()) {
-            FileWriter writer = new FileWriter(rootFolder + "/build.gradle");
-            writer.write(buildTemplate);
-            writer.close();
+            sink.write(buildGradle.toPath(), buildTemplate);
         }
     }
 
     private void generateCode() throws IOException {
+        // Kept codelets of a measured project extend MeasuredCodelet, new ones must do the same
+        if (!overwrite && currAgentConfig.isMetrics())
+            agentConfig.setMetrics(true);
+        if (!overwrite && currAgentConfig.isTrace())
+            agentConfig.setTrace(true);
+        Set<String> queues = agentConfig.getMemories().stream()
+                .filter(MemoryConfig::isQueue)
+                .map(MemoryConfig::getName)
+                .collect(Collectors.toSet());
         for (CodeletConfig codelet : agentConfig.getCodelets()) {
             boolean codeletCodeExists = currAgentConfig.getCodelets().stream()
                     .map(CodeletConfig::getName)
@@ -246,14 +280,12 @@ public class CSTInit implements Callable<Integer> {
                 path.mkdirs();
                 String codeletCode = "";
                 try {
-                    codeletCode = codelet.generateCode(packageName);
+                    codeletCode = codelet.generateCode(packageName, agentConfig.isMetrics(), isCachedSkeleton(), agentConfig.isTrace(), queues, mutableNumbers);
                 } catch (ParseProblemException e) {
                     //TODO: Handle this excpetion
                     throw new IOException();
                 }
-                FileWriter writer = new FileWriter(path + "/" + codelet.getName() + ".java");
-                writer.write(codeletCode);
-                writer.close();
+                sink.write(Path.of(path + "/" + codelet.getName() + ".java"), codeletCode);
             }
         }
 
@@ -262,22 +294,123 @@ public class CSTInit implements Callable<Integer> {
         if (!overwrite && currAgentConfig.getPackageName() != null)
             agentConfig = currAgentConfig.mergeWith(agentConfig);
         String agentMindCode = agentConfig.generateCode();
-        FileWriter writer = new FileWriter(path + "/AgentMind.java");
-        writer.write(agentMindCode);
-        writer.close();
+        sink.write(Path.of(path + "/AgentMind.java"), agentMindCode);
+
+        if (agentConfig.isMetrics())
+            generateMetrics();
+        if (agentConfig.isTrace())
+            generateTrace();
+        if (!agentConfig.getExecution().usesPlatformThreads())
+            generateExecution();
+        if (CodeletFusion.fuses(agentConfig))
+            generateFusion();
+        generateMemories();
+        if (agentConfig.getCodelets().stream().anyMatch(c -> c.writesMutableNumbers(mutableNumbers, queues)))
+            sink.write(rootFolder.resolve("src/main/java/" + packageName.replace(".", "/") + "/memory/MutableNumber.java"),
+                    TemplatesBundle.getInstance().getTemplate("MutableNumberTemplate").replace("{{rootPackage}}", packageName));
+        if (agentConfig.isCapture())
+            sink.write(rootFolder.resolve("src/main/java/" + packageName.replace(".", "/") + "/capture/InputCapture.java"),
+                    TemplatesBundle.getInstance().getTemplate("InputCaptureTemplate").replace("{{rootPackage}}", packageName));
+        if (agentConfig.isCheckpoint()) {
+            sink.write(rootFolder.resolve("src/main/java/" + packageName.replace(".", "/") + "/checkpoint/Checkpoint.java"),
+                    TemplatesBundle.getInstance().getTemplate("CheckpointTemplate").replace("{{rootPackage}}", packageName));
+            sink.write(rootFolder.resolve("src/test/java/" + packageName.replace(".", "/") + "/checkpoint/CheckpointTest.java"),
+                    TemplatesBundle.getInstance().getTemplate("CheckpointTestTemplate").replace("{{rootPackage}}", packageName));
+        }
+        if (isCachedSkeleton())
+            sink.write(rootFolder.resolve("src/test/java/" + packageName.replace(".", "/") + "/codelets/SkeletonOverheadTest.java"),
+                    TemplatesBundle.getInstance().getTemplate("SkeletonOverheadTestTemplate").replace("{{rootPackage}}", packageName));
     }
 
-    private void getAgentConfig() throws IOException {
-        String configInfo = "";
-        if (config != null) {
-            configInfo = Files.lines(config.toPath()).collect(Collectors.joining("\n"));
+    private boolean isCachedSkeleton() {
+        return CodeletConfig.CACHED_SKELETON.equals(skeleton);
+    }
+
+    private void generateMetrics() {
+        String packagePath = packageName.replace(".", "/");
+        TemplatesBundle templates = TemplatesBundle.getInstance();
+        sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/metrics/AgentMetrics.java"),
+                templates.getTemplate("AgentMetricsTemplate").replace("{{rootPackage}}", packageName));
+        sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/metrics/MeasuredCodelet.java"),
+                templates.getTemplate("MeasuredCodeletTemplate").replace("{{rootPackage}}", packageName));
+        sink.write(rootFolder.resolve("src/test/java/" + packagePath + "/metrics/MetricsOverheadTest.java"),
+                templates.getTemplate("MetricsOverheadTestTemplate").replace("{{rootPackage}}", packageName));
+    }
+
+    private void generateTrace() {
+        String packagePath = packageName.replace(".", "/");
+        TemplatesBundle templates = TemplatesBundle.getInstance();
+        sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/trace/MemoryTrace.java"),
+                templates.getTemplate("MemoryTraceTemplate").replace("{{rootPackage}}", packageName));
+        sink.write(rootFolder.resolve("src/test/java/" + packagePath + "/trace/TraceOverheadTest.java"),
+                templates.getTemplate("TraceOverheadTestTemplate").replace("{{rootPackage}}", packageName));
+    }
+
+    private void generateExecution() {
+        String packagePath = packageName.replace(".", "/");
+        TemplatesBundle templates = TemplatesBundle.getInstance();
+        if (agentConfig.getExecution().usesTicks()) {
+            sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/execution/TickScheduler.java"),
+                    templates.getTemplate("TickSchedulerTemplate").replace("{{rootPackage}}", packageName));
+            sink.write(rootFolder.resolve("src/test/java/" + packagePath + "/execution/TickSchedulerTest.java"),
+                    templates.getTemplate("TickSchedulerTestTemplate").replace("{{rootPackage}}", packageName));
+            return;
         }
-        if (configInfo.isBlank()) {
-            agentConfig = new AgentConfig();
-        } else {
-            Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, new LoaderOptions()));
-            agentConfig = yamlParser.load(configInfo);
+        sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/execution/CodeletExecutor.java"),
+                templates.getTemplate("CodeletExecutorTemplate").replace("{{rootPackage}}", packageName));
+        sink.write(rootFolder.resolve("src/test/java/" + packagePath + "/execution/ExecutionBenchmarkTest.java"),
+                templates.getTemplate("ExecutionBenchmarkTestTemplate").replace("{{rootPackage}}", packageName));
+    }
+
+    // Fused codelets are measured as a whole, their stages are not in the code rack
+    private void generateFusion() {
+        boolean measured = agentConfig.isMetrics();
+        String fusedCodelet = TemplatesBundle.getInstance().getTemplate("FusedCodeletTemplate")
+                .replace("{{measuredImport}}\n", measured ? "import " + packageName + ".metrics.MeasuredCodelet;\n" : "")
+                .replace("{{baseClass}}", measured ? "MeasuredCodelet" : "Codelet")
+                .replace("{{procMethod}}", measured ? "doProc" : "proc")
+                .replace("{{rootPackage}}", packageName);
+        sink.write(rootFolder.resolve("src/main/java/" + packageName.replace(".", "/") + "/fusion/FusedCodelet.java"), fusedCodelet);
+    }
+
+    // The benchmark compares both lock free memories, so a lock free agent gets both classes
+    private void generateMemories() {
+        String packagePath = packageName.replace(".", "/");
+        TemplatesBundle templates = TemplatesBundle.getInstance();
+        if (agentConfig.isLockFree()) {
+            sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/memory/SingleWriterMemory.java"),
+                    templates.getTemplate("SingleWriterMemoryTemplate").replace("{{rootPackage}}", packageName));
+            sink.write(rootFolder.resolve("src/test/java/" + packagePath + "/memory/MemoryReadBenchmarkTest.java"),
+                    templates.getTemplate("MemoryReadBenchmarkTestTemplate").replace("{{rootPackage}}", packageName));
         }
+        boolean counters = agentConfig.getMemories().stream().anyMatch(m -> MemoryConfig.COUNTER_TYPE.equals(m.getType()));
+        if (agentConfig.isLockFree() || counters)
+            sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/memory/StripedCounter.java"),
+                    templates.getTemplate("StripedCounterTemplate").replace("{{rootPackage}}", packageName));
+        if (agentConfig.getMemories().stream().anyMatch(MemoryConfig::isQueue)) {
+            sink.write(rootFolder.resolve("src/main/java/" + packagePath + "/memory/RingBufferMemory.java"),
+                    templates.getTemplate("RingBufferMemoryTemplate").replace("{{rootPackage}}", packageName));
+            sink.write(rootFolder.resolve("src/test/java/" + packagePath + "/memory/RingBufferMemoryTest.java"),
+                    templates.getTemplate("RingBufferMemoryTestTemplate").replace("{{rootPackage}}", packageName));
+        }
+    }
+
+    private void getAgentConfig() throws IOException {
+        agentConfig = ConfigLoader.load(config);
+        if (metrics)
+            agentConfig.setMetrics(true);
+        if (trace)
+            agentConfig.setTrace(true);
+        if (capture)
+            agentConfig.setCapture(true);
+        if (checkpoint)
+            agentConfig.setCheckpoint(true);
+        if (fuse)
+            agentConfig.setFusion(true);
+        if (lockFree)
+            agentConfig.setLockFree(true);
+        if (execution != null)
+            agentConfig.setExecution(ExecutionConfig.parse(execution));
     }
 
 }
@@ -0,0 +1,105 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigLoader;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.data.MemoryConfig;
+import br.unicamp.cst.cli.runtime.InspectorClient;
+import br.unicamp.cst.cli.runtime.InspectorClient.CodeletSample;
+import br.unicamp.cst.cli.runtime.InspectorClient.MemorySample;
+import br.unicamp.cst.cli.runtime.InspectorClient.Sample;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+@Command(name = "inspect", description = "Samples the codelets and memories of a running agent")
+public class CSTInspect implements Callable<Integer> {
+    private static final String ROW_FORMAT = "%s %-24s %-12s %-12s %s";
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    @Parameters(index = "0", paramLabel = "PID", description = "Process id of the agent JVM")
+    String pid;
+
+    @Option(names = {"-i", "--interval"}, defaultValue = "1000", description = "Milliseconds between samples (default: ${DEFAULT-VALUE})")
+    long interval;
+
+    @Option(names = {"-n", "--count"}, defaultValue = "0", description = "Number of samples to take, 0 samples until interrupted")
+    int count;
+
+    @Option(names = {"-f", "--file"}, description = "Config file with the agent codelets and memories (default: the project in the current directory)")
+    File config;
+
+    @Option(names = {"--to-string"}, description = "Shows memory contents of any type through toString(), which runs code of the inspected agent")
+    boolean callToString;
+
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public Integer call() throws Exception {
+        if (interval < 10)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--interval must be at least 10 milliseconds");
+        AgentConfig agentConfig = config != null ? ConfigLoader.load(config) : ConfigParser.parseProjectToConfig();
+
+        InspectorClient client;
+        try {
+            client = InspectorClient.attach(pid, interval, callToString);
+        } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red " + e.getMessage() + "|@"));
+            return 1;
+        }
+        try (client) {
+            Sample sample;
+            for (int taken = 0; (count == 0 || taken < count) && (sample = client.next()) != null; taken++)
+                print(sample, agentConfig);
+        }
+        return 0;
+    }
+
+    private void print(Sample sample, AgentConfig agentConfig) {
+        System.out.println(TIME.format(Instant.ofEpochMilli(sample.getTime())));
+        if (sample.getCodelets().isEmpty())
+            System.out.println("  no running codelets found");
+        System.out.println(String.format(ROW_FORMAT, " ", "codelet", "group", "activation", "time step / wiring"));
+        for (CodeletSample codelet : sample.getCodelets()) {
+            Optional<CodeletConfig> codeletConfig = agentConfig.findCodelet(codelet.getSimpleClassName());
+            String name = codeletConfig.map(CodeletConfig::getName).orElse(codelet.getSimpleClassName());
+            String group = codeletConfig.map(CodeletConfig::getGroup).orElse("-");
+            String wiring = codelet.getTimeStep() + " ms  " + names(codelet.getIn(), agentConfig) + " -> "
+                    + names(codelet.getOut(), agentConfig)
+                    + (codelet.getBroadcast().isEmpty() ? "" : " (broadcast " + names(codelet.getBroadcast(), agentConfig) + ")");
+            System.out.println(String.format(ROW_FORMAT, " ", name, group, codelet.getActivation(), wiring));
+        }
+        System.out.println(String.format(ROW_FORMAT, " ", "memory", "group", "type", "content"));
+        for (MemorySample memory : sample.getMemories()) {
+            Optional<MemoryConfig> memoryConfig = agentConfig.findMemory(memory.getName());
+            String name = memoryConfig.map(MemoryConfig::getName).orElse(memory.getName());
+            String group = memoryConfig.map(MemoryConfig::getGroup).orElse("-");
+            // Memories changed since the previous sample are marked
+            System.out.println(String.format(ROW_FORMAT, memory.isUpdated() ? "*" : " ", name, group, memory.getType(), memory.getContent()));
+        }
+        System.out.println();
+    }
+
+    private static String names(List<String> memories, AgentConfig agentConfig) {
+        if (memories.isEmpty())
+            return "-";
+        return String.join(", ", memories.stream()
+                .map(m -> agentConfig.findMemory(m).map(MemoryConfig::getName).orElse(m))
+                .toList());
+    }
+}
@@ -0,0 +1,225 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.BenchRecord;
+import br.unicamp.cst.cli.runtime.BenchRecord.Metric;
+import br.unicamp.cst.cli.runtime.InputReplay.Latency;
+import br.unicamp.cst.cli.runtime.LoadDriver;
+import br.unicamp.cst.cli.runtime.LoadDriver.Step;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Spec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static br.unicamp.cst.cli.commands.CSTTraceAnalyze.duration;
+
+@Command(name = "loadtest", description = "Writes inputs to the memories no codelet writes at increasing rates and reports how fast the memories no codelet reads react, up to the saturation of the agent")
+public class CSTLoadTest implements Callable<Integer> {
+    private static final String ROW_FORMAT = "%12s %12s %10s %10s %8s %10s %10s %10s %10s";
+    private static final String CODELET_FORMAT = "%-24s %10s %10s %10s %10s";
+    // Upper bounds of the histogram buckets, from 100 us to 10 s
+    private static final long[] BUCKETS = {100_000L, 1_000_000L, 10_000_000L, 50_000_000L, 100_000_000L,
+            250_000_000L, 500_000_000L, 1_000_000_000L, 10_000_000_000L};
+    private static final int BAR_WIDTH = 40;
+
+    @Option(names = {"--rate"}, defaultValue = "10", description = "Inputs per second of the first step (default: ${DEFAULT-VALUE})")
+    double rate;
+
+    @Option(names = {"--max-rate"}, defaultValue = "100000", description = "Inputs per second the ramp stops at if the agent is not saturated before (default: ${DEFAULT-VALUE})")
+    double maxRate;
+
+    @Option(names = {"--factor"}, defaultValue = "2", description = "How much the rate grows from one step to the next (default: ${DEFAULT-VALUE})")
+    double factor;
+
+    @Option(names = {"--step-seconds"}, defaultValue = "5", description = "How long each rate is held (default: ${DEFAULT-VALUE})")
+    int stepSeconds;
+
+    @Option(names = {"--values"}, paramLabel = "MEMORY=FILE",
+            description = "File with the values written to a source memory, one per line, used in turn. Numbers and true/false are written as such, other lines as strings. Sources without a file get the input sequence number, which times each input exactly when a sink passes it through")
+    Map<String, Path> valueFiles = new LinkedHashMap<>();
+
+    @Option(names = {"--no-record"}, description = "Does not keep the results in " + BenchRecord.DIRECTORY + " for 'cst compare'")
+    boolean noRecord;
+
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public Integer call() throws Exception {
+        if (rate <= 0 || maxRate < rate)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--rate must be positive and at most --max-rate");
+        if (factor <= 1)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--factor must be greater than 1");
+        if (stepSeconds < 1)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--step-seconds must be at least 1");
+
+        File projectRoot = ConfigParser.findProjectRoot();
+        AgentConfig agentConfig = ConfigParser.parseProjectToConfig();
+        if (projectRoot == null || agentConfig.getPackageName() == null) {
+            System.out.println("No project found! Please execute this command on a folder with a CST project.");
+            return 1;
+        }
+        List<String> sources = agentConfig.findSourceMemories();
+        List<String> sinks = agentConfig.findSinkMemories();
+        if (sources.isEmpty() || sinks.isEmpty()) {
+            System.out.println(Ansi.AUTO.string("@|red The agent needs memories no codelet writes and memories no codelet reads to be load tested, it has "
+                    + sources.size() + " and " + sinks.size() + "|@"));
+            return 1;
+        }
+        Map<String, List<Object>> values = new HashMap<>();
+        for (Map.Entry<String, Path> file : valueFiles.entrySet()) {
+            if (!sources.contains(file.getKey()))
+                throw new CommandLine.ParameterException(spec.commandLine(), file.getKey() + " is not a source memory, sources are "
+                        + String.join(", ", sources));
+            try {
+                values.put(file.getKey(), readValues(file.getValue()));
+            } catch (IOException e) {
+                System.out.println(Ansi.AUTO.string("@|red Could not read values " + file.getValue() + ": " + e.getMessage() + "|@"));
+                return 1;
+            }
+        }
+        System.out.println("Writing " + String.join(", ", sources) + " and timing " + String.join(", ", sinks));
+
+        AgentClasspath classpath = AgentClasspath.build(projectRoot, agentConfig.getPackageName());
+        // The agent under test must neither capture the synthetic inputs nor overwrite a checkpoint with them
+        Map<String, String> previous = new HashMap<>();
+        for (String property : List.of("cst.capture", "cst.checkpoint"))
+            previous.put(property, System.setProperty(property, "false"));
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        List<Step> steps = new ArrayList<>();
+        String saturation = null;
+        try {
+            LoadDriver driver = new LoadDriver(runtime.start("loadtest"), sources, sinks, values);
+            long stepNanos = TimeUnit.SECONDS.toNanos(stepSeconds);
+            System.out.println(String.format(ROW_FORMAT, "offered/s", "achieved/s", "answered", "superseded", "lost", "p50", "p90", "p99", "max"));
+            for (double stepRate = rate; stepRate <= maxRate && saturation == null; stepRate *= factor) {
+                Step step = driver.run(stepRate, stepNanos, stepNanos);
+                steps.add(step);
+                printStep(step);
+                saturation = saturation(step, steps.get(0));
+            }
+        } catch (IllegalStateException e) {
+            System.out.println(Ansi.AUTO.string("@|red Load test failed: " + e.getMessage() + "|@"));
+            return 1;
+        } finally {
+            runtime.shutDown();
+            previous.forEach((property, value) -> {
+                if (value == null)
+                    System.clearProperty(property);
+                else
+                    System.setProperty(property, value);
+            });
+        }
+
+        Step sustained = printSummary(steps, saturation);
+        if (!noRecord && sustained != null) {
+            BenchRecord record = BenchRecord.start("loadtest", projectRoot, agentConfig);
+            record.addResult(BenchRecord.AGENT_SUBJECT, "sustained rate", Metric.of("inputs/s", true, sustained.getRateSamples()));
+            record.addResult(BenchRecord.AGENT_SUBJECT, "latency", Metric.of(sustained.getLatency()));
+            for (Map.Entry<String, Latency> codelet : sustained.getCodelets().entrySet()) {
+                if (codelet.getValue().getCount() > 0)
+                    record.addResult(codelet.getKey(), "reaction", Metric.of(codelet.getValue()));
+            }
+            System.out.println();
+            CSTCompare.save(record, projectRoot);
+        }
+        return 0;
+    }
+
+    /**
+     * @return why the agent is saturated at this step, or null while it keeps up
+     */
+    private static String saturation(Step step, Step first) {
+        if (step.getAchievedRate() < 0.9 * step.getOfferedRate())
+            return "writing the inputs could not keep up with the offered rate";
+        if (step.getLost() > 0.1 * step.getSent())
+            return step.getLost() + " of " + step.getSent() + " inputs got no answer";
+        long baseline = first.getLatency().percentile(0.99);
+        long p99 = step.getLatency().percentile(0.99);
+        if (step != first && baseline > 0 && p99 > 10 * baseline)
+            return "p99 latency grew from " + duration(baseline) + " to " + duration(p99);
+        return null;
+    }
+
+    private static void printStep(Step step) {
+        Latency latency = step.getLatency();
+        System.out.println(String.format(Locale.ROOT, ROW_FORMAT, String.format(Locale.ROOT, "%.1f", step.getOfferedRate()),
+                String.format(Locale.ROOT, "%.1f", step.getAchievedRate()), latency.getCount(), step.getSuperseded(), step.getLost(),
+                duration(latency.percentile(0.5)), duration(latency.percentile(0.9)), duration(latency.percentile(0.99)),
+                duration(latency.percentile(1))));
+    }
+
+    /**
+     * @return the step with the highest rate the agent sustained, or null if it saturated at the first one
+     */
+    private Step printSummary(List<Step> steps, String saturation) {
+        System.out.println();
+        Step sustained = saturation == null ? steps.get(steps.size() - 1) : steps.size() > 1 ? steps.get(steps.size() - 2) : null;
+        if (saturation == null)
+            System.out.println("Not saturated up to " + String.format(Locale.ROOT, "%.1f", sustained.getOfferedRate()) + " inputs/s");
+        else
+            System.out.println(Ansi.AUTO.string("@|yellow Saturated at " + String.format(Locale.ROOT, "%.1f", steps.get(steps.size() - 1).getOfferedRate())
+                    + " inputs/s: " + saturation + "|@"));
+        if (sustained == null)
+            return null;
+        System.out.println("Highest sustained rate " + String.format(Locale.ROOT, "%.1f", sustained.getAchievedRate())
+                + " inputs/s, " + sustained.getSinkUpdates() + " sink updates, latency:");
+        int[] counts = sustained.getLatency().histogram(BUCKETS);
+        int most = Arrays.stream(counts).max().orElse(0);
+        for (int i = 0; i < counts.length; i++) {
+            String label = i < BUCKETS.length ? "<= " + duration(BUCKETS[i]) : "> " + duration(BUCKETS[BUCKETS.length - 1]);
+            int width = most == 0 ? 0 : (int) Math.round((double) counts[i] * BAR_WIDTH / most);
+            System.out.println(String.format(Locale.ROOT, "%12s %-" + BAR_WIDTH + "s %d", label, "#".repeat(width), counts[i]));
+        }
+        if (sustained.getCodelets().isEmpty())
+            return sustained;
+
+        System.out.println();
+        System.out.println("Time from an input to the change of each codelet's outputs:");
+        System.out.println(String.format(CODELET_FORMAT, "codelet", "reactions", "p50", "p99", "max"));
+        for (Map.Entry<String, Latency> codelet : sustained.getCodelets().entrySet()) {
+            Latency latency = codelet.getValue();
+            System.out.println(String.format(CODELET_FORMAT, codelet.getKey(), latency.getCount(), duration(latency.percentile(0.5)),
+                    duration(latency.percentile(0.99)), duration(latency.percentile(1))));
+        }
+        return sustained;
+    }
+
+    static List<Object> readValues(Path file) throws IOException {
+        List<Object> values = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            String value = line.strip();
+            if (value.isEmpty())
+                continue;
+            if (value.equals("true") || value.equals("false")) {
+                values.add(Boolean.parseBoolean(value));
+                continue;
+            }
+            try {
+                values.add(Long.parseLong(value));
+            } catch (NumberFormatException notLong) {
+                try {
+                    values.add(Double.parseDouble(value));
+                } catch (NumberFormatException notDouble) {
+                    values.add(value);
+                }
+            }
+        }
+        if (values.isEmpty())
+            throw new IOException("no values in the file");
+        return values;
+    }
+}
@@ -0,0 +1,128 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+import br.unicamp.cst.cli.runtime.BenchRecord;
+import br.unicamp.cst.cli.runtime.BenchRecord.Metric;
+import br.unicamp.cst.cli.runtime.CaptureFile;
+import br.unicamp.cst.cli.runtime.InputReplay;
+import br.unicamp.cst.cli.runtime.InputReplay.Latency;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import static br.unicamp.cst.cli.commands.CSTTraceAnalyze.duration;
+
+@Command(name = "replay", description = "Feeds the inputs captured by an agent created with 'cst init --capture' to the current project and reports codelet latency")
+public class CSTReplay implements Callable<Integer> {
+    private static final String ROW_FORMAT = "%-24s %-9s %9s %10s %10s %10s %10s";
+
+    @Parameters(index = "0", paramLabel = "FILE", description = "Capture file written by the agent")
+    Path file;
+
+    @Option(names = {"--max-speed"}, description = "Applies every input as soon as the codelets are done with the previous one, instead of at the recorded times")
+    boolean maxSpeed;
+
+    @Option(names = {"--no-record"}, description = "Does not keep the results in " + BenchRecord.DIRECTORY + " for 'cst compare'")
+    boolean noRecord;
+
+    @Override
+    public Integer call() throws Exception {
+        CaptureFile capture;
+        try {
+            capture = CaptureFile.read(file);
+        } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red Could not read capture " + file + ": " + e.getMessage() + "|@"));
+            return 1;
+        }
+
+        File projectRoot = ConfigParser.findProjectRoot();
+        AgentConfig agentConfig = ConfigParser.parseProjectToConfig();
+        if (projectRoot == null || agentConfig.getPackageName() == null) {
+            System.out.println("No project found! Please execute this command on a folder with a CST project.");
+            return 1;
+        }
+        if (capture.isTruncated())
+            System.out.println(Ansi.AUTO.string("@|yellow The capture ends in the middle of an input, the agent did not close it|@"));
+
+        AgentClasspath classpath = AgentClasspath.build(projectRoot, agentConfig.getPackageName());
+        Set<String> triggeredOnChange = agentConfig.getCodelets().stream()
+                .filter(CodeletConfig::isTriggeredOnChange)
+                .map(CodeletConfig::getName)
+                .collect(Collectors.toSet());
+        // The replayed agent must not capture the inputs it is fed
+        String captureProperty = System.setProperty("cst.capture", "false");
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        InputReplay.Result result;
+        try {
+            AgentInstance instance = runtime.start("replay");
+            result = new InputReplay(instance, triggeredOnChange).replay(capture, !maxSpeed);
+        } catch (IllegalStateException | IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red Replay failed: " + e.getMessage() + "|@"));
+            return 1;
+        } finally {
+            runtime.shutDown();
+            if (captureProperty == null)
+                System.clearProperty("cst.capture");
+            else
+                System.setProperty("cst.capture", captureProperty);
+        }
+
+        printResult(capture, result, triggeredOnChange);
+        if (!noRecord)
+            record(projectRoot, agentConfig, result);
+        return 0;
+    }
+
+    private void record(File projectRoot, AgentConfig agentConfig, InputReplay.Result result) {
+        // Replays at the recorded times and at maximum speed do not measure the same thing
+        BenchRecord record = BenchRecord.start(maxSpeed ? "replay-max-speed" : "replay", projectRoot, agentConfig);
+        record.addResult(BenchRecord.AGENT_SUBJECT, "throughput", Metric.of("inputs/s", true, result.getRateSamples()));
+        for (Map.Entry<String, Latency> codelet : result.getCodelets().entrySet())
+            record.addResult(codelet.getKey(), "latency", Metric.of(codelet.getValue()));
+        System.out.println();
+        CSTCompare.save(record, projectRoot);
+    }
+
+    private void printResult(CaptureFile capture, InputReplay.Result result, Set<String> triggeredOnChange) {
+        System.out.println("Replayed " + result.getReplayed() + " inputs captured from " + capture.getAgentName()
+                + " over " + duration(capture.getSpanNanos()) + " in " + duration(result.getElapsedNanos()) + ", "
+                + String.format(Locale.ROOT, "%.1f", result.getUpdatesPerSecond()) + " inputs/s"
+                + (maxSpeed ? " at maximum speed" : " at recorded speed"));
+        if (!maxSpeed && result.getMaxLagNanos() > 0)
+            System.out.println("Inputs were applied up to " + duration(result.getMaxLagNanos()) + " behind the recorded times");
+        if (!result.getUnknownMemories().isEmpty())
+            System.out.println(Ansi.AUTO.string("@|yellow Skipped the inputs of memories the project no longer has: "
+                    + String.join(", ", result.getUnknownMemories()) + "|@"));
+        if (result.getCodelets().isEmpty())
+            return;
+
+        System.out.println();
+        System.out.println(String.format(ROW_FORMAT, "codelet", "trigger", "runs", "mean", "p50", "p99", "max"));
+        boolean observers = false;
+        for (Map.Entry<String, Latency> codelet : result.getCodelets().entrySet()) {
+            Latency latency = codelet.getValue();
+            boolean onChange = triggeredOnChange.contains(codelet.getKey());
+            observers |= onChange;
+            System.out.println(String.format(ROW_FORMAT, codelet.getKey(), onChange ? "onChange*" : "periodic",
+                    latency.getCount(), duration(latency.mean()), duration(latency.percentile(0.5)),
+                    duration(latency.percentile(0.99)), duration(latency.percentile(1))));
+        }
+        if (observers)
+            System.out.println("* timed with the input update that runs them, other codelets triggered by the same input included");
+    }
+}
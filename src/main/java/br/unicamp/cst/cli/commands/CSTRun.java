@@ -1,17 +1,52 @@
 package br.unicamp.cst.cli.commands;
 
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+import br.unicamp.cst.cli.runtime.HotReloader;
+import br.unicamp.cst.cli.runtime.InstanceMonitor;
 import picocli.CommandLine;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStreamReader;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 @CommandLine.Command(name = "run", description = "Executes current project")
 public class CSTRun implements Callable<Integer> {
 
+    @CommandLine.Option(names = {"--hot"}, description = "Runs the agent inside the CLI and reloads codelets when their sources change")
+    boolean hot;
+
+    @CommandLine.Option(names = {"--instances"}, paramLabel = "N", description = "Runs N isolated agent instances inside the CLI and reports their resource use. "
+            + "Cycles are only counted by projects generated with --metrics, virtual threads are not counted")
+    Integer instances;
+
+    @CommandLine.Option(names = {"--duration"}, defaultValue = "0", description = "Seconds to run the instances, 0 runs until interrupted")
+    long duration;
+
+    @CommandLine.Option(names = {"--report-interval"}, defaultValue = "5", description = "Seconds between instance reports")
+    long reportInterval;
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
     @Override
     public Integer call() throws Exception {
+        if (instances != null && instances < 1)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--instances must be at least 1");
+        if (duration < 0)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--duration must be 0 or more seconds");
+        if (reportInterval < 1)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--report-interval must be at least 1 second");
+        if (hot && instances != null && instances > 1)
+            throw new CommandLine.ParameterException(spec.commandLine(), "--hot runs a single instance");
+        if (hot || instances != null)
+            return runInProcess();
+
         // Get root dir. Traverse up if necessary, until find gradlew
         File currDir = new File(System.getProperty("user.dir"));
 
@@ -30,4 +65,40 @@ public class CSTRun implements Callable<Integer> {
         }
         return 0;
     }
+
+    private Integer runInProcess() throws Exception {
+        File projectRoot = ConfigParser.findProjectRoot();
+        AgentConfig agentConfig = ConfigParser.parseProjectToConfig();
+        if (projectRoot == null || agentConfig.getPackageName() == null) {
+            System.out.println("No project found! Please execute this command on a folder with a CST project.");
+            return 1;
+        }
+
+        AgentClasspath classpath = AgentClasspath.build(projectRoot, agentConfig.getPackageName());
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        Runtime.getRuntime().addShutdownHook(new Thread(runtime::shutDown));
+        if (hot) {
+            AgentInstance instance = runtime.start("agent");
+            new HotReloader(classpath, instance).watch();
+            return 0;
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 1; i <= instances; i++)
+            runtime.start("agent-" + i);
+        System.out.println("Started " + instances + " instance(s) in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+
+        InstanceMonitor monitor = new InstanceMonitor(runtime);
+        monitor.nameThreads();
+        monitor.report();
+        long deadline = duration > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(duration) : Long.MAX_VALUE;
+        while (System.nanoTime() < deadline) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            Thread.sleep(Math.max(1, Math.min(TimeUnit.SECONDS.toMillis(reportInterval), remaining)));
+            System.out.println();
+            monitor.report().forEach(System.out::println);
+        }
+        runtime.shutDown();
+        return 0;
+    }
 }
@@ -1,30 +1,65 @@
 package br.unicamp.cst.cli.commands;
 
 import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.BinaryConfigFormat;
 import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.util.OutputSink;
+import picocli.CommandLine;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Spec;
+import picocli.CommandLine.Model.CommandSpec;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 @Command(name = "save", description = "Save current project as YAML template")
 public class CSTSave implements Callable<Integer> {
+    private static final String FORMAT_YAML = "yaml";
+    private static final String FORMAT_BINARY = "bin";
 
     @Option(names = {"--out", "-o"}, description = "Output file to write YAML template")
     File output;
 
+    @Option(names = {"--format"}, defaultValue = "yaml", description = "Output format: yaml or bin")
+    String format;
+
+    @Option(names = {"--check-wiring"}, description = "Compares the memories accessed by codelet sources with the AgentMind wiring")
+    boolean checkWiring;
+
+    @Option(names = {"--unfuse"}, description = "Saves fused codelets as separate codelets, without fusion")
+    boolean unfuse;
+
+    @Spec
+    CommandSpec spec;
+
     @Override
     public Integer call() throws Exception{
+        if (!FORMAT_YAML.equals(format) && !FORMAT_BINARY.equals(format))
+            throw new CommandLine.ParameterException(spec.commandLine(), "Format must be 'yaml' or 'bin'");
+        if (FORMAT_BINARY.equals(format) && output == null)
+            throw new CommandLine.ParameterException(spec.commandLine(), "Binary format requires an output file (--out)");
+
         AgentConfig agentConfig = ConfigParser.parseProjectToConfig();
+        if (unfuse)
+            agentConfig.setFusion(false);
 
-        if (output == null) {
+        OutputSink sink = new OutputSink();
+        if (FORMAT_BINARY.equals(format)) {
+            sink.write(output.toPath(), BinaryConfigFormat.encode(agentConfig));
+        } else if (output == null) {
             System.out.println(agentConfig.toYaml());
         } else {
-            FileWriter writer = new FileWriter(output);
-            writer.write(agentConfig.toYaml());
-            writer.close();
+            sink.write(output.toPath(), agentConfig.toYaml());
+        }
+        sink.flush();
+
+        if (checkWiring) {
+            List<String> mismatches = ConfigParser.checkCodeletWiring(agentConfig);
+            mismatches.forEach(System.err::println);
+            if (!mismatches.isEmpty())
+                return 1;
         }
 
         return 0;
@@ -0,0 +1,135 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.data.*;
+import br.unicamp.cst.cli.util.Constants;
+import br.unicamp.cst.cli.util.OutputSink;
+import org.yaml.snakeyaml.error.YAMLException;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Spec;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+@Command(name = "sync", description = "Applies the changes of a YAML config to the existing project code")
+public class CSTSync implements Callable<Integer> {
+
+    @Option(names = {"-f", "--file"}, required = true, description = "Config file with the desired agent structure")
+    File config;
+
+    @Option(names = {"--check"}, description = "Only reports differences, exits with 1 if the project is out of sync")
+    boolean check;
+
+    @Option(names = {"--skeleton"}, defaultValue = CodeletConfig.PLAIN_SKELETON,
+            description = "Skeleton of added codelets: plain, or cached to look memories up once instead of on every cycle (default: ${DEFAULT-VALUE})")
+    String skeleton;
+
+    @Option(names = {"--mutable-numbers"},
+            description = "Update helpers of added codelets also write doubles and longs in place, without boxing. Readers of those outputs then get a MutableNumber, read it as a Number")
+    boolean mutableNumbers;
+
+    @Option(names = {"--fsync"}, description = "Forces changed files to disk before finishing")
+    boolean fsync;
+
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public Integer call() throws Exception {
+        if (!CodeletConfig.isValidSkeleton(skeleton))
+            throw new CommandLine.ParameterException(spec.commandLine(), "--skeleton must be 'plain' or 'cached'");
+        File projectRoot = ConfigParser.findProjectRoot();
+        File agentMindFile = projectRoot == null ? null : ConfigParser.findAgentMindFile(projectRoot);
+        if (agentMindFile == null) {
+            System.out.println("No project found! Please execute this command on a folder with a CST project.");
+            return 1;
+        }
+
+        AgentConfig targetConfig;
+        try {
+            targetConfig = ConfigLoader.load(config);
+        } catch (YAMLException e) {
+            System.out.println("Configuration File contains errors. Could not parse configurations.");
+            return 1;
+        } catch (ConfigConflictException e) {
+            System.out.println("Included configuration files conflict: " + e.getMessage());
+            return 1;
+        }
+        AgentConfig currentConfig = ConfigParser.parseProjectToConfig();
+        ConfigDiff diff = ConfigDiff.between(currentConfig, targetConfig);
+        if (diff.isEmpty()) {
+            System.out.println("Project is in sync with " + config.getName());
+            return 0;
+        }
+        diff.describe().forEach(System.out::println);
+        if (check) {
+            System.out.println(Ansi.AUTO.string("@|red Project is out of sync with " + config.getName() + "|@"));
+            return 1;
+        }
+        // Features are generated through the whole project, the structural changes are still applied
+        String regenerate = diff.getChangedFeatures().isEmpty() ? null : "Sync cannot change "
+                + String.join(", ", diff.getChangedFeatures()) + ", run 'cst init --overwrite' to regenerate the project";
+
+        AgentMindEditor editor = AgentMindEditor.open(agentMindFile);
+        boolean codeletsChange = !diff.getRemovedCodelets().isEmpty() || !diff.getRewiredCodelets().isEmpty()
+                || !diff.getAddedCodelets().isEmpty();
+        if (codeletsChange && editor.usesFusion()) {
+            System.out.println(Ansi.AUTO.string("@|red " + CSTAdd.FUSED_PROJECT + "|@"));
+            return 1;
+        }
+        OutputSink sink = new OutputSink(fsync);
+        // Removals first, so renamed elements do not clash with their old variables
+        for (CodeletConfig codelet : diff.getRemovedCodelets())
+            editor.removeCodelet(codelet.getName());
+        for (MemoryConfig memory : diff.getRemovedMemories())
+            editor.removeMemory(memory.getName());
+        for (MemoryConfig memory : diff.getChangedMemories())
+            editor.changeMemory(memory);
+        for (MemoryConfig memory : diff.getAddedMemories())
+            editor.addMemory(memory);
+        if (Stream.concat(diff.getChangedMemories().stream(), diff.getAddedMemories().stream())
+                .anyMatch(memory -> MemoryConfig.COUNTER_TYPE.equals(memory.getType())))
+            CSTAdd.writeMemoryClass(sink, projectRoot, editor.getPackageName(), Constants.STRIPED_COUNTER_CLASS);
+        if (Stream.concat(diff.getChangedMemories().stream(), diff.getAddedMemories().stream()).anyMatch(MemoryConfig::isQueue))
+            CSTAdd.writeMemoryClass(sink, projectRoot, editor.getPackageName(), Constants.RING_BUFFER_MEMORY_CLASS);
+        for (CodeletConfig codelet : diff.getRewiredCodelets())
+            editor.rewireCodelet(codelet);
+        Set<String> queues = editor.getQueueMemories();
+        for (CodeletConfig codelet : diff.getAddedCodelets()) {
+            generateCodelet(sink, projectRoot, editor.getPackageName(), codelet, editor.usesMetrics(),
+                    CodeletConfig.CACHED_SKELETON.equals(skeleton), editor.usesTrace(), queues);
+            editor.addCodelet(codelet);
+        }
+        // Whether a queue has a single producer depends on the wiring, which may have changed above
+        if (codeletsChange || !diff.getChangedMemories().isEmpty() || !diff.getAddedMemories().isEmpty()) {
+            Set<String> singleProducers = targetConfig.findSingleProducerQueues();
+            for (MemoryConfig memory : targetConfig.getMemories()) {
+                if (memory.isQueue())
+                    editor.changeMemory(memory, singleProducers.contains(memory.getName()));
+            }
+        }
+        editor.save(sink);
+        sink.flush();
+        if (regenerate != null) {
+            System.out.println(Ansi.AUTO.string("@|red " + regenerate + "|@"));
+            return 1;
+        }
+        return 0;
+    }
+
+    private void generateCodelet(OutputSink sink, File projectRoot, String packageName, CodeletConfig codelet,
+                                 boolean measured, boolean cachedHandles, boolean traced, Set<String> queues) {
+        File path = new File(projectRoot + "/src/main/java/" + packageName.replace(".", "/") + "/codelets/" + codelet.getGroup().toLowerCase());
+        File codeletFile = new File(path, codelet.getName() + ".java");
+        if (codeletFile.exists())
+            return;
+        sink.write(codeletFile.toPath(), codelet.generateCode(packageName, measured, cachedHandles, traced, queues, mutableNumbers));
+        if (codelet.writesMutableNumbers(mutableNumbers, queues))
+            CSTAdd.writeMemoryClass(sink, projectRoot, packageName, Constants.MUTABLE_NUMBER_CLASS);
+    }
+}
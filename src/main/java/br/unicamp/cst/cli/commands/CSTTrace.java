@@ -0,0 +1,22 @@
+package br.unicamp.cst.cli.commands;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Spec;
+
+@Command(name = "trace",
+        synopsisSubcommandLabel = "COMMAND",
+        description = "Works with the memory access traces of agents created with 'cst init --trace'",
+        subcommands = {
+            CSTTraceAnalyze.class,
+        })
+public class CSTTrace implements Runnable {
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public void run() {
+        throw new CommandLine.ParameterException(spec.commandLine(), "Missing required subcommand");
+    }
+}
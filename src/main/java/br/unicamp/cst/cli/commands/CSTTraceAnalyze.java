@@ -0,0 +1,76 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.runtime.TraceFile;
+import br.unicamp.cst.cli.runtime.TraceFile.MemoryStatistics;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+@Command(name = "analyze", description = "Prints per memory latency, staleness and throughput of a memory access trace")
+public class CSTTraceAnalyze implements Callable<Integer> {
+    private static final String ROW_FORMAT = "%-24s %9s %9s %10s %10s %10s %10s %10s %10s %7s";
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    @Parameters(index = "0", paramLabel = "FILE", description = "Trace file written by the agent")
+    Path file;
+
+    @Override
+    public Integer call() {
+        TraceFile trace;
+        try {
+            trace = TraceFile.read(file);
+        } catch (IOException e) {
+            System.out.println(Ansi.AUTO.string("@|red Could not read trace " + file + ": " + e.getMessage() + "|@"));
+            return 1;
+        }
+
+        System.out.println("Trace started " + TIME.format(Instant.ofEpochMilli(trace.getStartMillis())) + ", "
+                + trace.getAccesses().size() + " accesses by " + trace.getThreads().size() + " threads over "
+                + duration(trace.getSpanNanos()));
+        if (trace.getOverwritten() > 0)
+            System.out.println(trace.getOverwritten() + " older accesses were overwritten, only the last "
+                    + duration(trace.getSpanNanos()) + " are analyzed");
+        if (trace.getUnrecordedThreads() > 0)
+            System.out.println(Ansi.AUTO.string("@|yellow " + trace.getUnrecordedThreads()
+                    + " threads had no slot and were not recorded, raise -Dcst.trace.slots|@"));
+
+        List<MemoryStatistics> memories = trace.memoryStatistics();
+        if (memories.isEmpty()) {
+            System.out.println("No memory accesses recorded");
+            return 0;
+        }
+        System.out.println();
+        System.out.println(String.format(ROW_FORMAT, "memory", "reads", "writes", "reads/s", "writes/s",
+                "lat p50", "lat p99", "stale p50", "stale max", "unread"));
+        for (MemoryStatistics memory : memories) {
+            System.out.println(String.format(ROW_FORMAT, memory.getName(), memory.getReads(), memory.getWrites(),
+                    String.format(Locale.ROOT, "%.1f", memory.getReadsPerSecond()),
+                    String.format(Locale.ROOT, "%.1f", memory.getWritesPerSecond()),
+                    duration(memory.latencyPercentile(0.5)), duration(memory.latencyPercentile(0.99)),
+                    duration(memory.stalenessPercentile(0.5)), duration(memory.stalenessPercentile(1)),
+                    memory.getUnreadWrites()));
+        }
+        return 0;
+    }
+
+    static String duration(long nanos) {
+        if (nanos < 0)
+            return "-";
+        if (nanos < 1_000)
+            return nanos + " ns";
+        if (nanos < 1_000_000)
+            return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+        if (nanos < 1_000_000_000)
+            return String.format(Locale.ROOT, "%.2f ms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2f s", nanos / 1e9);
+    }
+}
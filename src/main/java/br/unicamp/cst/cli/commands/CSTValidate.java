@@ -0,0 +1,40 @@
+package br.unicamp.cst.cli.commands;
+
+import br.unicamp.cst.cli.data.ConfigValidator;
+import br.unicamp.cst.cli.data.ConfigValidator.ValidationProblem;
+import org.yaml.snakeyaml.error.YAMLException;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Parameters;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@Command(name = "validate", description = "Checks a config file and reports every problem found")
+public class CSTValidate implements Callable<Integer> {
+
+    @Parameters(index = "0", paramLabel = "FILE", description = "Config file to validate")
+    File config;
+
+    @Override
+    public Integer call() throws Exception {
+        List<ValidationProblem> problems;
+        try {
+            problems = ConfigValidator.validate(config);
+        } catch (YAMLException e) {
+            System.out.println("Configuration File contains errors. Could not parse configurations.");
+            System.out.println(e.getMessage());
+            return 1;
+        }
+
+        if (problems.isEmpty()) {
+            System.out.println(config.getName() + " is valid");
+            return 0;
+        }
+        for (ValidationProblem problem : problems)
+            System.out.println((problem.getFile() == null ? config.getName() : problem.getFile().getFileName()) + ":" + problem);
+        System.out.println(Ansi.AUTO.string("@|red " + problems.size() + " problem(s) found|@"));
+        return 1;
+    }
+}
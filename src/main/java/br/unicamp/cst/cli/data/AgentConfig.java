@@ -1,6 +1,7 @@
 package br.unicamp.cst.cli.data;
 
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.comments.LineComment;
@@ -9,10 +10,35 @@ import com.github.javaparser.ast.stmt.*;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.type.Type;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static br.unicamp.cst.cli.data.MemoryConfig.CONTAINER_TYPE;
+import static br.unicamp.cst.cli.data.MemoryConfig.COUNTER_TYPE;
 import static br.unicamp.cst.cli.data.MemoryConfig.OBJECT_TYPE;
+import static br.unicamp.cst.cli.util.Constants.ADD_OBSERVER_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.METRICS_CLASS;
+import static br.unicamp.cst.cli.util.Constants.METRICS_REGISTER_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.OBSERVER_FLAG_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.TRACE_CLASS;
+import static br.unicamp.cst.cli.util.Constants.TRACE_OPEN_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.CAPTURE_CLASS;
+import static br.unicamp.cst.cli.util.Constants.CAPTURE_START_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.CHECKPOINT_CLASS;
+import static br.unicamp.cst.cli.util.Constants.CHECKPOINT_RESTORE_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.EXECUTOR_CLASS;
+import static br.unicamp.cst.cli.util.Constants.EXECUTOR_POOL_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.EXECUTOR_VIRTUAL_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.TICK_SCHEDULER_CLASS;
+import static br.unicamp.cst.cli.util.Constants.TICK_SCHEDULER_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.FUSED_CODELET_CLASS;
+import static br.unicamp.cst.cli.util.Constants.SINGLE_WRITER_MEMORY_CLASS;
+import static br.unicamp.cst.cli.util.Constants.STRIPED_COUNTER_CLASS;
+import static br.unicamp.cst.cli.util.Constants.CREATE_MEMORY_FUNCTION;
+import static br.unicamp.cst.cli.util.Constants.RING_BUFFER_MEMORY_CLASS;
 
 public class AgentConfig {
 
@@ -21,6 +47,25 @@ public class AgentConfig {
 
     private List<CodeletConfig> codelets = new ArrayList<>();
     private List<MemoryConfig> memories = new ArrayList<>();
+    private List<String> include = new ArrayList<>();
+    private boolean metrics;
+    private boolean trace;
+    private boolean capture;
+    private boolean checkpoint;
+    private boolean fusion;
+    private boolean lockFree;
+    private ExecutionConfig execution = new ExecutionConfig();
+
+    /**
+     * How {@link #mergeWith(AgentConfig, MergePolicy)} handles an element that exists in both configs.
+     * Elements are matched by name ignoring case and identical definitions are always merged silently.
+     */
+    public enum MergePolicy {
+        /** Keeps the definition already present in this config */
+        KEEP_EXISTING,
+        /** Fails with a {@link ConfigConflictException} when the definitions differ */
+        FAIL_ON_CONFLICT
+    }
 
     private static Type memoryType = new ClassOrInterfaceType(null, "Memory");
     private static Type codeletType = new ClassOrInterfaceType(null, "Codelet");
@@ -57,6 +102,174 @@ public class AgentConfig {
         this.memories = memories;
     }
 
+    public List<String> getInclude() {
+        return include;
+    }
+
+    public void setInclude(List<String> include) {
+        this.include = include;
+    }
+
+    /**
+     * Whether the generated agent publishes codelet and memory metrics through JMX and a local
+     * Prometheus endpoint. Codelets of such agents extend the generated MeasuredCodelet.
+     */
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Whether the generated agent records the memory reads and writes of its codelets to a
+     * memory-mapped trace file, to be read by {@code cst trace analyze}.
+     */
+    public boolean isTrace() {
+        return trace;
+    }
+
+    public void setTrace(boolean trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Whether the generated agent records the values written to its input memories, the ones no
+     * codelet writes, to be fed back by {@code cst replay}.
+     */
+    public boolean isCapture() {
+        return capture;
+    }
+
+    public void setCapture(boolean capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Whether the generated agent saves the contents of its memories to a checkpoint file and
+     * restores them when it starts again, instead of warming up from empty memories.
+     */
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(boolean checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Whether chains of codelets passing values through memories only they use run as a single
+     * codelet, see {@link CodeletFusion}.
+     */
+    public boolean isFusion() {
+        return fusion;
+    }
+
+    public void setFusion(boolean fusion) {
+        this.fusion = fusion;
+    }
+
+    /**
+     * Whether object memories written by a single codelet are generated as a SingleWriterMemory,
+     * which its readers read without locking, see {@link #findSingleWriterMemories()}.
+     */
+    public boolean isLockFree() {
+        return lockFree;
+    }
+
+    public void setLockFree(boolean lockFree) {
+        this.lockFree = lockFree;
+    }
+
+    /**
+     * The object memories written by exactly one codelet and read by at least one. Memories without
+     * writers are left out, they are set from outside the codelets.
+     */
+    public Set<String> findSingleWriterMemories() {
+        Map<String, Set<String>> writers = findWriters();
+        Set<String> read = new HashSet<>();
+        for (CodeletConfig codelet : codelets)
+            read.addAll(codelet.getIn());
+        Set<String> singleWriter = new LinkedHashSet<>();
+        for (MemoryConfig memory : memories) {
+            if (OBJECT_TYPE.equals(memory.getType()) && read.contains(memory.getName())
+                    && writers.getOrDefault(memory.getName(), Set.of()).size() == 1)
+                singleWriter.add(memory.getName());
+        }
+        return singleWriter;
+    }
+
+    /**
+     * The queue memories written by exactly one codelet, their ring buffer skips the atomic claim
+     * of a slot that concurrent producers need
+     */
+    public Set<String> findSingleProducerQueues() {
+        Map<String, Set<String>> writers = findWriters();
+        Set<String> singleProducer = new LinkedHashSet<>();
+        for (MemoryConfig memory : memories) {
+            if (memory.isQueue() && writers.getOrDefault(memory.getName(), Set.of()).size() == 1)
+                singleProducer.add(memory.getName());
+        }
+        return singleProducer;
+    }
+
+    /**
+     * The memories no codelet writes, they are set from outside the codelets
+     */
+    public List<String> findSourceMemories() {
+        Map<String, Set<String>> writers = findWriters();
+        List<String> sources = new ArrayList<>();
+        for (MemoryConfig memory : memories) {
+            if (!writers.containsKey(memory.getName()))
+                sources.add(memory.getName());
+        }
+        return sources;
+    }
+
+    /**
+     * The memories written by at least one codelet and read by none, where the agent leaves its results
+     */
+    public List<String> findSinkMemories() {
+        Map<String, Set<String>> writers = findWriters();
+        Set<String> read = new HashSet<>();
+        for (CodeletConfig codelet : codelets)
+            read.addAll(codelet.getIn());
+        List<String> sinks = new ArrayList<>();
+        for (MemoryConfig memory : memories) {
+            if (writers.containsKey(memory.getName()) && !read.contains(memory.getName()))
+                sinks.add(memory.getName());
+        }
+        return sinks;
+    }
+
+    // Names of the codelets writing each memory, as output or broadcast
+    private Map<String, Set<String>> findWriters() {
+        Map<String, Set<String>> writers = new HashMap<>();
+        for (CodeletConfig codelet : codelets) {
+            for (List<String> written : List.of(codelet.getOut(), codelet.getBroadcast())) {
+                for (String memory : written)
+                    writers.computeIfAbsent(memory, m -> new HashSet<>()).add(codelet.getName());
+            }
+        }
+        return writers;
+    }
+
+    /**
+     * Whether the code generated for this config uses a SingleWriterMemory
+     */
+    public boolean usesSingleWriterMemories() {
+        return lockFree && !findSingleWriterMemories().isEmpty();
+    }
+
+    public ExecutionConfig getExecution() {
+        return execution;
+    }
+
+    public void setExecution(ExecutionConfig execution) {
+        this.execution = execution == null ? new ExecutionConfig() : execution;
+    }
+
     public String generateCode() {
         CompilationUnit compilationUnit = new CompilationUnit();
 
@@ -68,6 +281,14 @@ public class AgentConfig {
         compilationUnit.addImport("br.unicamp.cst.core.entities.Codelet");
         compilationUnit.addImport("br.unicamp.cst.core.entities.Memory");
         compilationUnit.addImport("br.unicamp.cst.core.entities.Mind");
+        Set<String> singleWriter = new HashSet<>(lockFree ? findSingleWriterMemories() : Set.of());
+        if (!singleWriter.isEmpty())
+            compilationUnit.addImport(memoryClassImport(this.packageName, SINGLE_WRITER_MEMORY_CLASS));
+        if (memories.stream().anyMatch(m -> COUNTER_TYPE.equals(m.getType())))
+            compilationUnit.addImport(memoryClassImport(this.packageName, STRIPED_COUNTER_CLASS));
+        if (memories.stream().anyMatch(MemoryConfig::isQueue))
+            compilationUnit.addImport(memoryClassImport(this.packageName, RING_BUFFER_MEMORY_CLASS));
+        singleWriter.addAll(findSingleProducerQueues());
 
         ClassOrInterfaceDeclaration agentClass = compilationUnit.addClass("AgentMind").setPublic(true).addExtendedType("Mind");
 
@@ -132,68 +353,53 @@ public class AgentConfig {
 
         first = true;
         for (MemoryConfig memory : this.getMemories()) {
-            String memoryVar = getVarName(memory.getName());
-            // Initialize memory object
-            MethodCallExpr createMemoryCall = new MethodCallExpr();
-            if (memory.getType().equals(OBJECT_TYPE))
-                createMemoryCall.setName("createMemoryObject");
-            else if (memory.getType().equals(CONTAINER_TYPE)) {
-                createMemoryCall.setName("createMemoryContainer");
-            }
-            createMemoryCall.addArgument(new StringLiteralExpr(memory.getName()));
-            AssignExpr initializeMemory = new AssignExpr(new NameExpr(memoryVar), createMemoryCall, AssignExpr.Operator.ASSIGN);
+            List<Statement> memoryStatements = getMemoryInitStatements(memory, singleWriter.contains(memory.getName()));
             if (first) {
-                initializeMemory.addOrphanComment(new LineComment(" Memories Initialization"));
+                memoryStatements.get(0).asExpressionStmt().getExpression()
+                        .addOrphanComment(new LineComment(" Memories Initialization"));
                 first = false;
             }
-            constructorBody.addStatement(initializeMemory);
-            //Register memory to group
-            MethodCallExpr registerMemoryCall = new MethodCallExpr("registerMemory",
-                    new NameExpr(memoryVar),
-                    new StringLiteralExpr(memory.getGroup()));
-            constructorBody.addStatement(registerMemoryCall);
+            memoryStatements.forEach(constructorBody::addStatement);
         }
+        if (checkpoint)
+            addCheckpoint(compilationUnit, constructorBody);
         //Jump line
         constructorBody.addStatement(new EmptyStmt());
 
+        List<List<CodeletConfig>> chains = fusion ? CodeletFusion.findChains(this) : List.of();
+        Set<CodeletConfig> stages = Collections.newSetFromMap(new IdentityHashMap<>());
+        chains.forEach(stages::addAll);
         first = true;
         for (CodeletConfig codelet : this.getCodelets()) {
-            String codeletVarName = getVarName(codelet.getName());
-            ClassOrInterfaceType codeletAsType = new ClassOrInterfaceType(null, codelet.getName());
-            VariableDeclarator codeletInit = new VariableDeclarator(codeletType, codeletVarName);
-            codeletInit.setInitializer(new ObjectCreationExpr(null, codeletAsType, new NodeList<>()));
-            VariableDeclarationExpr expr = new VariableDeclarationExpr(codeletInit);
+            List<Statement> codeletStatements = getCodeletStatements(codelet);
+            // Stages only run inside their fused codelet
+            if (stages.contains(codelet))
+                codeletStatements.removeIf(s -> AgentMindEditor.isCall(s, "insertCodelet"));
             if (first) {
-                expr.addOrphanComment(new LineComment(" Codelets Initialization\n"));
+                codeletStatements.get(0).asExpressionStmt().getExpression()
+                        .addOrphanComment(new LineComment(" Codelets Initialization\n"));
                 first = false;
             }
-            constructorBody.addStatement(expr);
-            for (String inMemory : codelet.getIn()) {
-                MethodCallExpr inExpr = new MethodCallExpr(new NameExpr(codeletVarName), "addInput");
-                inExpr.addArgument(new NameExpr(getVarName(inMemory)));
-                constructorBody.addStatement(inExpr);
-            }
-            for (String outMemory : codelet.getOut()) {
-                MethodCallExpr outExpr = new MethodCallExpr(new NameExpr(codeletVarName), "addOutput");
-                outExpr.addArgument(new NameExpr(getVarName(outMemory)));
-                constructorBody.addStatement(outExpr);
-            }
-            for (String broadcastMemory : codelet.getBroadcast()) {
-                MethodCallExpr broadcastExpr = new MethodCallExpr(new NameExpr(codeletVarName), "addBroadcast");
-                broadcastExpr.addArgument(new NameExpr(getVarName(broadcastMemory)));
-                constructorBody.addStatement(broadcastExpr);
-            }
-
-            constructorBody.addStatement(new MethodCallExpr("insertCodelet", new NameExpr(codeletVarName)));
-            constructorBody.addStatement(new MethodCallExpr("registerCodelet",
-                    new NameExpr(codeletVarName), new StringLiteralExpr(codelet.getGroup())));
+            codeletStatements.forEach(constructorBody::addStatement);
 
             //Jump line
             constructorBody.addStatement(new EmptyStmt());
         }
 
+        if (!chains.isEmpty())
+            addFusion(compilationUnit, constructorBody, chains);
         constructorBody.addStatement(getForEachStmt());
-        constructorBody.addStatement(new ExpressionStmt(new MethodCallExpr("start")));
+        if (trace)
+            addTrace(compilationUnit, constructorBody);
+        if (capture)
+            addCapture(compilationUnit, constructorBody);
+        if (metrics)
+            addMetrics(compilationUnit, agentClass, constructorBody);
+        if (execution.usesPlatformThreads())
+            constructorBody.addStatement(new ExpressionStmt(new MethodCallExpr("start")));
+        else
+            addExecution(compilationUnit, agentClass, constructorBody);
+        addShutDown(agentClass);
 
         constructor.setBody(constructorBody);
         String unitCode = compilationUnit.toString();
@@ -202,6 +408,208 @@ public class AgentConfig {
         return unitCode;
     }
 
+    static List<Statement> getMemoryInitStatements(MemoryConfig memory) {
+        return getMemoryInitStatements(memory, false);
+    }
+
+    static List<Statement> getMemoryInitStatements(MemoryConfig memory, boolean singleWriter) {
+        List<Statement> statements = new ArrayList<>();
+        String memoryVar = getVarName(memory.getName());
+        // Initialize memory object
+        MethodCallExpr createMemoryCall = getMemoryCreation(memory, singleWriter);
+        AssignExpr initializeMemory = new AssignExpr(new NameExpr(memoryVar), createMemoryCall, AssignExpr.Operator.ASSIGN);
+        statements.add(new ExpressionStmt(initializeMemory));
+        //Register memory to group
+        MethodCallExpr registerMemoryCall = new MethodCallExpr("registerMemory",
+                new NameExpr(memoryVar),
+                new StringLiteralExpr(memory.getGroup()));
+        statements.add(new ExpressionStmt(registerMemoryCall));
+        return statements;
+    }
+
+    static MethodCallExpr getMemoryCreation(MemoryConfig memory, boolean singleWriter) {
+        MethodCallExpr createMemoryCall = new MethodCallExpr();
+        if (memory.isQueue()) {
+            // RingBufferMemory.create(this, "Name", capacity, RingBufferMemory.Overflow.POLICY, singleProducer)
+            createMemoryCall.setScope(new NameExpr(RING_BUFFER_MEMORY_CLASS));
+            createMemoryCall.setName(CREATE_MEMORY_FUNCTION);
+            createMemoryCall.addArgument(new ThisExpr());
+            createMemoryCall.addArgument(new StringLiteralExpr(memory.getName()));
+            createMemoryCall.addArgument(new IntegerLiteralExpr(String.valueOf(memory.getEffectiveCapacity())));
+            createMemoryCall.addArgument(new FieldAccessExpr(new FieldAccessExpr(new NameExpr(RING_BUFFER_MEMORY_CLASS), "Overflow"),
+                    memory.getEffectiveOverflow().toUpperCase().replace('-', '_')));
+            createMemoryCall.addArgument(new BooleanLiteralExpr(singleWriter));
+            return createMemoryCall;
+        }
+        if (memory.getType().equals(COUNTER_TYPE) || singleWriter) {
+            // Generated memory classes add themselves to the mind, as createMemoryObject does
+            createMemoryCall.setScope(new NameExpr(singleWriter ? SINGLE_WRITER_MEMORY_CLASS : STRIPED_COUNTER_CLASS));
+            createMemoryCall.setName(CREATE_MEMORY_FUNCTION);
+            createMemoryCall.addArgument(new ThisExpr());
+        } else if (memory.getType().equals(OBJECT_TYPE))
+            createMemoryCall.setName("createMemoryObject");
+        else if (memory.getType().equals(CONTAINER_TYPE)) {
+            createMemoryCall.setName("createMemoryContainer");
+        }
+        createMemoryCall.addArgument(new StringLiteralExpr(memory.getName()));
+        return createMemoryCall;
+    }
+
+    static String memoryClassImport(String packageName, String memoryClass) {
+        return packageName + ".memory." + memoryClass;
+    }
+
+    static Statement getMemoryDeclarationStatement(MemoryConfig memory) {
+        return new ExpressionStmt(new VariableDeclarationExpr(memoryType, getVarName(memory.getName())));
+    }
+
+    static List<Statement> getCodeletStatements(CodeletConfig codelet) {
+        List<Statement> statements = new ArrayList<>();
+        String codeletVarName = getVarName(codelet.getName());
+        ClassOrInterfaceType codeletAsType = new ClassOrInterfaceType(null, codelet.getName());
+        VariableDeclarator codeletInit = new VariableDeclarator(codeletType, codeletVarName);
+        codeletInit.setInitializer(new ObjectCreationExpr(null, codeletAsType, new NodeList<>()));
+        statements.add(new ExpressionStmt(new VariableDeclarationExpr(codeletInit)));
+        statements.addAll(getCodeletWiringStatements(codelet));
+        statements.add(new ExpressionStmt(new MethodCallExpr("insertCodelet", new NameExpr(codeletVarName))));
+        statements.add(new ExpressionStmt(new MethodCallExpr("registerCodelet",
+                new NameExpr(codeletVarName), new StringLiteralExpr(codelet.getGroup()))));
+        return statements;
+    }
+
+    static List<Statement> getCodeletWiringStatements(CodeletConfig codelet) {
+        List<Statement> statements = new ArrayList<>();
+        String codeletVarName = getVarName(codelet.getName());
+        for (String inMemory : codelet.getIn()) {
+            MethodCallExpr inExpr = new MethodCallExpr(new NameExpr(codeletVarName), "addInput");
+            inExpr.addArgument(new NameExpr(getVarName(inMemory)));
+            statements.add(new ExpressionStmt(inExpr));
+        }
+        for (String outMemory : codelet.getOut()) {
+            MethodCallExpr outExpr = new MethodCallExpr(new NameExpr(codeletVarName), "addOutput");
+            outExpr.addArgument(new NameExpr(getVarName(outMemory)));
+            statements.add(new ExpressionStmt(outExpr));
+        }
+        for (String broadcastMemory : codelet.getBroadcast()) {
+            MethodCallExpr broadcastExpr = new MethodCallExpr(new NameExpr(codeletVarName), "addBroadcast");
+            broadcastExpr.addArgument(new NameExpr(getVarName(broadcastMemory)));
+            statements.add(new ExpressionStmt(broadcastExpr));
+        }
+        if (codelet.isTriggeredOnChange()) {
+            // CST runs observer codelets right after an input update instead of on their timer
+            statements.add(new ExpressionStmt(new MethodCallExpr(new NameExpr(codeletVarName), OBSERVER_FLAG_FUNCTION,
+                    new NodeList<>(new BooleanLiteralExpr(true)))));
+            for (String inMemory : codelet.getIn()) {
+                statements.add(new ExpressionStmt(new MethodCallExpr(new NameExpr(getVarName(inMemory)), ADD_OBSERVER_FUNCTION,
+                        new NodeList<>(new NameExpr(codeletVarName)))));
+            }
+        }
+        return statements;
+    }
+
+    private void addMetrics(CompilationUnit compilationUnit, ClassOrInterfaceDeclaration agentClass, BlockStmt constructorBody) {
+        compilationUnit.addImport(this.packageName + ".metrics." + METRICS_CLASS);
+        agentClass.getMembers().add(0, new FieldDeclaration(new NodeList<>(Modifier.privateModifier()),
+                new ClassOrInterfaceType(null, METRICS_CLASS), "agentMetrics"));
+
+        // Registered before start(), so every codelet is measured from its first cycle
+        String agentName = this.projectName != null ? this.projectName : this.packageName;
+        MethodCallExpr register = new MethodCallExpr(new NameExpr(METRICS_CLASS), METRICS_REGISTER_FUNCTION,
+                new NodeList<>(new ThisExpr(), new StringLiteralExpr(agentName)));
+        constructorBody.addStatement(new AssignExpr(new NameExpr("agentMetrics"), register, AssignExpr.Operator.ASSIGN));
+
+        agentClass.addMethod("getCycleCount", Modifier.Keyword.PUBLIC)
+                .setType("long")
+                .setBody(new BlockStmt().addStatement(new ReturnStmt(
+                        new MethodCallExpr(new NameExpr("agentMetrics"), "getCycleCount"))));
+    }
+
+    private void addExecution(CompilationUnit compilationUnit, ClassOrInterfaceDeclaration agentClass, BlockStmt constructorBody) {
+        String executorClass = execution.usesTicks() ? TICK_SCHEDULER_CLASS : EXECUTOR_CLASS;
+        compilationUnit.addImport(this.packageName + ".execution." + executorClass);
+        agentClass.getMembers().add(0, new FieldDeclaration(new NodeList<>(Modifier.privateModifier()),
+                new ClassOrInterfaceType(null, executorClass), "codeletExecutor"));
+
+        MethodCallExpr startExecutor;
+        if (execution.usesTicks())
+            startExecutor = new MethodCallExpr(new NameExpr(TICK_SCHEDULER_CLASS), TICK_SCHEDULER_FUNCTION,
+                    new NodeList<>(new ThisExpr(), new IntegerLiteralExpr(String.valueOf(execution.getTick()))));
+        else if (execution.usesPool())
+            startExecutor = new MethodCallExpr(new NameExpr(EXECUTOR_CLASS), EXECUTOR_POOL_FUNCTION,
+                    new NodeList<>(new ThisExpr(), new IntegerLiteralExpr(String.valueOf(execution.getPool()))));
+        else
+            startExecutor = new MethodCallExpr(new NameExpr(EXECUTOR_CLASS), EXECUTOR_VIRTUAL_FUNCTION, new NodeList<>(new ThisExpr()));
+        Statement start = new ExpressionStmt(new AssignExpr(new NameExpr("codeletExecutor"), startExecutor, AssignExpr.Operator.ASSIGN));
+        start.setComment(new LineComment(execution.usesTicks()
+                ? " Runs the codelets in the order of their memories on one thread per partition, instead of start()"
+                : " Runs the codelets instead of start(), which gives each one a platform thread"));
+        constructorBody.addStatement(start);
+
+        agentClass.addMethod("getCodeletExecutor", Modifier.Keyword.PUBLIC)
+                .setType(executorClass)
+                .setBody(new BlockStmt().addStatement(new ReturnStmt(new NameExpr("codeletExecutor"))));
+    }
+
+    // The executor stops before the CST timers, metrics are closed once no codelet runs anymore
+    private void addShutDown(ClassOrInterfaceDeclaration agentClass) {
+        if (!metrics && execution.usesPlatformThreads())
+            return;
+        BlockStmt body = new BlockStmt();
+        if (!execution.usesPlatformThreads())
+            body.addStatement(new MethodCallExpr(new NameExpr("codeletExecutor"), "close"));
+        body.addStatement(new MethodCallExpr(new SuperExpr(), "shutDown"));
+        if (metrics)
+            body.addStatement(new MethodCallExpr(new NameExpr("agentMetrics"), "close"));
+        agentClass.addMethod("shutDown", Modifier.Keyword.PUBLIC)
+                .addAnnotation("Override")
+                .setBody(body);
+    }
+
+    private void addFusion(CompilationUnit compilationUnit, BlockStmt constructorBody, List<List<CodeletConfig>> chains) {
+        compilationUnit.addImport(this.packageName + ".fusion." + FUSED_CODELET_CLASS);
+        for (List<CodeletConfig> chain : chains) {
+            StringBuilder varName = new StringBuilder("fused");
+            NodeList<Expression> stageVars = new NodeList<>();
+            for (CodeletConfig stage : chain) {
+                varName.append(stage.getName());
+                stageVars.add(new NameExpr(getVarName(stage.getName())));
+            }
+            VariableDeclarator fused = new VariableDeclarator(codeletType, varName.toString(),
+                    new ObjectCreationExpr(null, new ClassOrInterfaceType(null, FUSED_CODELET_CLASS), stageVars));
+            Statement declaration = new ExpressionStmt(new VariableDeclarationExpr(fused));
+            declaration.setComment(new LineComment(" " + chain.stream().map(CodeletConfig::getName).collect(Collectors.joining(", "))
+                    + " run in one cycle, " + String.join(", ", CodeletFusion.links(chain)) + " still hold the values passed between them"));
+            constructorBody.addStatement(declaration);
+            constructorBody.addStatement(new MethodCallExpr("insertCodelet", new NameExpr(varName.toString())));
+            constructorBody.addStatement(new EmptyStmt());
+        }
+    }
+
+    // Opened once the codelets are inserted, the trace has a slot for the thread of each of them
+    private void addTrace(CompilationUnit compilationUnit, BlockStmt constructorBody) {
+        compilationUnit.addImport(this.packageName + ".trace." + TRACE_CLASS);
+        String agentName = this.projectName != null ? this.projectName : this.packageName;
+        MethodCallExpr codelets = new MethodCallExpr(new MethodCallExpr(new MethodCallExpr("getCodeRack"), "getAllCodelets"), "size");
+        constructorBody.addStatement(new MethodCallExpr(new NameExpr(TRACE_CLASS), TRACE_OPEN_FUNCTION,
+                new NodeList<>(new StringLiteralExpr(agentName), codelets)));
+    }
+
+    // Started once the codelets are wired, the input memories are the ones none of them writes
+    private void addCapture(CompilationUnit compilationUnit, BlockStmt constructorBody) {
+        compilationUnit.addImport(this.packageName + ".capture." + CAPTURE_CLASS);
+        String agentName = this.projectName != null ? this.projectName : this.packageName;
+        constructorBody.addStatement(new MethodCallExpr(new NameExpr(CAPTURE_CLASS), CAPTURE_START_FUNCTION,
+                new NodeList<>(new ThisExpr(), new StringLiteralExpr(agentName))));
+    }
+
+    // Restored before the codelets are wired, so no codelet is notified of the restored contents
+    private void addCheckpoint(CompilationUnit compilationUnit, BlockStmt constructorBody) {
+        compilationUnit.addImport(this.packageName + ".checkpoint." + CHECKPOINT_CLASS);
+        String agentName = this.projectName != null ? this.projectName : this.packageName;
+        constructorBody.addStatement(new MethodCallExpr(new NameExpr(CHECKPOINT_CLASS), CHECKPOINT_RESTORE_FUNCTION,
+                new NodeList<>(new ThisExpr(), new StringLiteralExpr(agentName))));
+    }
+
     private static ForEachStmt getForEachStmt() {
         ForEachStmt setCodeletsTime = new ForEachStmt();
         setCodeletsTime.setVariable(new VariableDeclarationExpr(codeletType, "c"));
@@ -227,15 +635,51 @@ public class AgentConfig {
                 "packageName='" + packageName + "'" +
                 ", codelets=" + codelets +
                 ", memories=" + memories +
+                ", metrics=" + metrics +
+                ", trace=" + trace +
+                ", capture=" + capture +
+                ", checkpoint=" + checkpoint +
+                ", fusion=" + fusion +
+                ", lockFree=" + lockFree +
+                ", execution=" + execution +
                 '}';
     }
 
+    /**
+     * Short hash of the YAML form of this config, runs of agents with the same hash had the same
+     * codelets, memories and wiring
+     */
+    public String configHash() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(toYaml().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public String toYaml() {
         StringBuilder sb = new StringBuilder();
         if (projectName != null)
             sb.append("projectName: ").append(projectName).append("\n");
         if (packageName != null)
             sb.append("packageName: ").append(packageName).append("\n");
+        if (metrics)
+            sb.append("metrics: true\n");
+        if (trace)
+            sb.append("trace: true\n");
+        if (capture)
+            sb.append("capture: true\n");
+        if (checkpoint)
+            sb.append("checkpoint: true\n");
+        if (fusion)
+            sb.append("fusion: true\n");
+        if (lockFree)
+            sb.append("lockFree: true\n");
+        if (execution.usesPool() || execution.usesTicks())
+            sb.append("execution:\n  ").append(execution).append("\n");
+        else if (!execution.usesPlatformThreads())
+            sb.append("execution: ").append(execution.getMode()).append("\n");
 
         sb.append("\ncodelets:\n");
         for (CodeletConfig codelet : codelets) {
@@ -259,6 +703,11 @@ public class AgentConfig {
                     .append("broadcast: ")
                     .append(Arrays.toString(codelet.getBroadcast().toArray()))
                     .append("\n");
+            if (codelet.isTriggeredOnChange())
+                sb.append("    ")
+                        .append("trigger: ")
+                        .append(codelet.getTrigger())
+                        .append("\n");
         }
 
         sb.append("\nmemories:\n");
@@ -279,6 +728,10 @@ public class AgentConfig {
                     .append("group: ")
                     .append(memory.getGroup())
                     .append("\n");
+            if (memory.getCapacity() != null)
+                sb.append("    capacity: ").append(memory.getCapacity()).append("\n");
+            if (memory.getOverflow() != null)
+                sb.append("    overflow: ").append(memory.getOverflow()).append("\n");
         }
 
         return sb.toString();
@@ -315,17 +768,55 @@ public class AgentConfig {
     }
 
     public AgentConfig mergeWith(AgentConfig otherAgentConfig){
+        return mergeWith(otherAgentConfig, MergePolicy.KEEP_EXISTING);
+    }
+
+    public AgentConfig mergeWith(AgentConfig otherAgentConfig, MergePolicy policy) {
+        if (this.projectName == null)
+            this.projectName = otherAgentConfig.projectName;
+        else if (policy == MergePolicy.FAIL_ON_CONFLICT && otherAgentConfig.projectName != null
+                && !this.projectName.equals(otherAgentConfig.projectName))
+            throw new ConfigConflictException("Conflicting project names '" + this.projectName + "' and '" + otherAgentConfig.projectName + "'");
+        if (this.packageName == null)
+            this.packageName = otherAgentConfig.packageName;
+        else if (policy == MergePolicy.FAIL_ON_CONFLICT && otherAgentConfig.packageName != null
+                && !this.packageName.equals(otherAgentConfig.packageName))
+            throw new ConfigConflictException("Conflicting package names '" + this.packageName + "' and '" + otherAgentConfig.packageName + "'");
+        // Any file may turn metrics on, there is no way to state that they must stay off
+        this.metrics = this.metrics || otherAgentConfig.metrics;
+        this.trace = this.trace || otherAgentConfig.trace;
+        this.capture = this.capture || otherAgentConfig.capture;
+        this.checkpoint = this.checkpoint || otherAgentConfig.checkpoint;
+        this.fusion = this.fusion || otherAgentConfig.fusion;
+        this.lockFree = this.lockFree || otherAgentConfig.lockFree;
+        // Platform threads are the default, so only other modes can conflict
+        if (this.execution.usesPlatformThreads())
+            this.execution = otherAgentConfig.execution;
+        else if (policy == MergePolicy.FAIL_ON_CONFLICT && !otherAgentConfig.execution.usesPlatformThreads()
+                && !this.execution.equals(otherAgentConfig.execution))
+            throw new ConfigConflictException("Conflicting execution modes '" + this.execution + "' and '" + otherAgentConfig.execution + "'");
+
+        Map<String, CodeletConfig> codeletIndex = new HashMap<>();
+        for (CodeletConfig codeletConfig : this.codelets)
+            codeletIndex.putIfAbsent(codeletConfig.getName().toLowerCase(), codeletConfig);
         for (CodeletConfig codeletConfig : otherAgentConfig.codelets){
-            Optional<CodeletConfig> optCodelet = findCodelet(codeletConfig.getName());
-            if (!optCodelet.isPresent()){
+            CodeletConfig existing = codeletIndex.putIfAbsent(codeletConfig.getName().toLowerCase(), codeletConfig);
+            if (existing == null) {
                 this.codelets.add(codeletConfig);
+            } else if (policy == MergePolicy.FAIL_ON_CONFLICT && !existing.equals(codeletConfig)) {
+                throw new ConfigConflictException("Codelet '" + codeletConfig.getName() + "' is defined differently in more than one file");
             }
         }
 
+        Map<String, MemoryConfig> memoryIndex = new HashMap<>();
+        for (MemoryConfig memoryConfig : this.memories)
+            memoryIndex.putIfAbsent(memoryConfig.getName().toLowerCase(), memoryConfig);
         for (MemoryConfig memoryConfig : otherAgentConfig.memories){
-            Optional<MemoryConfig> optMemory = findMemory(memoryConfig.getName());
-            if (!optMemory.isPresent()){
+            MemoryConfig existing = memoryIndex.putIfAbsent(memoryConfig.getName().toLowerCase(), memoryConfig);
+            if (existing == null) {
                 this.memories.add(memoryConfig);
+            } else if (policy == MergePolicy.FAIL_ON_CONFLICT && !existing.equals(memoryConfig)) {
+                throw new ConfigConflictException("Memory '" + memoryConfig.getName() + "' is defined differently in more than one file");
             }
         }
         return this;
@@ -0,0 +1,456 @@
+package br.unicamp.cst.cli.data;
+
+import br.unicamp.cst.cli.util.OutputSink;
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ForEachStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.printer.lexicalpreservation.LexicalPreservingPrinter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static br.unicamp.cst.cli.data.AgentConfig.getVarName;
+import static br.unicamp.cst.cli.util.Constants.*;
+
+/**
+ * Applies statement level edits to an existing AgentMind constructor, keeping the
+ * original formatting and any hand written code untouched.
+ */
+public class AgentMindEditor {
+
+    private final File agentMindFile;
+    private final CompilationUnit compilationUnit;
+    private final BlockStmt constructorBody;
+
+    private final Set<String> codeletVars = new HashSet<>();
+    private final Set<String> memoryVars = new HashSet<>();
+    private final Set<String> codeletGroups = new HashSet<>();
+    private final Set<String> memoryGroups = new HashSet<>();
+    // Statements that declare, initialize, wire or register each variable
+    private final Map<String, List<Statement>> references = new HashMap<>();
+
+    private AgentMindEditor(File agentMindFile, CompilationUnit compilationUnit, BlockStmt constructorBody) {
+        this.agentMindFile = agentMindFile;
+        this.compilationUnit = compilationUnit;
+        this.constructorBody = constructorBody;
+        indexStatements();
+    }
+
+    public static AgentMindEditor open(File agentMindFile) throws IOException {
+        CompilationUnit cu = LexicalPreservingPrinter.setup(StaticJavaParser.parse(agentMindFile));
+        List<ConstructorDeclaration> constructors = cu.findAll(ConstructorDeclaration.class);
+        if (constructors.size() != 1)
+            throw new IOException("Could not find a single AgentMind constructor in " + agentMindFile);
+        return new AgentMindEditor(agentMindFile, cu, constructors.get(0).getBody());
+    }
+
+    private void indexStatements() {
+        for (Statement statement : constructorBody.getStatements()) {
+            if (isCodeletDeclaration(statement)) {
+                codeletVars.add(declaredVar(statement));
+            } else if (isMemoryDeclaration(statement)) {
+                memoryVars.add(declaredVar(statement));
+            } else if (isCall(statement, CREATE_CODELET_GROUP_FUNCTION)) {
+                codeletGroups.add(firstStringArgument(statement));
+            } else if (isCall(statement, CREATE_MEMORY_GROUP_FUNCTION)) {
+                memoryGroups.add(firstStringArgument(statement));
+            }
+            track(statement);
+        }
+    }
+
+    private void track(Statement statement) {
+        for (String var : referencedVars(statement))
+            references.computeIfAbsent(var, k -> new ArrayList<>()).add(statement);
+    }
+
+    private static Set<String> referencedVars(Statement statement) {
+        Set<String> vars = new HashSet<>();
+        if (isCodeletDeclaration(statement) || isMemoryDeclaration(statement)) {
+            vars.add(declaredVar(statement));
+        } else if (statement.isExpressionStmt() && statement.asExpressionStmt().getExpression().isAssignExpr()) {
+            vars.add(statement.asExpressionStmt().getExpression().asAssignExpr().getTarget().toString());
+        } else if (isWiringCall(statement)) {
+            MethodCallExpr call = callOf(statement).get();
+            vars.add(call.getScope().get().toString());
+            vars.add(call.getArgument(0).toString());
+        } else if (isCall(statement, INSERT_CODELET_FUNCTION) || isCall(statement, REGISTER_CODELET_FUNCTION)
+                || isCall(statement, REGISTER_MEMORY_FUNCTION)) {
+            NodeList<Expression> args = callOf(statement).get().getArguments();
+            if (!args.isEmpty())
+                vars.add(args.get(0).toString());
+        }
+        return vars;
+    }
+
+    private static boolean isWiringCall(Statement statement) {
+        return callOf(statement)
+                .filter(mc -> mc.getScope().isPresent() && mc.getArguments().size() == 1)
+                .map(mc -> WIRING_FUNCTIONS.contains(mc.getNameAsString()))
+                .orElse(false);
+    }
+
+    // Observers are added to the memory, every other wiring call is made on the codelet
+    private static String wiredCodelet(MethodCallExpr wiringCall) {
+        if (wiringCall.getNameAsString().equals(ADD_OBSERVER_FUNCTION))
+            return wiringCall.getArgument(0).toString();
+        return wiringCall.getScope().get().toString();
+    }
+
+    private List<Statement> referencesOf(String var) {
+        return references.getOrDefault(var, Collections.emptyList());
+    }
+
+    public String getPackageName() {
+        return compilationUnit.getPackageDeclaration().map(PackageDeclaration::getNameAsString).orElse(null);
+    }
+
+    /**
+     * Whether the agent registers {@code AgentMetrics}, its codelets then extend MeasuredCodelet
+     */
+    public boolean usesMetrics() {
+        return firstIndexOf(AgentMindEditor::isMetricsRegistration) >= 0;
+    }
+
+    /**
+     * Whether the agent opens a {@code MemoryTrace}, its codelets then record their memory accesses
+     */
+    public boolean usesTrace() {
+        return firstIndexOf(AgentMindEditor::isTraceOpening) >= 0;
+    }
+
+    /**
+     * Whether the agent runs chains of codelets as a {@code FusedCodelet}. The chains depend on the
+     * wiring of every codelet, so changing codelets needs the agent to be generated again.
+     */
+    public boolean usesFusion() {
+        return firstIndexOf(AgentMindEditor::isFusedCodeletDeclaration) >= 0;
+    }
+
+    public boolean hasCodelet(String codeletName) {
+        return codeletVars.contains(getVarName(codeletName));
+    }
+
+    public boolean hasMemory(String memoryName) {
+        return memoryVars.contains(getVarName(memoryName));
+    }
+
+    public void addMemory(MemoryConfig memory) {
+        ensureMemoryGroup(memory.getGroup());
+
+        int declarationIndex = lastIndexOf(AgentMindEditor::isMemoryDeclaration);
+        if (declarationIndex < 0)
+            declarationIndex = lastIndexOf(s -> isCall(s, CREATE_MEMORY_GROUP_FUNCTION));
+        insertAt(declarationIndex + 1, List.of(AgentConfig.getMemoryDeclarationStatement(memory)));
+
+        int initIndex = lastIndexOf(s -> isCall(s, REGISTER_MEMORY_FUNCTION));
+        if (initIndex < 0)
+            initIndex = lastIndexOf(AgentMindEditor::isMemoryDeclaration);
+        insertAt(initIndex + 1, AgentConfig.getMemoryInitStatements(memory));
+        addMemoryClassImport(memory);
+        memoryVars.add(getVarName(memory.getName()));
+    }
+
+    public void addCodelet(CodeletConfig codelet) {
+        ensureCodeletGroup(codelet.getGroup());
+
+        // New codelets go right before the time step loop, or before tracing, capture, metrics and start() when the loop was removed
+        int codeletIndex = firstIndexOf(s -> s instanceof ForEachStmt);
+        if (codeletIndex < 0)
+            codeletIndex = firstIndexOf(s -> isTraceOpening(s) || isCaptureStart(s) || isMetricsRegistration(s));
+        if (codeletIndex < 0)
+            codeletIndex = firstIndexOf(s -> isCall(s, "start") || isExecutorStart(s));
+        if (codeletIndex < 0)
+            codeletIndex = constructorBody.getStatements().size();
+        insertAt(codeletIndex, AgentConfig.getCodeletStatements(codelet));
+        compilationUnit.addImport(codelet.getClassImport(getPackageName()));
+        codeletVars.add(getVarName(codelet.getName()));
+    }
+
+    public void removeMemory(String memoryName) {
+        String memoryVar = getVarName(memoryName);
+        // Also drops addInput/addOutput/addBroadcast calls of codelets that still point to this memory
+        for (Statement statement : new ArrayList<>(referencesOf(memoryVar)))
+            remove(statement);
+        references.remove(memoryVar);
+        memoryVars.remove(memoryVar);
+    }
+
+    public void changeMemory(MemoryConfig memory) {
+        changeMemory(memory, null);
+    }
+
+    /**
+     * Also sets whether a queue or a lock free object memory has a single writer, which changes
+     * with the wiring of the codelets
+     */
+    public void changeMemory(MemoryConfig memory, boolean singleWriter) {
+        changeMemory(memory, Boolean.valueOf(singleWriter));
+    }
+
+    private void changeMemory(MemoryConfig memory, Boolean singleWriter) {
+        String memoryVar = getVarName(memory.getName());
+        ensureMemoryGroup(memory.getGroup());
+        for (Statement statement : referencesOf(memoryVar)) {
+            if (statement.isExpressionStmt() && statement.asExpressionStmt().getExpression().isAssignExpr()) {
+                AssignExpr assign = statement.asExpressionStmt().getExpression().asAssignExpr();
+                if (!assign.getValue().isMethodCallExpr())
+                    continue;
+                MethodCallExpr creation = assign.getValue().asMethodCallExpr();
+                boolean generatedClass = MemoryConfig.COUNTER_TYPE.equals(memory.getType()) || memory.isQueue();
+                if (!generatedClass && creation.getScope().isEmpty()) {
+                    creation.setName(MemoryConfig.CONTAINER_TYPE.equals(memory.getType())
+                            ? CREATE_MEMORY_CONTAINER_FUNCTION : CREATE_MEMORY_OBJECT_FUNCTION);
+                    continue;
+                }
+                assign.setValue(AgentConfig.getMemoryCreation(memory, singleWriter != null
+                        ? singleWriter && (memory.isQueue() || usesSingleWriterClass(creation))
+                        : hasSingleWriter(creation, memory)));
+                addMemoryClassImport(memory);
+            } else if (isCall(statement, REGISTER_MEMORY_FUNCTION)) {
+                callOf(statement).get().setArgument(1, new StringLiteralExpr(memory.getGroup()));
+            }
+        }
+    }
+
+    // A single writer memory stays one while it is an object memory, a queue keeps its producers
+    private static boolean hasSingleWriter(MethodCallExpr creation, MemoryConfig memory) {
+        if (MemoryConfig.OBJECT_TYPE.equals(memory.getType()))
+            return usesSingleWriterClass(creation);
+        return memory.isQueue() && isQueueCreation(creation)
+                && creation.getArguments().getLast().map(a -> a.toString().equals("true")).orElse(false);
+    }
+
+    private static boolean usesSingleWriterClass(MethodCallExpr creation) {
+        return creation.getScope().map(scope -> scope.toString().equals(SINGLE_WRITER_MEMORY_CLASS)).orElse(false);
+    }
+
+    private static boolean isQueueCreation(MethodCallExpr creation) {
+        return creation.getScope().map(scope -> scope.toString().equals(RING_BUFFER_MEMORY_CLASS)).orElse(false);
+    }
+
+    private void addMemoryClassImport(MemoryConfig memory) {
+        if (MemoryConfig.COUNTER_TYPE.equals(memory.getType()))
+            compilationUnit.addImport(AgentConfig.memoryClassImport(getPackageName(), STRIPED_COUNTER_CLASS));
+        else if (memory.isQueue())
+            compilationUnit.addImport(AgentConfig.memoryClassImport(getPackageName(), RING_BUFFER_MEMORY_CLASS));
+    }
+
+    /**
+     * Names of the memories created as a RingBufferMemory, codelets reading them drain batches of messages
+     */
+    public Set<String> getQueueMemories() {
+        Set<String> queues = new HashSet<>();
+        for (Statement statement : constructorBody.getStatements()) {
+            if (statement.isExpressionStmt() && statement.asExpressionStmt().getExpression().isAssignExpr()) {
+                Expression value = statement.asExpressionStmt().getExpression().asAssignExpr().getValue();
+                if (value.isMethodCallExpr() && isQueueCreation(value.asMethodCallExpr())
+                        && value.asMethodCallExpr().getArguments().size() > 1
+                        && value.asMethodCallExpr().getArgument(1).isStringLiteralExpr())
+                    queues.add(value.asMethodCallExpr().getArgument(1).asStringLiteralExpr().asString());
+            }
+        }
+        return queues;
+    }
+
+    public void removeCodelet(String codeletName) {
+        String codeletVar = getVarName(codeletName);
+        for (Statement statement : new ArrayList<>(referencesOf(codeletVar))) {
+            if (isCodeletDeclaration(statement)) {
+                String className = statement.asExpressionStmt().getExpression().asVariableDeclarationExpr()
+                        .getVariable(0).getInitializer()
+                        .filter(Expression::isObjectCreationExpr)
+                        .map(e -> e.asObjectCreationExpr().getType().getNameAsString())
+                        .orElse(null);
+                removeImport(className);
+            }
+            remove(statement);
+        }
+        references.remove(codeletVar);
+        codeletVars.remove(codeletVar);
+    }
+
+    public void rewireCodelet(CodeletConfig codelet) {
+        String codeletVar = getVarName(codelet.getName());
+        ensureCodeletGroup(codelet.getGroup());
+        Statement declaration = null;
+        for (Statement statement : new ArrayList<>(referencesOf(codeletVar))) {
+            if (isCodeletDeclaration(statement)) {
+                declaration = statement;
+            } else if (isWiringCall(statement) && wiredCodelet(callOf(statement).get()).equals(codeletVar)) {
+                remove(statement);
+            } else if (isCall(statement, REGISTER_CODELET_FUNCTION)) {
+                callOf(statement).get().setArgument(1, new StringLiteralExpr(codelet.getGroup()));
+            }
+        }
+        if (declaration == null)
+            return;
+        int index = constructorBody.getStatements().indexOf(declaration);
+        insertAt(index + 1, AgentConfig.getCodeletWiringStatements(codelet));
+    }
+
+    private void ensureMemoryGroup(String group) {
+        if (memoryGroups.contains(group))
+            return;
+        int groupIndex = lastIndexOf(s -> isCall(s, CREATE_MEMORY_GROUP_FUNCTION));
+        if (groupIndex < 0)
+            groupIndex = lastIndexOf(s -> isCall(s, CREATE_CODELET_GROUP_FUNCTION));
+        insertAt(groupIndex + 1, List.of(groupStatement(CREATE_MEMORY_GROUP_FUNCTION, group)));
+        memoryGroups.add(group);
+    }
+
+    private void ensureCodeletGroup(String group) {
+        if (codeletGroups.contains(group))
+            return;
+        int groupIndex = lastIndexOf(s -> isCall(s, CREATE_CODELET_GROUP_FUNCTION));
+        if (groupIndex < 0)
+            groupIndex = lastIndexOf(Statement::isExplicitConstructorInvocationStmt);
+        insertAt(groupIndex + 1, List.of(groupStatement(CREATE_CODELET_GROUP_FUNCTION, group)));
+        codeletGroups.add(group);
+    }
+
+    private void removeImport(String className) {
+        if (className == null)
+            return;
+        compilationUnit.getImports().stream()
+                .filter(i -> !i.isAsterisk() && i.getName().getIdentifier().equals(className))
+                .toList()
+                .forEach(ImportDeclaration::remove);
+    }
+
+    private void remove(Statement statement) {
+        for (String var : referencedVars(statement)) {
+            List<Statement> tracked = references.get(var);
+            if (tracked != null)
+                tracked.remove(statement);
+        }
+        statement.remove();
+    }
+
+    public String print() {
+        return LexicalPreservingPrinter.print(compilationUnit);
+    }
+
+    public void save(OutputSink sink) {
+        sink.write(agentMindFile.toPath(), print());
+    }
+
+    private void insertAt(int index, List<Statement> statements) {
+        NodeList<Statement> body = constructorBody.getStatements();
+        for (int i = 0; i < statements.size(); i++) {
+            body.add(index + i, statements.get(i));
+            track(statements.get(i));
+        }
+    }
+
+    private int firstIndexOf(Predicate<Statement> predicate) {
+        NodeList<Statement> body = constructorBody.getStatements();
+        for (int i = 0; i < body.size(); i++) {
+            if (predicate.test(body.get(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    private int lastIndexOf(Predicate<Statement> predicate) {
+        NodeList<Statement> body = constructorBody.getStatements();
+        for (int i = body.size() - 1; i >= 0; i--) {
+            if (predicate.test(body.get(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    private static Statement groupStatement(String function, String group) {
+        return new ExpressionStmt(new MethodCallExpr(function, new StringLiteralExpr(group)));
+    }
+
+    static boolean isCall(Statement statement, String methodName) {
+        return callOf(statement).map(mc -> mc.getNameAsString().equals(methodName)).orElse(false);
+    }
+
+    static Optional<MethodCallExpr> callOf(Statement statement) {
+        if (!statement.isExpressionStmt())
+            return Optional.empty();
+        Expression expression = statement.asExpressionStmt().getExpression();
+        return expression.isMethodCallExpr() ? Optional.of(expression.asMethodCallExpr()) : Optional.empty();
+    }
+
+    static boolean isMetricsRegistration(Statement statement) {
+        if (!statement.isExpressionStmt())
+            return false;
+        Expression expression = statement.asExpressionStmt().getExpression();
+        if (expression.isAssignExpr())
+            expression = expression.asAssignExpr().getValue();
+        return expression.isMethodCallExpr() && ConfigParser.AgentConfigCollector.isMetricsRegistration(expression.asMethodCallExpr());
+    }
+
+    static boolean isTraceOpening(Statement statement) {
+        return callOf(statement).map(ConfigParser.AgentConfigCollector::isTraceOpening).orElse(false);
+    }
+
+    static boolean isExecutorStart(Statement statement) {
+        if (!statement.isExpressionStmt())
+            return false;
+        Expression expression = statement.asExpressionStmt().getExpression();
+        if (expression.isAssignExpr())
+            expression = expression.asAssignExpr().getValue();
+        return expression.isMethodCallExpr() && ConfigParser.AgentConfigCollector.isExecutorStart(expression.asMethodCallExpr());
+    }
+
+    static boolean isCaptureStart(Statement statement) {
+        return callOf(statement).map(ConfigParser.AgentConfigCollector::isCaptureStart).orElse(false);
+    }
+
+    static boolean isFusedCodeletDeclaration(Statement statement) {
+        if (!statement.isExpressionStmt() || !statement.asExpressionStmt().getExpression().isVariableDeclarationExpr())
+            return false;
+        return statement.asExpressionStmt().getExpression().asVariableDeclarationExpr().getVariables().stream()
+                .anyMatch(ConfigParser.AgentConfigCollector::isFusedCodelet);
+    }
+
+    static boolean isCodeletDeclaration(Statement statement) {
+        return declarationType(statement).map(t -> t.equals(CODELET_BASE_TYPE)).orElse(false);
+    }
+
+    static boolean isMemoryDeclaration(Statement statement) {
+        return declarationType(statement)
+                .map(t -> t.equals(MEMORY_BASE_TYPE) || t.equals(MEMORY_OBJECT_TYPE) || t.equals(MEMORY_CONTAINER_TYPE))
+                .orElse(false);
+    }
+
+    private static Optional<String> declarationType(Statement statement) {
+        if (!statement.isExpressionStmt())
+            return Optional.empty();
+        Expression expression = statement.asExpressionStmt().getExpression();
+        if (!expression.isVariableDeclarationExpr())
+            return Optional.empty();
+        return Optional.of(expression.asVariableDeclarationExpr().getElementType().asString());
+    }
+
+    static String declaredVar(Statement statement) {
+        VariableDeclarationExpr declaration = statement.asExpressionStmt().getExpression().asVariableDeclarationExpr();
+        return declaration.getVariable(0).getNameAsString();
+    }
+
+    private static String firstStringArgument(Statement statement) {
+        NodeList<Expression> args = callOf(statement).map(MethodCallExpr::getArguments).orElse(new NodeList<>());
+        if (args.isEmpty())
+            return null;
+        return args.get(0).isStringLiteralExpr() ? args.get(0).asStringLiteralExpr().asString() : args.get(0).toString();
+    }
+}
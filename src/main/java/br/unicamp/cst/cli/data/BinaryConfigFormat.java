@@ -0,0 +1,365 @@
+package br.unicamp.cst.cli.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of an {@link AgentConfig}.
+ * <p>
+ * Layout: a 16 byte header (magic, version, body length and CRC32 of the body) followed by
+ * the body. The body starts with a table of interned strings and every other field refers
+ * to it through varint indexes, where index 0 stands for null.
+ * <p>
+ * The body ends with a list of extensions, each one a varint tag, a varint length and that many
+ * bytes, terminated by tag 0. Readers skip tags they do not know, so new options can be added
+ * without a version bump.
+ */
+public class BinaryConfigFormat {
+
+    private static final byte[] MAGIC = {'C', 'S', 'T', 'B'};
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int END_OF_EXTENSIONS = 0;
+    private static final int METRICS_EXTENSION = 1;
+    // Pairs of codelet index and trigger, for codelets that are not periodic
+    private static final int CODELET_TRIGGER_EXTENSION = 2;
+    private static final int TRACE_EXTENSION = 3;
+    private static final int CAPTURE_EXTENSION = 4;
+    // Mode and pool size, for agents that do not run on platform threads
+    private static final int EXECUTION_EXTENSION = 5;
+    private static final int FUSION_EXTENSION = 6;
+    private static final int LOCK_FREE_EXTENSION = 7;
+    // Memory index, capacity and overflow reference plus one, 0 when the queue uses the default
+    private static final int QUEUE_EXTENSION = 8;
+    private static final int CHECKPOINT_EXTENSION = 9;
+
+    public static boolean isBinary(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < MAGIC.length)
+            return false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            channel.read(magic, 0);
+            return Arrays.equals(MAGIC, magic.array());
+        }
+    }
+
+    public static boolean isBinary(byte[] content) {
+        return content.length >= MAGIC.length && Arrays.equals(MAGIC, 0, MAGIC.length, content, 0, MAGIC.length);
+    }
+
+    public static void write(AgentConfig agentConfig, Path file) throws IOException {
+        Files.write(file, encode(agentConfig));
+    }
+
+    public static AgentConfig read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer);
+        }
+    }
+
+    public static byte[] encode(AgentConfig agentConfig) {
+        StringTable strings = new StringTable();
+        VarIntBuffer body = new VarIntBuffer();
+
+        body.writeVarInt(strings.ref(agentConfig.getProjectName()));
+        body.writeVarInt(strings.ref(agentConfig.getPackageName()));
+
+        body.writeVarInt(agentConfig.getMemories().size());
+        for (MemoryConfig memory : agentConfig.getMemories()) {
+            body.writeVarInt(strings.ref(memory.getName()));
+            body.writeVarInt(strings.ref(memory.getType()));
+            body.writeVarInt(strings.ref(memory.getContent()));
+            body.writeVarInt(strings.ref(memory.getGroup()));
+        }
+
+        body.writeVarInt(agentConfig.getCodelets().size());
+        for (CodeletConfig codelet : agentConfig.getCodelets()) {
+            body.writeVarInt(strings.ref(codelet.getName()));
+            body.writeVarInt(strings.ref(codelet.getGroup()));
+            writeRefs(body, strings, codelet.getIn());
+            writeRefs(body, strings, codelet.getOut());
+            writeRefs(body, strings, codelet.getBroadcast());
+        }
+
+        writeRefs(body, strings, agentConfig.getInclude());
+
+        if (agentConfig.isMetrics())
+            writeExtension(body, METRICS_EXTENSION, new byte[]{1});
+        if (agentConfig.isTrace())
+            writeExtension(body, TRACE_EXTENSION, new byte[]{1});
+        if (agentConfig.isCapture())
+            writeExtension(body, CAPTURE_EXTENSION, new byte[]{1});
+        if (agentConfig.isFusion())
+            writeExtension(body, FUSION_EXTENSION, new byte[]{1});
+        if (agentConfig.isLockFree())
+            writeExtension(body, LOCK_FREE_EXTENSION, new byte[]{1});
+        if (agentConfig.isCheckpoint())
+            writeExtension(body, CHECKPOINT_EXTENSION, new byte[]{1});
+        ExecutionConfig execution = agentConfig.getExecution();
+        if (!execution.usesPlatformThreads()) {
+            VarIntBuffer payload = new VarIntBuffer();
+            payload.writeVarInt(strings.ref(execution.getMode()));
+            // Threads of a pool or ticks per second, 0 for virtual threads
+            payload.writeVarInt(execution.usesTicks() ? execution.getTick() : execution.getPool());
+            writeExtension(body, EXECUTION_EXTENSION, payload.toByteArray());
+        }
+        VarIntBuffer triggers = new VarIntBuffer();
+        int triggerCount = 0;
+        for (int i = 0; i < agentConfig.getCodelets().size(); i++) {
+            String trigger = agentConfig.getCodelets().get(i).getTrigger();
+            if (trigger != null) {
+                triggers.writeVarInt(i);
+                triggers.writeVarInt(strings.ref(trigger));
+                triggerCount++;
+            }
+        }
+        if (triggerCount > 0)
+            writeExtension(body, CODELET_TRIGGER_EXTENSION, triggers.toByteArray());
+        VarIntBuffer queues = new VarIntBuffer();
+        int queueCount = 0;
+        for (int i = 0; i < agentConfig.getMemories().size(); i++) {
+            MemoryConfig memory = agentConfig.getMemories().get(i);
+            if (memory.getCapacity() != null || memory.getOverflow() != null) {
+                queues.writeVarInt(i);
+                queues.writeVarInt(memory.getCapacity() == null ? 0 : memory.getCapacity());
+                queues.writeVarInt(memory.getOverflow() == null ? 0 : strings.ref(memory.getOverflow()) + 1);
+                queueCount++;
+            }
+        }
+        if (queueCount > 0)
+            writeExtension(body, QUEUE_EXTENSION, queues.toByteArray());
+        body.writeVarInt(END_OF_EXTENSIONS);
+
+        VarIntBuffer table = new VarIntBuffer();
+        table.writeVarInt(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            table.writeVarInt(bytes.length);
+            table.write(bytes, 0, bytes.length);
+        }
+
+        int bodyLength = table.size() + body.size();
+        CRC32 crc = new CRC32();
+        crc.update(table.buffer(), 0, table.size());
+        crc.update(body.buffer(), 0, body.size());
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + bodyLength).order(ByteOrder.BIG_ENDIAN);
+        out.put(MAGIC);
+        out.putShort((short) VERSION);
+        out.putShort((short) 0);
+        out.putInt(bodyLength);
+        out.putInt((int) crc.getValue());
+        out.put(table.buffer(), 0, table.size());
+        out.put(body.buffer(), 0, body.size());
+        return out.array();
+    }
+
+    public static AgentConfig decode(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE)
+            throw new IOException("Binary config is truncated");
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IOException("Not a CST binary config");
+        int version = buffer.getShort() & 0xFFFF;
+        if (version != VERSION)
+            throw new IOException("Unsupported binary config version " + version + ", this CLI reads version " + VERSION);
+        buffer.getShort();
+        int bodyLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (buffer.remaining() < bodyLength)
+            throw new IOException("Binary config is truncated");
+
+        ByteBuffer body = buffer.slice(buffer.position(), bodyLength);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("Binary config checksum does not match, file is corrupted");
+
+        try {
+            String[] strings = new String[readVarInt(body) + 1];
+            for (int i = 1; i < strings.length; i++) {
+                byte[] bytes = new byte[readVarInt(body)];
+                body.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            AgentConfig agentConfig = new AgentConfig();
+            agentConfig.setProjectName(strings[readVarInt(body)]);
+            agentConfig.setPackageName(strings[readVarInt(body)]);
+
+            int memoryCount = readVarInt(body);
+            List<MemoryConfig> memories = new ArrayList<>(memoryCount);
+            for (int i = 0; i < memoryCount; i++) {
+                MemoryConfig memory = new MemoryConfig(strings[readVarInt(body)]);
+                String type = strings[readVarInt(body)];
+                if (type != null) {
+                    if (!MemoryConfig.isValidType(type))
+                        throw invalid("memory " + memory.getName() + " has unknown type '" + type + "'");
+                    memory.setType(type);
+                }
+                memory.setContent(strings[readVarInt(body)]);
+                memory.setGroup(strings[readVarInt(body)]);
+                memories.add(memory);
+            }
+            agentConfig.setMemories(memories);
+
+            int codeletCount = readVarInt(body);
+            List<CodeletConfig> codelets = new ArrayList<>(codeletCount);
+            for (int i = 0; i < codeletCount; i++) {
+                CodeletConfig codelet = new CodeletConfig(strings[readVarInt(body)]);
+                codelet.setGroup(strings[readVarInt(body)]);
+                codelet.setIn(readRefs(body, strings));
+                codelet.setOut(readRefs(body, strings));
+                codelet.setBroadcast(readRefs(body, strings));
+                codelets.add(codelet);
+            }
+            agentConfig.setCodelets(codelets);
+
+            agentConfig.setInclude(readRefs(body, strings));
+            readExtensions(body, strings, agentConfig);
+            return agentConfig;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Binary config is malformed", e);
+        }
+    }
+
+    private static void writeExtension(VarIntBuffer body, int tag, byte[] payload) {
+        body.writeVarInt(tag);
+        body.writeVarInt(payload.length);
+        body.write(payload, 0, payload.length);
+    }
+
+    // The setters print and throw YAMLException for a hand written config, a bad value here is a bad file
+    private static IOException invalid(String problem) {
+        return new IOException("Invalid binary config: " + problem);
+    }
+
+    private static void readExtensions(ByteBuffer body, String[] strings, AgentConfig agentConfig) throws IOException {
+        int tag;
+        while ((tag = readVarInt(body)) != END_OF_EXTENSIONS) {
+            byte[] bytes = new byte[readVarInt(body)];
+            body.get(bytes);
+            ByteBuffer payload = ByteBuffer.wrap(bytes);
+            if (tag == METRICS_EXTENSION) {
+                agentConfig.setMetrics(bytes.length > 0 && bytes[0] != 0);
+            } else if (tag == TRACE_EXTENSION) {
+                agentConfig.setTrace(bytes.length > 0 && bytes[0] != 0);
+            } else if (tag == CAPTURE_EXTENSION) {
+                agentConfig.setCapture(bytes.length > 0 && bytes[0] != 0);
+            } else if (tag == FUSION_EXTENSION) {
+                agentConfig.setFusion(bytes.length > 0 && bytes[0] != 0);
+            } else if (tag == LOCK_FREE_EXTENSION) {
+                agentConfig.setLockFree(bytes.length > 0 && bytes[0] != 0);
+            } else if (tag == CHECKPOINT_EXTENSION) {
+                agentConfig.setCheckpoint(bytes.length > 0 && bytes[0] != 0);
+            } else if (tag == EXECUTION_EXTENSION) {
+                String mode = strings[readVarInt(payload)];
+                int count = readVarInt(payload);
+                boolean counted = ExecutionConfig.POOL_EXECUTION.equals(mode) || ExecutionConfig.TICK_EXECUTION.equals(mode);
+                if (counted ? count < 1
+                        : !ExecutionConfig.PLATFORM_EXECUTION.equals(mode) && !ExecutionConfig.VIRTUAL_EXECUTION.equals(mode))
+                    throw invalid("execution '" + mode + (counted ? ":" + count : "") + "' is not a valid mode");
+                if (ExecutionConfig.POOL_EXECUTION.equals(mode))
+                    agentConfig.setExecution(ExecutionConfig.pool(count));
+                else if (ExecutionConfig.TICK_EXECUTION.equals(mode))
+                    agentConfig.setExecution(ExecutionConfig.tick(count));
+                else
+                    agentConfig.setExecution(new ExecutionConfig(mode));
+            } else if (tag == CODELET_TRIGGER_EXTENSION) {
+                while (payload.hasRemaining()) {
+                    CodeletConfig codelet = agentConfig.getCodelets().get(readVarInt(payload));
+                    String trigger = strings[readVarInt(payload)];
+                    if (trigger != null && !CodeletConfig.isValidTrigger(trigger))
+                        throw invalid("codelet " + codelet.getName() + " has unknown trigger '" + trigger + "'");
+                    codelet.setTrigger(trigger);
+                }
+            } else if (tag == QUEUE_EXTENSION) {
+                while (payload.hasRemaining()) {
+                    MemoryConfig memory = agentConfig.getMemories().get(readVarInt(payload));
+                    int capacity = readVarInt(payload);
+                    int overflow = readVarInt(payload);
+                    String overflowName = overflow == 0 ? null : strings[overflow - 1];
+                    if (capacity < 0)
+                        throw invalid("memory " + memory.getName() + " has capacity " + capacity);
+                    if (overflowName != null && !MemoryConfig.isValidOverflow(overflowName))
+                        throw invalid("memory " + memory.getName() + " has unknown overflow '" + overflowName + "'");
+                    memory.setCapacity(capacity == 0 ? null : capacity);
+                    memory.setOverflow(overflowName);
+                }
+            }
+        }
+    }
+
+    private static void writeRefs(VarIntBuffer body, StringTable strings, List<String> values) {
+        body.writeVarInt(values.size());
+        for (String value : values)
+            body.writeVarInt(strings.ref(value));
+    }
+
+    private static List<String> readRefs(ByteBuffer body, String[] strings) {
+        int count = readVarInt(body);
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            values.add(strings[readVarInt(body)]);
+        return values;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 35);
+        return value;
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int ref(String value) {
+            if (value == null)
+                return 0;
+            Integer ref = index.get(value);
+            if (ref == null) {
+                values.add(value);
+                ref = values.size();
+                index.put(value, ref);
+            }
+            return ref;
+        }
+    }
+
+    private static class VarIntBuffer extends ByteArrayOutputStream {
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
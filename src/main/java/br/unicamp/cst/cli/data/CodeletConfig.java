@@ -1,28 +1,50 @@
 package br.unicamp.cst.cli.data;
 
 import br.unicamp.cst.cli.util.TemplatesBundle;
+import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.ast.expr.AssignExpr;
-import com.github.javaparser.ast.expr.MethodCallExpr;
-import com.github.javaparser.ast.expr.NameExpr;
-import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.comments.LineComment;
+import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.observer.PropagatingAstObserver;
 import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.PrimitiveType;
+
+import org.yaml.snakeyaml.error.YAMLException;
 
 import java.awt.event.MouseWheelEvent;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 import static br.unicamp.cst.cli.commands.CSTInit.TAB;
+import static br.unicamp.cst.cli.util.Constants.MUTABLE_NUMBER_CLASS;
 
 public class CodeletConfig {
+    public static final String PERIODIC_TRIGGER = "periodic";
+    public static final String ON_CHANGE_TRIGGER = "onChange";
+    public static final String PLAIN_SKELETON = "plain";
+    public static final String CACHED_SKELETON = "cached";
+    private static final String RESOLVED_FIELD = "memoriesResolved";
+    private static final String TRACE_CODELET_FIELD = "TRACE_CODELET";
+
     private String name;
     private String group;
     private List<String> in = new ArrayList<>();
     private List<String> out = new ArrayList<>();
     private List<String> broadcast = new ArrayList<>();
+    private String trigger;
 
     public CodeletConfig() {
     }
@@ -84,23 +106,89 @@ public class CodeletConfig {
         this.broadcast.add(mem);
     }
 
+    /**
+     * When the codelet runs: every time step ({@value #PERIODIC_TRIGGER}, the default) or
+     * right after one of its input memories is updated ({@value #ON_CHANGE_TRIGGER}).
+     */
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public void setTrigger(String trigger) {
+        if (trigger != null && !isValidTrigger(trigger)) {
+            System.out.println("CODELET[" + this.getName() + "]: trigger should be '" + PERIODIC_TRIGGER + "' or '" + ON_CHANGE_TRIGGER + "'");
+            throw new YAMLException("CODELET[" + this.getName() + "]: trigger should be '" + PERIODIC_TRIGGER + "' or '" + ON_CHANGE_TRIGGER + "'");
+        }
+        this.trigger = trigger;
+    }
+
+    public boolean isTriggeredOnChange() {
+        return ON_CHANGE_TRIGGER.equals(trigger);
+    }
+
+    public static boolean isValidTrigger(String trigger) {
+        return PERIODIC_TRIGGER.equals(trigger) || ON_CHANGE_TRIGGER.equals(trigger);
+    }
+
     public String generateCode(String rootPackage) {
+        return generateCode(rootPackage, false, false, false);
+    }
+
+    public static boolean isValidSkeleton(String skeleton) {
+        return PLAIN_SKELETON.equals(skeleton) || CACHED_SKELETON.equals(skeleton);
+    }
+
+    /**
+     * @param measured      whether the agent publishes metrics, the codelet then extends the generated
+     *                      MeasuredCodelet and implements doProc() instead of proc()
+     * @param cachedHandles whether accessMemoryObjects() looks its memories up only once. CST calls it
+     *                      every cycle, the plain skeleton searches the wired memories by name each time
+     * @param traced        whether the agent traces memory accesses, the read and update helpers of the
+     *                      codelet then record every access in the generated MemoryTrace
+     */
+    public String generateCode(String rootPackage, boolean measured, boolean cachedHandles, boolean traced) {
+        return generateCode(rootPackage, measured, cachedHandles, traced, Set.of());
+    }
+
+    /**
+     * @param queues names of the queue memories of the agent, proc() takes a batch of messages from
+     *               each one the codelet reads
+     */
+    public String generateCode(String rootPackage, boolean measured, boolean cachedHandles, boolean traced, Set<String> queues) {
+        return generateCode(rootPackage, measured, cachedHandles, traced, queues, false);
+    }
+
+    /**
+     * @param mutableNumbers whether the update helpers also write doubles and longs in place, through a
+     *                       {@code MutableNumber} kept per output. Readers of those outputs then get
+     *                       that object instead of a Double or a Long.
+     */
+    public String generateCode(String rootPackage, boolean measured, boolean cachedHandles, boolean traced, Set<String> queues,
+                               boolean mutableNumbers) {
 
         CompilationUnit compilationUnit = new CompilationUnit();
 
         compilationUnit.setPackageDeclaration(this.getPackage(rootPackage));
-        compilationUnit.addImport("br.unicamp.cst.core.entities.Codelet");
+        if (measured)
+            compilationUnit.addImport(rootPackage + ".metrics.MeasuredCodelet");
+        else
+            compilationUnit.addImport("br.unicamp.cst.core.entities.Codelet");
         compilationUnit.addImport("br.unicamp.cst.core.entities.Memory");
+        if (traced)
+            compilationUnit.addImport(rootPackage + ".trace.MemoryTrace");
 
-        ClassOrInterfaceDeclaration codeletClass = compilationUnit.addClass(this.getName()).setPublic(true).addExtendedType("Codelet");
+        ClassOrInterfaceDeclaration codeletClass = compilationUnit.addClass(this.getName()).setPublic(true)
+                .addExtendedType(measured ? "MeasuredCodelet" : "Codelet");
 
         BlockStmt memoryAccessMethod = new BlockStmt();
+        List<String> handles = new ArrayList<>();
 
         for (String input : this.getIn()){
             codeletClass.addPrivateField("Memory", input);
             MethodCallExpr getInput = new MethodCallExpr("getInput", new StringLiteralExpr(input));
             AssignExpr initMemory = new AssignExpr(new NameExpr(input), getInput, AssignExpr.Operator.ASSIGN);
             memoryAccessMethod.addStatement(initMemory);
+            handles.add(input);
         }
 
         for (String output : this.getOut()){
@@ -108,6 +196,7 @@ public class CodeletConfig {
             MethodCallExpr getOutput = new MethodCallExpr("getOutput", new StringLiteralExpr(output));
             AssignExpr initMemory = new AssignExpr(new NameExpr(output), getOutput, AssignExpr.Operator.ASSIGN);
             memoryAccessMethod.addStatement(initMemory);
+            handles.add(output);
         }
 
         for (String broadcast : this.getBroadcast()){
@@ -115,24 +204,212 @@ public class CodeletConfig {
             MethodCallExpr getBroadcast = new MethodCallExpr("getOutput", new StringLiteralExpr(broadcast));
             AssignExpr initMemory = new AssignExpr(new NameExpr(broadcast), getBroadcast, AssignExpr.Operator.ASSIGN);
             memoryAccessMethod.addStatement(initMemory);
+            handles.add(broadcast);
         }
 
+        if (cachedHandles && !handles.isEmpty())
+            cacheHandles(codeletClass, memoryAccessMethod, handles);
+
         codeletClass.addMethod("accessMemoryObjects")
                 .setPublic(true)
                 .addAnnotation("Override")
                 .setBody(memoryAccessMethod);
+        BlockStmt activationBody = new BlockStmt();
+        BlockStmt procBody = new BlockStmt();
+        if (cachedHandles && !handles.isEmpty()) {
+            activationBody.addOrphanComment(new LineComment(" Keep the activation a primitive double, boxed values are allocated on every cycle"));
+            procBody.addOrphanComment(new LineComment(traced
+                    ? " Memories are resolved once, only accesses through the read and update helpers below are traced"
+                    : " Memories are resolved once, use the read and update helpers below"));
+        } else if (traced && !handles.isEmpty()) {
+            procBody.addOrphanComment(new LineComment(" Only accesses through the read and update helpers below are traced"));
+        }
         codeletClass.addMethod("calculateActivation")
                 .setPublic(true)
                 .addAnnotation("Override")
-                .setBody(new BlockStmt());
-        codeletClass.addMethod("proc")
+                .setBody(activationBody);
+        codeletClass.addMethod(measured ? "doProc" : "proc")
                 .setPublic(true)
                 .addAnnotation("Override")
-                .setBody(new BlockStmt());
+                .setBody(procBody);
+
+        List<String> readQueues = this.getIn().stream().filter(queues::contains).toList();
+        if (!readQueues.isEmpty())
+            addQueueDrains(compilationUnit, codeletClass, procBody, rootPackage, readQueues, traced);
+        if (traced)
+            addTraceIds(codeletClass, handles);
+        if (cachedHandles || traced || mutableNumbers)
+            addHandleHelpers(compilationUnit, codeletClass, rootPackage, traced, mutableNumbers ? numberOutputs(queues) : List.of());
 
         return compilationUnit.toString();
     }
 
+    /**
+     * Guards the lookups so they run until every memory is found and never again. The handles
+     * cannot be final, CST wires the codelet after constructing it.
+     */
+    private static void cacheHandles(ClassOrInterfaceDeclaration codeletClass, BlockStmt memoryAccessMethod, List<String> handles) {
+        codeletClass.addPrivateField("boolean", RESOLVED_FIELD);
+        memoryAccessMethod.addStatement(0, new IfStmt(new NameExpr(RESOLVED_FIELD), new ReturnStmt(), null));
+        Expression resolved = null;
+        for (String handle : handles) {
+            Expression found = new BinaryExpr(new NameExpr(handle), new NullLiteralExpr(), BinaryExpr.Operator.NOT_EQUALS);
+            resolved = resolved == null ? found : new BinaryExpr(resolved, found, BinaryExpr.Operator.AND);
+        }
+        memoryAccessMethod.addStatement(new AssignExpr(new NameExpr(RESOLVED_FIELD), resolved, AssignExpr.Operator.ASSIGN));
+    }
+
+    /**
+     * The batches are allocated with the codelet, draining a queue allocates nothing
+     */
+    private static void addQueueDrains(CompilationUnit compilationUnit, ClassOrInterfaceDeclaration codeletClass, BlockStmt procBody,
+                                       String rootPackage, List<String> queues, boolean traced) {
+        compilationUnit.addImport(rootPackage + ".memory.RingBufferMemory");
+        for (String queue : queues) {
+            String batch = queue + "Batch";
+            String count = queue + "Count";
+            VariableDeclarator batchField = new VariableDeclarator(StaticJavaParser.parseType("Object[]"), batch,
+                    StaticJavaParser.parseExpression("new Object[RingBufferMemory.DEFAULT_BATCH]"));
+            // Batches go after the memory fields
+            int lastField = 0;
+            for (int i = 0; i < codeletClass.getMembers().size(); i++) {
+                if (codeletClass.getMember(i).isFieldDeclaration())
+                    lastField = i + 1;
+            }
+            codeletClass.getMembers().add(lastField, new FieldDeclaration(
+                    new NodeList<>(Modifier.privateModifier(), Modifier.finalModifier()), batchField));
+            if (traced)
+                traceAccess(procBody, true, "read", queue);
+            Statement drain = StaticJavaParser.parseStatement("int " + count + " = ((RingBufferMemory) " + queue + ").drainTo(" + batch + ");");
+            drain.setLineComment(" " + queue + " is a queue, each cycle takes the messages waiting in it, oldest first, up to " + batch + ".length");
+            procBody.addStatement(drain);
+            procBody.addStatement(StaticJavaParser.parseStatement("for (int i = 0; i < " + count + "; i++) { Object message = " + batch + "[i]; }"));
+        }
+    }
+
+    /**
+     * Names are interned once per class, records only carry the integer ids
+     */
+    private void addTraceIds(ClassOrInterfaceDeclaration codeletClass, List<String> handles) {
+        List<FieldDeclaration> ids = new ArrayList<>();
+        ids.add(traceIdDeclaration(TRACE_CODELET_FIELD, "codeletId", this.getName()));
+        for (String handle : new LinkedHashSet<>(handles))
+            ids.add(traceIdDeclaration(traceIdField(handle), "memoryId", handle));
+        // Constants go before the memory fields
+        codeletClass.getMembers().addAll(0, ids);
+    }
+
+    private static FieldDeclaration traceIdDeclaration(String field, String function, String name) {
+        VariableDeclarator id = new VariableDeclarator(PrimitiveType.intType(), field,
+                new MethodCallExpr(new NameExpr("MemoryTrace"), function, new NodeList<>(new StringLiteralExpr(name))));
+        return new FieldDeclaration(new NodeList<>(Modifier.privateModifier(), Modifier.staticModifier(), Modifier.finalModifier()), id);
+    }
+
+    /**
+     * Whether the generated code writes numbers through the {@code MutableNumber} memory class, which
+     * the project must then have
+     */
+    public boolean writesMutableNumbers(boolean mutableNumbers, Set<String> queues) {
+        return mutableNumbers && !numberOutputs(queues).isEmpty();
+    }
+
+    // Queue messages must be distinct objects, they are only written boxed
+    private List<String> numberOutputs(Set<String> queues) {
+        List<String> written = new ArrayList<>(this.getOut());
+        written.addAll(this.getBroadcast());
+        return written.stream().filter(memory -> !queues.contains(memory)).distinct().toList();
+    }
+
+    /**
+     * @param numbers outputs also written as primitives, through a {@code MutableNumber} each
+     */
+    private void addHandleHelpers(CompilationUnit compilationUnit, ClassOrInterfaceDeclaration codeletClass, String rootPackage,
+                                  boolean traced, List<String> numbers) {
+        for (String input : this.getIn()) {
+            // The cast is checked where the value is used, reading neither allocates nor boxes
+            BlockStmt read = traceAccess(new BlockStmt(), traced, "read", input);
+            codeletClass.addMethod("read" + input, Modifier.Keyword.PRIVATE)
+                    .addSingleMemberAnnotation("SuppressWarnings", new StringLiteralExpr("unchecked"))
+                    .addTypeParameter("T")
+                    .setType("T")
+                    .setBody(read.addStatement(new ReturnStmt(new CastExpr(new ClassOrInterfaceType(null, "T"),
+                            new MethodCallExpr(new NameExpr(input), "getI")))));
+            BlockStmt readDouble = traceAccess(new BlockStmt(), traced, "read", input);
+            codeletClass.addMethod("read" + input + "AsDouble", Modifier.Keyword.PRIVATE)
+                    .setType("double")
+                    .setBody(readDouble.addStatement(new ReturnStmt(new MethodCallExpr(
+                            new EnclosedExpr(new CastExpr(new ClassOrInterfaceType(null, "Number"),
+                                    new MethodCallExpr(new NameExpr(input), "getI"))), "doubleValue"))));
+        }
+        if (!numbers.isEmpty())
+            compilationUnit.addImport(rootPackage + ".memory." + MUTABLE_NUMBER_CLASS);
+        // Holders go after the memory fields
+        int lastField = 0;
+        for (int i = 0; i < codeletClass.getMembers().size(); i++) {
+            if (codeletClass.getMember(i).isFieldDeclaration())
+                lastField = i + 1;
+        }
+        List<String> written = new ArrayList<>(this.getOut());
+        written.addAll(this.getBroadcast());
+        for (String output : new LinkedHashSet<>(written)) {
+            BlockStmt update = new BlockStmt().addStatement(new MethodCallExpr(new NameExpr(output), "setI", new NodeList<>(new NameExpr("value"))));
+            codeletClass.addMethod("update" + output, Modifier.Keyword.PRIVATE)
+                    .addParameter("Object", "value")
+                    .setBody(traceAccess(update, traced, "write", output));
+            if (!numbers.contains(output))
+                continue;
+            for (String kind : List.of("Double", "Long")) {
+                String holder = output + kind;
+                FieldDeclaration holderField = new FieldDeclaration(new NodeList<>(Modifier.privateModifier(), Modifier.finalModifier()),
+                        new VariableDeclarator(new ClassOrInterfaceType(null, MUTABLE_NUMBER_CLASS), holder,
+                                StaticJavaParser.parseExpression(MUTABLE_NUMBER_CLASS + ".of" + kind + "()")));
+                if (output.equals(numbers.get(0)) && kind.equals("Double"))
+                    holderField.setLineComment(" Primitives are written in place, updating a number allocates nothing after the first write");
+                codeletClass.getMembers().add(lastField++, holderField);
+
+                BlockStmt updateNumber = new BlockStmt()
+                        .addStatement(new MethodCallExpr(new NameExpr(holder), "set", new NodeList<>(new NameExpr("value"))))
+                        .addStatement(new MethodCallExpr(new NameExpr(output), "setI", new NodeList<>(new NameExpr(holder))));
+                codeletClass.addMethod("update" + output, Modifier.Keyword.PRIVATE)
+                        .addParameter(kind.toLowerCase(), "value")
+                        .setBody(traceAccess(updateNumber, traced, "write", output));
+            }
+        }
+    }
+
+    private static BlockStmt traceAccess(BlockStmt body, boolean traced, String access, String memory) {
+        if (traced)
+            body.addStatement(new MethodCallExpr(new NameExpr("MemoryTrace"), access,
+                    new NodeList<>(new NameExpr(TRACE_CODELET_FIELD), new NameExpr(traceIdField(memory)))));
+        return body;
+    }
+
+    /**
+     * MemOne becomes TRACE_MEM_ONE
+     */
+    static String traceIdField(String memory) {
+        String words = memory.replaceAll("([a-z0-9])([A-Z])", "$1_$2").replaceAll("[^A-Za-z0-9]+", "_");
+        return "TRACE_" + words.toUpperCase();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CodeletConfig that = (CodeletConfig) o;
+        return Objects.equals(name, that.name) &&
+                Objects.equals(group, that.group) &&
+                Objects.equals(in, that.in) &&
+                Objects.equals(out, that.out) &&
+                Objects.equals(broadcast, that.broadcast) &&
+                isTriggeredOnChange() == that.isTriggeredOnChange();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, group, in, out, broadcast, isTriggeredOnChange());
+    }
+
     @Override
     public String toString() {
         return "CodeletConfig{" +
@@ -141,6 +418,7 @@ public class CodeletConfig {
                 ", in=" + in +
                 ", out=" + out +
                 ", broadcast=" + broadcast +
+                (trigger != null ? ", trigger=" + trigger : "") +
                 '}';
     }
 
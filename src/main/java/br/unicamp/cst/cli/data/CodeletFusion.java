@@ -0,0 +1,82 @@
+package br.unicamp.cst.cli.data;
+
+import java.util.*;
+
+/**
+ * Finds the chains of codelets that {@code fusion: true} runs as a single codelet. Two codelets are
+ * chained by a memory that the first one writes as its only output and the second one reads as its
+ * only input, when no other codelet writes or reads it. Codelets triggered on change are never
+ * fused, they run when their inputs change and not on a time step, and neither are codelets linked
+ * by a queue, which is there to let the consumer fall behind the producer.
+ */
+public final class CodeletFusion {
+
+    private CodeletFusion() {
+    }
+
+    /**
+     * @return the chains of at least two codelets, each in the order its stages run, in the order
+     * their first codelet is declared
+     */
+    public static List<List<CodeletConfig>> findChains(AgentConfig agentConfig) {
+        Map<String, List<CodeletConfig>> writers = new HashMap<>();
+        Map<String, List<CodeletConfig>> readers = new HashMap<>();
+        for (CodeletConfig codelet : agentConfig.getCodelets()) {
+            for (String memory : codelet.getIn())
+                readers.computeIfAbsent(memory, m -> new ArrayList<>()).add(codelet);
+            for (List<String> written : List.of(codelet.getOut(), codelet.getBroadcast())) {
+                for (String memory : written)
+                    writers.computeIfAbsent(memory, m -> new ArrayList<>()).add(codelet);
+            }
+        }
+
+        Map<CodeletConfig, CodeletConfig> next = new IdentityHashMap<>();
+        Set<CodeletConfig> chained = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (CodeletConfig codelet : agentConfig.getCodelets()) {
+            if (codelet.isTriggeredOnChange() || codelet.getOut().size() != 1 || !codelet.getBroadcast().isEmpty())
+                continue;
+            String link = codelet.getOut().get(0);
+            List<CodeletConfig> linkReaders = readers.getOrDefault(link, List.of());
+            if (writers.get(link).size() != 1 || linkReaders.size() != 1 || isQueue(agentConfig, link))
+                continue;
+            CodeletConfig reader = linkReaders.get(0);
+            if (reader != codelet && !reader.isTriggeredOnChange() && reader.getIn().size() == 1) {
+                next.put(codelet, reader);
+                chained.add(reader);
+            }
+        }
+
+        List<List<CodeletConfig>> chains = new ArrayList<>();
+        for (CodeletConfig codelet : agentConfig.getCodelets()) {
+            // Chains start at a codelet nothing is chained to, links that only form a loop stay apart
+            if (chained.contains(codelet) || !next.containsKey(codelet))
+                continue;
+            List<CodeletConfig> chain = new ArrayList<>();
+            for (CodeletConfig stage = codelet; stage != null; stage = next.get(stage))
+                chain.add(stage);
+            chains.add(chain);
+        }
+        return chains;
+    }
+
+    /**
+     * Whether the code generated for {@code agentConfig} fuses any codelets
+     */
+    public static boolean fuses(AgentConfig agentConfig) {
+        return agentConfig.isFusion() && !findChains(agentConfig).isEmpty();
+    }
+
+    private static boolean isQueue(AgentConfig agentConfig, String memory) {
+        return agentConfig.getMemories().stream().anyMatch(m -> m.getName().equals(memory) && m.isQueue());
+    }
+
+    /**
+     * The memories passed between the stages of {@code chain}
+     */
+    public static List<String> links(List<CodeletConfig> chain) {
+        List<String> links = new ArrayList<>();
+        for (int i = 0; i < chain.size() - 1; i++)
+            links.add(chain.get(i).getOut().get(0));
+        return links;
+    }
+}
@@ -0,0 +1,207 @@
+package br.unicamp.cst.cli.data;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Parses codelet sources to find which memories each codelet really accesses through
+ * getInput/getOutput, so it can be compared with the wiring declared in the AgentMind.
+ */
+public class CodeletSourceAnalyzer {
+
+    private static final String GET_INPUT_FUNCTION = "getInput";
+    private static final String GET_OUTPUT_FUNCTION = "getOutput";
+
+    // JavaParser instances are not thread safe, each worker keeps its own parser and configuration
+    private static final ThreadLocal<JavaParser> PARSER = ThreadLocal.withInitial(() -> {
+        ParserConfiguration configuration = new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)
+                .setAttributeComments(false)
+                .setStoreTokens(false);
+        return new JavaParser(configuration);
+    });
+
+    public static List<CodeletAccess> analyze(Path codeletsDir) throws IOException {
+        if (!Files.isDirectory(codeletsDir))
+            return new ArrayList<>();
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(codeletsDir)) {
+            sources = files.filter(f -> f.toString().endsWith(".java")).sorted().toList();
+        }
+
+        int workers = Math.max(1, Math.min(sources.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<CodeletAccess>> results = new ArrayList<>();
+            for (Path source : sources)
+                results.add(executor.submit(() -> analyzeFile(source)));
+
+            List<CodeletAccess> accesses = new ArrayList<>();
+            for (Future<CodeletAccess> result : results) {
+                CodeletAccess access = result.get();
+                if (access != null)
+                    accesses.add(access);
+            }
+            return accesses;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static CodeletAccess analyzeFile(Path source) {
+        ParseResult<CompilationUnit> result = PARSER.get().parse(readSource(source));
+        if (!result.isSuccessful() || result.getResult().isEmpty())
+            return null;
+        CompilationUnit cu = result.getResult().get();
+        Optional<TypeDeclaration<?>> primaryType = cu.getPrimaryType();
+        if (primaryType.isEmpty() && !cu.getTypes().isEmpty())
+            primaryType = Optional.of(cu.getType(0));
+        if (primaryType.isEmpty())
+            return null;
+
+        CodeletAccess access = new CodeletAccess(primaryType.get().getNameAsString(), source);
+        cu.accept(new MemoryAccessCollector(), access);
+        return access;
+    }
+
+    private static String readSource(Path source) {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<String> findMismatches(AgentConfig agentConfig, List<CodeletAccess> accesses) {
+        Map<String, CodeletAccess> byName = new HashMap<>();
+        for (CodeletAccess access : accesses)
+            byName.put(access.getCodeletName(), access);
+
+        List<String> mismatches = new ArrayList<>();
+        for (CodeletConfig codelet : agentConfig.getCodelets()) {
+            CodeletAccess access = byName.get(codelet.getName());
+            if (access == null) {
+                mismatches.add("CODELET[" + codelet.getName() + "]: source file not found");
+                continue;
+            }
+            Set<String> declaredOutputs = new LinkedHashSet<>(codelet.getOut());
+            declaredOutputs.addAll(codelet.getBroadcast());
+
+            for (String input : access.getInputs()) {
+                if (!codelet.getIn().contains(input))
+                    mismatches.add("CODELET[" + codelet.getName() + "]: reads '" + input + "' but it is not wired as input");
+            }
+            for (String output : access.getOutputs()) {
+                if (!declaredOutputs.contains(output))
+                    mismatches.add("CODELET[" + codelet.getName() + "]: writes '" + output + "' but it is not wired as output");
+            }
+            for (String input : codelet.getIn()) {
+                if (!access.getInputs().contains(input))
+                    mismatches.add("CODELET[" + codelet.getName() + "]: input '" + input + "' is wired but never accessed");
+            }
+            for (String output : declaredOutputs) {
+                if (!access.getOutputs().contains(output))
+                    mismatches.add("CODELET[" + codelet.getName() + "]: output '" + output + "' is wired but never accessed");
+            }
+            if (access.getDynamicAccesses() > 0)
+                mismatches.add("CODELET[" + codelet.getName() + "]: " + access.getDynamicAccesses()
+                        + " memory accesses use non literal names and could not be checked");
+        }
+        return mismatches;
+    }
+
+    static class MemoryAccessCollector extends VoidVisitorAdapter<CodeletAccess> {
+
+        @Override
+        public void visit(MethodCallExpr mc, CodeletAccess access) {
+            super.visit(mc, access);
+            boolean ownMethod = mc.getScope().map(Expression::isThisExpr).orElse(true);
+            String name = mc.getNameAsString();
+            if (!ownMethod || mc.getArguments().size() != 1
+                    || !(name.equals(GET_INPUT_FUNCTION) || name.equals(GET_OUTPUT_FUNCTION)))
+                return;
+
+            Expression argument = mc.getArgument(0);
+            if (!argument.isStringLiteralExpr()) {
+                access.dynamicAccesses++;
+                return;
+            }
+            String memoryName = argument.asStringLiteralExpr().asString();
+            if (name.equals(GET_INPUT_FUNCTION))
+                access.inputs.add(memoryName);
+            else
+                access.outputs.add(memoryName);
+        }
+    }
+
+    public static class CodeletAccess {
+        private final String codeletName;
+        private final Path source;
+        private final Set<String> inputs = new LinkedHashSet<>();
+        private final Set<String> outputs = new LinkedHashSet<>();
+        private int dynamicAccesses;
+
+        CodeletAccess(String codeletName, Path source) {
+            this.codeletName = codeletName;
+            this.source = source;
+        }
+
+        public String getCodeletName() {
+            return codeletName;
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public Set<String> getInputs() {
+            return inputs;
+        }
+
+        public Set<String> getOutputs() {
+            return outputs;
+        }
+
+        public int getDynamicAccesses() {
+            return dynamicAccesses;
+        }
+
+        @Override
+        public String toString() {
+            return "CodeletAccess{" +
+                    "codeletName='" + codeletName + '\'' +
+                    ", inputs=" + inputs +
+                    ", outputs=" + outputs +
+                    '}';
+        }
+    }
+}
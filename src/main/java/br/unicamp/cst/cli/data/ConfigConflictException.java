@@ -0,0 +1,10 @@
+package br.unicamp.cst.cli.data;
+
+public class ConfigConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConfigConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,155 @@
+package br.unicamp.cst.cli.data;
+
+import java.util.*;
+
+import static br.unicamp.cst.cli.data.AgentConfig.getVarName;
+
+/**
+ * Keyed difference between a target agent configuration and the configuration
+ * currently implemented by a project. Elements are matched by their variable name
+ * in the AgentMind, the same key used when the code is generated. Features generated
+ * through the whole project, like metrics or the execution mode, are reported but only
+ * 'cst init --overwrite' can change them.
+ */
+public class ConfigDiff {
+
+    private final List<MemoryConfig> addedMemories = new ArrayList<>();
+    private final List<MemoryConfig> removedMemories = new ArrayList<>();
+    private final List<MemoryConfig> changedMemories = new ArrayList<>();
+    private final List<CodeletConfig> addedCodelets = new ArrayList<>();
+    private final List<CodeletConfig> removedCodelets = new ArrayList<>();
+    private final List<CodeletConfig> rewiredCodelets = new ArrayList<>();
+    private final List<String> changedFeatures = new ArrayList<>();
+
+    public static ConfigDiff between(AgentConfig current, AgentConfig target) {
+        ConfigDiff diff = new ConfigDiff();
+
+        Map<String, MemoryConfig> currentMemories = indexMemories(current.getMemories());
+        Map<String, MemoryConfig> targetMemories = indexMemories(target.getMemories());
+        for (Map.Entry<String, MemoryConfig> entry : targetMemories.entrySet()) {
+            MemoryConfig existing = currentMemories.get(entry.getKey());
+            if (existing == null) {
+                diff.addedMemories.add(entry.getValue());
+            } else if (!sameMemory(existing, entry.getValue())) {
+                diff.changedMemories.add(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, MemoryConfig> entry : currentMemories.entrySet()) {
+            if (!targetMemories.containsKey(entry.getKey()))
+                diff.removedMemories.add(entry.getValue());
+        }
+
+        Map<String, CodeletConfig> currentCodelets = indexCodelets(current.getCodelets());
+        Map<String, CodeletConfig> targetCodelets = indexCodelets(target.getCodelets());
+        for (Map.Entry<String, CodeletConfig> entry : targetCodelets.entrySet()) {
+            CodeletConfig existing = currentCodelets.get(entry.getKey());
+            if (existing == null) {
+                diff.addedCodelets.add(entry.getValue());
+            } else if (!sameWiring(existing, entry.getValue())) {
+                diff.rewiredCodelets.add(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, CodeletConfig> entry : currentCodelets.entrySet()) {
+            if (!targetCodelets.containsKey(entry.getKey()))
+                diff.removedCodelets.add(entry.getValue());
+        }
+
+        diff.compareFeature("metrics", current.isMetrics(), target.isMetrics());
+        diff.compareFeature("trace", current.isTrace(), target.isTrace());
+        diff.compareFeature("capture", current.isCapture(), target.isCapture());
+        diff.compareFeature("checkpoint", current.isCheckpoint(), target.isCheckpoint());
+        diff.compareFeature("lockFree", current.usesSingleWriterMemories(), target.usesSingleWriterMemories());
+        diff.compareFeature("fusion", CodeletFusion.fuses(current), CodeletFusion.fuses(target));
+        if (!current.getExecution().equals(target.getExecution()))
+            diff.changedFeatures.add("execution " + target.getExecution() + " (project: " + current.getExecution() + ")");
+        return diff;
+    }
+
+    private void compareFeature(String feature, boolean current, boolean target) {
+        if (current != target)
+            changedFeatures.add(feature + (target ? " enabled" : " disabled"));
+    }
+
+    private static Map<String, MemoryConfig> indexMemories(List<MemoryConfig> memories) {
+        Map<String, MemoryConfig> index = new LinkedHashMap<>();
+        for (MemoryConfig memory : memories)
+            index.putIfAbsent(getVarName(memory.getName()), memory);
+        return index;
+    }
+
+    private static Map<String, CodeletConfig> indexCodelets(List<CodeletConfig> codelets) {
+        Map<String, CodeletConfig> index = new LinkedHashMap<>();
+        for (CodeletConfig codelet : codelets)
+            index.putIfAbsent(getVarName(codelet.getName()), codelet);
+        return index;
+    }
+
+    private static boolean sameMemory(MemoryConfig a, MemoryConfig b) {
+        if (!Objects.equals(a.getType(), b.getType()) || !Objects.equals(a.getGroup(), b.getGroup()))
+            return false;
+        // Capacity and overflow are arguments of the queue creation, they mean nothing for other types
+        return !a.isQueue() || (a.getEffectiveCapacity() == b.getEffectiveCapacity()
+                && a.getEffectiveOverflow().equals(b.getEffectiveOverflow()));
+    }
+
+    private static boolean sameWiring(CodeletConfig a, CodeletConfig b) {
+        return Objects.equals(a.getGroup(), b.getGroup())
+                && varNames(a.getIn()).equals(varNames(b.getIn()))
+                && varNames(a.getOut()).equals(varNames(b.getOut()))
+                && varNames(a.getBroadcast()).equals(varNames(b.getBroadcast()))
+                && a.isTriggeredOnChange() == b.isTriggeredOnChange();
+    }
+
+    private static List<String> varNames(List<String> names) {
+        return names.stream().map(AgentConfig::getVarName).toList();
+    }
+
+    public boolean isEmpty() {
+        return addedMemories.isEmpty() && removedMemories.isEmpty() && changedMemories.isEmpty()
+                && addedCodelets.isEmpty() && removedCodelets.isEmpty() && rewiredCodelets.isEmpty()
+                && changedFeatures.isEmpty();
+    }
+
+    public List<MemoryConfig> getAddedMemories() {
+        return addedMemories;
+    }
+
+    public List<MemoryConfig> getRemovedMemories() {
+        return removedMemories;
+    }
+
+    public List<MemoryConfig> getChangedMemories() {
+        return changedMemories;
+    }
+
+    public List<CodeletConfig> getAddedCodelets() {
+        return addedCodelets;
+    }
+
+    public List<CodeletConfig> getRemovedCodelets() {
+        return removedCodelets;
+    }
+
+    public List<CodeletConfig> getRewiredCodelets() {
+        return rewiredCodelets;
+    }
+
+    /**
+     * Project wide features the target sets differently, as "name enabled" or "name disabled"
+     */
+    public List<String> getChangedFeatures() {
+        return changedFeatures;
+    }
+
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        addedMemories.forEach(m -> lines.add("+ memory " + m.getName()));
+        removedMemories.forEach(m -> lines.add("- memory " + m.getName()));
+        changedMemories.forEach(m -> lines.add("~ memory " + m.getName()));
+        addedCodelets.forEach(c -> lines.add("+ codelet " + c.getName()));
+        removedCodelets.forEach(c -> lines.add("- codelet " + c.getName()));
+        rewiredCodelets.forEach(c -> lines.add("~ codelet " + c.getName()));
+        changedFeatures.forEach(f -> lines.add("~ feature " + f));
+        return lines;
+    }
+}
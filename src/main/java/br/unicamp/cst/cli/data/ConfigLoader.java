@@ -0,0 +1,227 @@
+package br.unicamp.cst.cli.data;
+
+import br.unicamp.cst.cli.util.CSTHome;
+import br.unicamp.cst.cli.util.Constants;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Loads an agent config together with every fragment listed in its {@code include} patterns.
+ * <p>
+ * Patterns are globs relative to the file that declares them. Fragments of the same include level
+ * are parsed in parallel and merged in a deterministic order (the including file first, then its
+ * fragments sorted by path) with {@link AgentConfig.MergePolicy#FAIL_ON_CONFLICT}. Parsed fragments
+ * are cached by content hash, in memory and as binary snapshots under the CST home, so only the
+ * fragments that changed since the last run are parsed again. Snapshots are kept per CLI version
+ * and binary format version, a CLI never reads the ones another version wrote.
+ */
+public class ConfigLoader {
+
+    private static final Map<String, byte[]> PARSED = new ConcurrentHashMap<>();
+
+    public static AgentConfig load(File config) throws IOException {
+        if (config == null)
+            return new AgentConfig();
+        Path rootPath = config.toPath().toAbsolutePath().normalize();
+        AgentConfig merged;
+        try {
+            merged = loadFile(rootPath);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (merged.getInclude().isEmpty())
+            return merged;
+
+        Set<Path> visited = new HashSet<>();
+        visited.add(rootPath);
+        Map<Path, AgentConfig> level = Map.of(rootPath, merged);
+
+        int workers = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            while (!level.isEmpty()) {
+                List<Path> fragments = new ArrayList<>();
+                for (Map.Entry<Path, AgentConfig> entry : level.entrySet()) {
+                    for (Path fragment : resolveIncludes(entry.getKey(), entry.getValue().getInclude())) {
+                        // A fragment included twice, or including one of its parents, is only merged once
+                        if (visited.add(fragment))
+                            fragments.add(fragment);
+                    }
+                }
+
+                List<Future<AgentConfig>> results = new ArrayList<>();
+                for (Path fragment : fragments)
+                    results.add(executor.submit(() -> loadFile(fragment)));
+
+                Map<Path, AgentConfig> next = new LinkedHashMap<>();
+                for (int i = 0; i < fragments.size(); i++) {
+                    AgentConfig fragmentConfig = results.get(i).get();
+                    try {
+                        merged.mergeWith(fragmentConfig, AgentConfig.MergePolicy.FAIL_ON_CONFLICT);
+                    } catch (ConfigConflictException e) {
+                        throw new ConfigConflictException(e.getMessage() + " (merging " + fragments.get(i) + ")");
+                    }
+                    if (!fragmentConfig.getInclude().isEmpty())
+                        next.put(fragments.get(i), fragmentConfig);
+                }
+                level = next;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        merged.setInclude(new ArrayList<>());
+        return merged;
+    }
+
+    /**
+     * Expands the include patterns of {@code config} into the matching files, sorted by path.
+     * Patterns without wildcards must point to an existing file.
+     */
+    public static List<Path> resolveIncludes(Path config, List<String> patterns) throws IOException {
+        Path baseDir = config.toAbsolutePath().getParent();
+        Set<Path> files = new TreeSet<>();
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isBlank())
+                continue;
+            String[] segments = pattern.replace('\\', '/').split("/");
+            int firstGlob = 0;
+            while (firstGlob < segments.length && !isGlob(segments[firstGlob]))
+                firstGlob++;
+
+            if (firstGlob == segments.length) {
+                Path file = baseDir.resolve(pattern).normalize();
+                if (!Files.isRegularFile(file))
+                    throw new NoSuchFileException(file.toString(), null, "included from " + config);
+                files.add(file);
+                continue;
+            }
+
+            Path walkRoot = baseDir.resolve(String.join("/", Arrays.copyOfRange(segments, 0, firstGlob))).normalize();
+            String remaining = String.join("/", Arrays.copyOfRange(segments, firstGlob, segments.length));
+            if (!Files.isDirectory(walkRoot))
+                continue;
+            PathMatcher matcher = walkRoot.getFileSystem().getPathMatcher("glob:" + remaining);
+            if (remaining.startsWith("**/")) {
+                // Unlike the JDK glob, a leading **/ also matches files directly inside the walked directory
+                PathMatcher deepMatcher = matcher;
+                PathMatcher shallowMatcher = walkRoot.getFileSystem().getPathMatcher("glob:" + remaining.substring(3));
+                matcher = path -> deepMatcher.matches(path) || shallowMatcher.matches(path);
+            }
+            int depth = remaining.contains("**") ? Integer.MAX_VALUE : segments.length - firstGlob;
+            PathMatcher finalMatcher = matcher;
+            try (Stream<Path> walk = Files.walk(walkRoot, depth)) {
+                walk.filter(Files::isRegularFile)
+                        .filter(f -> finalMatcher.matches(walkRoot.relativize(f)))
+                        .forEach(f -> files.add(f.normalize()));
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(String segment) {
+        for (char c : segment.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{')
+                return true;
+        }
+        return false;
+    }
+
+    private static AgentConfig loadFile(Path file) {
+        try {
+            byte[] content = Files.readAllBytes(file);
+            String hash = sha256(content);
+            byte[] parsed = PARSED.get(hash);
+            if (parsed == null) {
+                parsed = readCache(hash);
+                if (parsed == null) {
+                    parsed = BinaryConfigFormat.encode(parse(content));
+                    writeCache(hash, parsed);
+                }
+                PARSED.put(hash, parsed);
+            }
+            // Every load decodes a fresh copy, merging mutates the configs it receives
+            return BinaryConfigFormat.decode(ByteBuffer.wrap(parsed));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static AgentConfig parse(byte[] content) throws IOException {
+        if (BinaryConfigFormat.isBinary(content))
+            return BinaryConfigFormat.decode(ByteBuffer.wrap(content));
+        String configInfo = new String(content, StandardCharsets.UTF_8);
+        if (configInfo.isBlank())
+            return new AgentConfig();
+        Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, ConfigParser.loaderOptions()));
+        AgentConfig agentConfig = yamlParser.load(configInfo);
+        return agentConfig == null ? new AgentConfig() : agentConfig;
+    }
+
+    private static byte[] readCache(String hash) {
+        Path cached = cacheFile(hash);
+        if (!Files.isRegularFile(cached))
+            return null;
+        try {
+            byte[] bytes = Files.readAllBytes(cached);
+            // Validates the checksum, a damaged cache entry is simply parsed again
+            BinaryConfigFormat.decode(ByteBuffer.wrap(bytes));
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeCache(String hash, byte[] parsed) {
+        Path cached = cacheFile(hash);
+        Path temp = null;
+        try {
+            Files.createDirectories(cached.getParent());
+            temp = Files.createTempFile(cached.getParent(), hash, ".tmp");
+            Files.write(temp, parsed);
+            // Concurrent CLI runs may write the same entry, readers only ever see a complete file
+            Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The cache is only an optimization, a read only home must not break loading
+            try {
+                if (temp != null)
+                    Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Another CLI version may read the snapshots differently, each one keeps its own
+    private static Path cacheFile(String hash) {
+        return CSTHome.cacheDir().resolve(Constants.CLI_VERSION).resolve("fragments")
+                .resolve(hash + "-v" + BinaryConfigFormat.VERSION + ".bin");
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
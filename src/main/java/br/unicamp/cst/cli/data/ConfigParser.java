@@ -11,6 +11,9 @@ import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.visitor.VoidVisitor;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -23,16 +26,8 @@ import static br.unicamp.cst.cli.util.Constants.*;
 public class ConfigParser {
 
     public static AgentConfig parseProjectToConfig() {
-        // Get root dir. Traverse up if necessary, until find folder src/
-        File currDir = new File(System.getProperty("user.dir"));
-
-        File srcFolder = new File(currDir.getAbsolutePath() + "/src");
-        while (currDir != null && !srcFolder.exists()) {
-            srcFolder = new File(currDir.getAbsolutePath() + "/src");
-            currDir = currDir.getParentFile();
-        }
-
-        if (!srcFolder.exists()) return new AgentConfig();
+        File currDir = findProjectRoot();
+        if (currDir == null) return new AgentConfig();
 
         //Read settings.gradle file to collect project name for agent config
         File gradleSettings = new File(currDir.getAbsolutePath() + "/settings.gradle");
@@ -49,19 +44,8 @@ public class ConfigParser {
         }
 
 
-        //Traverse folders and get packageName
-        //Find AgentMind file
-        srcFolder = new File(srcFolder, "main");
-        if (!srcFolder.exists())
-            return new AgentConfig();
-
-        File agentMindFile = new File(srcFolder, "AgentMind.java");
-        while (!agentMindFile.exists() && srcFolder.listFiles() != null) {
-            srcFolder = srcFolder.listFiles()[0];
-            agentMindFile = new File(srcFolder, "AgentMind.java");
-        }
-
-        if (!agentMindFile.exists())
+        File agentMindFile = findAgentMindFile(currDir);
+        if (agentMindFile == null)
             return new AgentConfig();
 
         ConstructorDeclaration agentConstructor = null;
@@ -90,6 +74,68 @@ public class ConfigParser {
 
     }
 
+    public static List<String> checkCodeletWiring(AgentConfig agentConfig) throws IOException {
+        File projectRoot = findProjectRoot();
+        if (projectRoot == null || agentConfig.getPackageName() == null)
+            return new ArrayList<>();
+        File codeletsDir = new File(projectRoot, "src/main/java/" + agentConfig.getPackageName().replace(".", "/") + "/codelets");
+        List<CodeletSourceAnalyzer.CodeletAccess> accesses = CodeletSourceAnalyzer.analyze(codeletsDir.toPath());
+        return CodeletSourceAnalyzer.findMismatches(agentConfig, accesses);
+    }
+
+    public static AgentConfig parseConfigFile(File config) throws IOException {
+        if (config != null && BinaryConfigFormat.isBinary(config.toPath()))
+            return BinaryConfigFormat.read(config.toPath());
+        String configInfo = "";
+        if (config != null) {
+            configInfo = Files.lines(config.toPath()).collect(Collectors.joining("\n"));
+        }
+        if (configInfo.isBlank()) {
+            return new AgentConfig();
+        }
+        Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, loaderOptions()));
+        return yamlParser.load(configInfo);
+    }
+
+    public static LoaderOptions loaderOptions() {
+        LoaderOptions options = new LoaderOptions();
+        // Large agents easily go over the default limit of 3MB
+        options.setCodePointLimit(Integer.MAX_VALUE);
+        return options;
+    }
+
+    public static File findProjectRoot() {
+        // Get root dir. Traverse up if necessary, until find folder src/
+        File currDir = new File(System.getProperty("user.dir"));
+
+        File srcFolder = new File(currDir.getAbsolutePath() + "/src");
+        while (currDir != null && !srcFolder.exists()) {
+            srcFolder = new File(currDir.getAbsolutePath() + "/src");
+            currDir = currDir.getParentFile();
+        }
+
+        if (!srcFolder.exists()) return null;
+        return srcFolder.getParentFile();
+    }
+
+    public static File findAgentMindFile(File projectRoot) {
+        //Traverse folders and get packageName
+        //Find AgentMind file
+        File srcFolder = new File(projectRoot, "src/main");
+        if (!srcFolder.exists())
+            return null;
+
+        File agentMindFile = new File(srcFolder, "AgentMind.java");
+        while (!agentMindFile.exists() && srcFolder.listFiles() != null) {
+            srcFolder = srcFolder.listFiles()[0];
+            agentMindFile = new File(srcFolder, "AgentMind.java");
+        }
+
+        if (!agentMindFile.exists())
+            return null;
+        return agentMindFile;
+    }
+
     static class ConstructorCollector extends VoidVisitorAdapter<List<ConstructorDeclaration>>{
 
         @Override
@@ -113,6 +159,8 @@ public class ConfigParser {
                 memoryConfig.setType(MemoryConfig.CONTAINER_TYPE);
             } else if (vd.getTypeAsString().equals(MEMORY_BASE_TYPE)) {
                 agentConfig.findMemoryOrCreate(vd.getNameAsString());
+            } else if (isFusedCodelet(vd)) {
+                agentConfig.setFusion(true);
             } else if (vd.getTypeAsString().equals("Codelet")) {
                 if (vd.getInitializer().isPresent()) {
                     String codeletName = vd.getInitializer().get().asObjectCreationExpr().getType().asString();
@@ -142,6 +190,19 @@ public class ConfigParser {
                     memoryConfig.ifPresent(config -> config.setType(MemoryConfig.CONTAINER_TYPE));
                     memoryConfig.ifPresent(config -> config.setName(memoryName));
                 }
+            } else if (isGeneratedMemoryCreation(mc)) {
+                String memoryName = mc.getArgument(1).asStringLiteralExpr().asString();
+                String memoryClass = mc.getScope().get().toString();
+                Optional<MemoryConfig> memoryConfig = agentConfig.findMemory(memoryName);
+                memoryConfig.ifPresent(config -> config.setName(memoryName));
+                if (memoryClass.equals(RING_BUFFER_MEMORY_CLASS)) {
+                    memoryConfig.ifPresent(config -> readQueue(mc, config));
+                } else if (memoryClass.equals(STRIPED_COUNTER_CLASS)) {
+                    memoryConfig.ifPresent(config -> config.setType(MemoryConfig.COUNTER_TYPE));
+                } else {
+                    memoryConfig.ifPresent(config -> config.setType(MemoryConfig.OBJECT_TYPE));
+                    agentConfig.setLockFree(true);
+                }
             } else if (mc.getNameAsString().equals(REGISTER_MEMORY_FUNCTION)){
                 NodeList<Expression> args = mc.getArguments();
                 if (!args.isEmpty()) {
@@ -165,10 +226,91 @@ public class ConfigParser {
                 addMemoryToCodelet(mc, agentConfig, 2);
             } else if (mc.getNameAsString().equals("addBroadcast")) {
                 addMemoryToCodelet(mc, agentConfig, 3);
+            } else if (mc.getNameAsString().equals(OBSERVER_FLAG_FUNCTION)) {
+                if (mc.getScope().isPresent() && mc.getArguments().size() == 1 && mc.getArgument(0).toString().equals("true")) {
+                    String codeletName = codeletVariables.get(mc.getScope().get().toString());
+                    agentConfig.findCodelet(codeletName).ifPresent(config -> config.setTrigger(CodeletConfig.ON_CHANGE_TRIGGER));
+                }
+            } else if (isMetricsRegistration(mc)) {
+                agentConfig.setMetrics(true);
+            } else if (isTraceOpening(mc)) {
+                agentConfig.setTrace(true);
+            } else if (isCaptureStart(mc)) {
+                agentConfig.setCapture(true);
+            } else if (isCheckpointRestore(mc)) {
+                agentConfig.setCheckpoint(true);
+            } else if (isExecutorStart(mc)) {
+                if (mc.getNameAsString().equals(EXECUTOR_VIRTUAL_FUNCTION))
+                    agentConfig.setExecution(new ExecutionConfig(ExecutionConfig.VIRTUAL_EXECUTION));
+                else if (mc.getArguments().size() == 2 && mc.getArgument(1).isIntegerLiteralExpr())
+                    agentConfig.setExecution(isTickSchedulerStart(mc)
+                            ? ExecutionConfig.tick(mc.getArgument(1).asIntegerLiteralExpr().asNumber().intValue())
+                            : ExecutionConfig.pool(mc.getArgument(1).asIntegerLiteralExpr().asNumber().intValue()));
             }
             super.visit(mc, agentConfig);
         }
 
+        // The stages of a fused codelet are declared and wired as any other codelet
+        static boolean isFusedCodelet(VariableDeclarator vd) {
+            return vd.getInitializer().filter(Expression::isObjectCreationExpr)
+                    .map(init -> init.asObjectCreationExpr().getType().asString().equals(FUSED_CODELET_CLASS))
+                    .orElse(false);
+        }
+
+        // SingleWriterMemory.create(this, "Name"), StripedCounter.create(this, "Name") or RingBufferMemory.create(this, "Name", ...)
+        static boolean isGeneratedMemoryCreation(MethodCallExpr mc) {
+            return mc.getNameAsString().equals(CREATE_MEMORY_FUNCTION) && mc.getArguments().size() >= 2
+                    && mc.getArgument(1).isStringLiteralExpr()
+                    && mc.getScope().map(scope -> scope.toString().equals(SINGLE_WRITER_MEMORY_CLASS)
+                            || scope.toString().equals(STRIPED_COUNTER_CLASS)
+                            || scope.toString().equals(RING_BUFFER_MEMORY_CLASS)).orElse(false);
+        }
+
+        // Defaults are left out, so that saving a project does not add them to its config
+        private static void readQueue(MethodCallExpr mc, MemoryConfig memoryConfig) {
+            memoryConfig.setType(MemoryConfig.QUEUE_TYPE);
+            if (mc.getArguments().size() > 2 && mc.getArgument(2).isIntegerLiteralExpr()) {
+                int capacity = mc.getArgument(2).asIntegerLiteralExpr().asNumber().intValue();
+                memoryConfig.setCapacity(capacity == MemoryConfig.DEFAULT_CAPACITY ? null : capacity);
+            }
+            if (mc.getArguments().size() > 3 && mc.getArgument(3).isFieldAccessExpr()) {
+                String overflow = mc.getArgument(3).asFieldAccessExpr().getNameAsString().toLowerCase().replace('_', '-');
+                if (MemoryConfig.isValidOverflow(overflow))
+                    memoryConfig.setOverflow(MemoryConfig.BLOCK_OVERFLOW.equals(overflow) ? null : overflow);
+            }
+        }
+
+        static boolean isMetricsRegistration(MethodCallExpr mc) {
+            return mc.getNameAsString().equals(METRICS_REGISTER_FUNCTION)
+                    && mc.getScope().map(scope -> scope.toString().equals(METRICS_CLASS)).orElse(false);
+        }
+
+        static boolean isTraceOpening(MethodCallExpr mc) {
+            return mc.getNameAsString().equals(TRACE_OPEN_FUNCTION)
+                    && mc.getScope().map(scope -> scope.toString().equals(TRACE_CLASS)).orElse(false);
+        }
+
+        static boolean isExecutorStart(MethodCallExpr mc) {
+            return (mc.getNameAsString().equals(EXECUTOR_VIRTUAL_FUNCTION) || mc.getNameAsString().equals(EXECUTOR_POOL_FUNCTION))
+                    && mc.getScope().map(scope -> scope.toString().equals(EXECUTOR_CLASS)).orElse(false)
+                    || isTickSchedulerStart(mc);
+        }
+
+        static boolean isTickSchedulerStart(MethodCallExpr mc) {
+            return mc.getNameAsString().equals(TICK_SCHEDULER_FUNCTION)
+                    && mc.getScope().map(scope -> scope.toString().equals(TICK_SCHEDULER_CLASS)).orElse(false);
+        }
+
+        static boolean isCaptureStart(MethodCallExpr mc) {
+            return mc.getNameAsString().equals(CAPTURE_START_FUNCTION)
+                    && mc.getScope().map(scope -> scope.toString().equals(CAPTURE_CLASS)).orElse(false);
+        }
+
+        static boolean isCheckpointRestore(MethodCallExpr mc) {
+            return mc.getNameAsString().equals(CHECKPOINT_RESTORE_FUNCTION)
+                    && mc.getScope().map(scope -> scope.toString().equals(CHECKPOINT_CLASS)).orElse(false);
+        }
+
         private void addMemoryToCodelet(MethodCallExpr mc, AgentConfig agentConfig, int type) {
             if (mc.getScope().isPresent()){
                 String codeletVarName = mc.getScope().get().toString();
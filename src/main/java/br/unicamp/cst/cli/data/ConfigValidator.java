@@ -0,0 +1,464 @@
+package br.unicamp.cst.cli.data;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.*;
+
+import javax.lang.model.SourceVersion;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static br.unicamp.cst.cli.data.AgentConfig.getVarName;
+
+/**
+ * Checks an agent configuration for every problem that would otherwise only show up when
+ * the generated project is compiled. Name indexes are built once and the per element checks
+ * run in parallel, so the cost is linear in the size of the configuration.
+ */
+public class ConfigValidator {
+
+    private final AgentConfig agentConfig;
+    private final Map<Object, Integer> lines;
+    private final Map<Object, Path> files;
+    private final Queue<ValidationProblem> problems = new ConcurrentLinkedQueue<>();
+
+    private ConfigValidator(AgentConfig agentConfig, Map<Object, Integer> lines, Map<Object, Path> files) {
+        this.agentConfig = agentConfig;
+        this.lines = lines;
+        this.files = files;
+    }
+
+    public static List<ValidationProblem> validate(File config) throws IOException {
+        if (BinaryConfigFormat.isBinary(config.toPath()))
+            return validate(BinaryConfigFormat.read(config.toPath()));
+
+        Map<Object, Integer> lines = new IdentityHashMap<>();
+        Map<Object, Path> files = new IdentityHashMap<>();
+        List<ValidationProblem> parseProblems = new ArrayList<>();
+        Path rootPath = config.toPath().toAbsolutePath().normalize();
+        AgentConfig agentConfig = readFile(rootPath, null, lines, parseProblems);
+
+        // Included fragments are checked as part of the agent, each problem keeps the file it comes from
+        Set<Path> visited = new HashSet<>(Set.of(rootPath));
+        Deque<Map.Entry<Path, List<String>>> pending = new ArrayDeque<>();
+        pending.add(Map.entry(rootPath, agentConfig.getInclude()));
+        while (!pending.isEmpty()) {
+            Map.Entry<Path, List<String>> including = pending.poll();
+            List<Path> fragments;
+            try {
+                fragments = ConfigLoader.resolveIncludes(including.getKey(), including.getValue());
+            } catch (NoSuchFileException e) {
+                parseProblems.add(new ValidationProblem(sourceOf(including.getKey(), rootPath), 0,
+                        "included file '" + e.getFile() + "' does not exist"));
+                continue;
+            }
+            for (Path fragment : fragments) {
+                if (!visited.add(fragment))
+                    continue;
+                AgentConfig fragmentConfig = readFile(fragment, fragment, lines, parseProblems);
+                fragmentConfig.getCodelets().forEach(c -> files.put(c, fragment));
+                fragmentConfig.getMemories().forEach(m -> files.put(m, fragment));
+                agentConfig.getCodelets().addAll(fragmentConfig.getCodelets());
+                agentConfig.getMemories().addAll(fragmentConfig.getMemories());
+                pending.add(Map.entry(fragment, fragmentConfig.getInclude()));
+            }
+        }
+
+        ConfigValidator validator = new ConfigValidator(agentConfig, lines, files);
+        validator.problems.addAll(parseProblems);
+        return validator.check();
+    }
+
+    public static List<ValidationProblem> validate(AgentConfig agentConfig) {
+        return new ConfigValidator(agentConfig, new IdentityHashMap<>(), new IdentityHashMap<>()).check();
+    }
+
+    private static AgentConfig readFile(Path path, Path source, Map<Object, Integer> lines,
+                                        List<ValidationProblem> problems) throws IOException {
+        if (BinaryConfigFormat.isBinary(path))
+            return BinaryConfigFormat.read(path);
+        List<ValidationProblem> fileProblems = new ArrayList<>();
+        AgentConfig agentConfig;
+        try (Reader reader = Files.newBufferedReader(path)) {
+            Node root = new Yaml(ConfigParser.loaderOptions()).compose(reader);
+            agentConfig = readAgentConfig(root, lines, fileProblems);
+        }
+        for (ValidationProblem problem : fileProblems)
+            problems.add(new ValidationProblem(source, problem.getLine(), problem.getMessage()));
+        return agentConfig;
+    }
+
+    private static Path sourceOf(Path path, Path rootPath) {
+        return path.equals(rootPath) ? null : path;
+    }
+
+    private List<ValidationProblem> check() {
+        Map<String, List<MemoryConfig>> memoriesByVar = agentConfig.getMemories().stream()
+                .filter(m -> !isBlank(m.getName()))
+                .collect(Collectors.groupingBy(m -> getVarName(m.getName())));
+        Map<String, List<MemoryConfig>> memoriesByLowerName = groupByLowerName(agentConfig.getMemories(), MemoryConfig::getName);
+        Map<String, List<CodeletConfig>> codeletsByLowerName = groupByLowerName(agentConfig.getCodelets(), CodeletConfig::getName);
+
+        agentConfig.getMemories().parallelStream().forEach(memory -> checkMemory(memory, memoriesByLowerName));
+        agentConfig.getCodelets().parallelStream().forEach(codelet -> checkCodelet(codelet, memoriesByVar, codeletsByLowerName));
+
+        List<ValidationProblem> sorted = new ArrayList<>(problems);
+        sorted.sort(Comparator.comparing((ValidationProblem p) -> p.getFile() == null ? "" : p.getFile().toString())
+                .thenComparingInt(ValidationProblem::getLine)
+                .thenComparing(ValidationProblem::getMessage));
+        return sorted;
+    }
+
+    private void checkMemory(MemoryConfig memory, Map<String, List<MemoryConfig>> memoriesByLowerName) {
+        String name = memory.getName();
+        String label = "MEMORY[" + name + "]: ";
+        if (isBlank(name)) {
+            report(memory, "MEMORY: name must be specified");
+            return;
+        }
+        if (!isJavaIdentifier(getVarName(name)))
+            report(memory, label + "'" + getVarName(name) + "' is not a valid Java variable name");
+        if (isBlank(memory.getGroup()))
+            report(memory, label + "group must not be empty");
+        // Type problems of YAML elements are reported while reading, with the line of the type itself
+        if (memory.getType() == null && !lines.containsKey(memory))
+            report(memory, label + "Memory type must be specified!");
+        if (!memory.isQueue() && (memory.getCapacity() != null || memory.getOverflow() != null) && memory.getType() != null)
+            report(memory, label + "capacity and overflow only apply to queue memories");
+        // Producers and consumers of a partition run on the same thread, a full queue would wait forever
+        if (memory.isQueue() && MemoryConfig.BLOCK_OVERFLOW.equals(memory.getEffectiveOverflow())
+                && agentConfig.getExecution().usesTicks())
+            report(memory, label + "a queue that blocks when full would stop tick execution, use overflow 'drop-oldest' or 'drop-newest'");
+        checkDuplicates(memory, name, memoriesByLowerName.get(name.toLowerCase()), MemoryConfig::getName, "MEMORY");
+    }
+
+    private void checkCodelet(CodeletConfig codelet, Map<String, List<MemoryConfig>> memoriesByVar,
+                              Map<String, List<CodeletConfig>> codeletsByLowerName) {
+        String name = codelet.getName();
+        String label = "CODELET[" + name + "]: ";
+        if (isBlank(name)) {
+            report(codelet, "CODELET: name must be specified");
+        } else {
+            if (!isJavaIdentifier(name))
+                report(codelet, label + "'" + name + "' is not a valid Java class name");
+            else if (!isJavaIdentifier(getVarName(name)))
+                report(codelet, label + "'" + getVarName(name) + "' is not a valid Java variable name");
+            if (memoriesByVar.containsKey(getVarName(name)))
+                report(codelet, label + "variable '" + getVarName(name) + "' clashes with a memory of the same name");
+            checkDuplicates(codelet, name, codeletsByLowerName.get(name.toLowerCase()), CodeletConfig::getName, "CODELET");
+        }
+        if (isBlank(codelet.getGroup()))
+            report(codelet, label + "group must not be empty");
+
+        checkReferences(codelet, label, "in", codelet.getIn(), memoriesByVar);
+        checkReferences(codelet, label, "out", codelet.getOut(), memoriesByVar);
+        checkReferences(codelet, label, "broadcast", codelet.getBroadcast(), memoriesByVar);
+        if (codelet.isTriggeredOnChange() && codelet.getIn().isEmpty())
+            report(codelet, label + "'" + CodeletConfig.ON_CHANGE_TRIGGER + "' trigger needs at least one 'in' memory");
+    }
+
+    private void checkReferences(CodeletConfig codelet, String label, String field, List<String> references,
+                                 Map<String, List<MemoryConfig>> memoriesByVar) {
+        for (String reference : references) {
+            if (isBlank(reference)) {
+                report(codelet, label + "empty memory reference in '" + field + "'");
+            } else if (!memoriesByVar.containsKey(getVarName(reference))) {
+                report(codelet, label + "'" + field + "' references undeclared memory '" + reference + "'");
+            }
+        }
+    }
+
+    private <T> void checkDuplicates(T element, String name, List<T> sameLowerName, Function<T, String> getName, String kind) {
+        if (sameLowerName == null || sameLowerName.size() < 2)
+            return;
+        for (T other : sameLowerName) {
+            if (other == element)
+                break;
+            String otherName = getName.apply(other);
+            // Identical definitions in different files are merged when the agent is loaded
+            if (files.get(other) != files.get(element) && other.equals(element))
+                return;
+            if (otherName.equals(name))
+                report(element, kind + "[" + name + "]: duplicated name" + lineSuffix(other));
+            else
+                report(element, kind + "[" + name + "]: name differs only in case from '" + otherName + "'" + lineSuffix(other));
+            return;
+        }
+    }
+
+    private String lineSuffix(Object other) {
+        Integer line = lines.get(other);
+        if (line == null)
+            return "";
+        Path file = files.get(other);
+        return file == null ? " (line " + line + ")" : " (" + file.getFileName() + " line " + line + ")";
+    }
+
+    private void report(Object element, String message) {
+        problems.add(new ValidationProblem(files.get(element), lines.getOrDefault(element, 0), message));
+    }
+
+    private static <T> Map<String, List<T>> groupByLowerName(List<T> elements, Function<T, String> getName) {
+        Map<String, List<T>> index = new HashMap<>();
+        for (T element : elements) {
+            String name = getName.apply(element);
+            if (!isBlank(name))
+                index.computeIfAbsent(name.toLowerCase(), k -> new ArrayList<>()).add(element);
+        }
+        return index;
+    }
+
+    static boolean isJavaIdentifier(String name) {
+        return SourceVersion.isIdentifier(name) && !SourceVersion.isKeyword(name);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static AgentConfig readAgentConfig(Node root, Map<Object, Integer> lines, List<ValidationProblem> problems) {
+        AgentConfig agentConfig = new AgentConfig();
+        if (root == null)
+            return agentConfig;
+        if (!(root instanceof MappingNode)) {
+            problems.add(new ValidationProblem(lineOf(root), "Configuration must be a mapping"));
+            return agentConfig;
+        }
+        for (NodeTuple tuple : ((MappingNode) root).getValue()) {
+            String key = scalar(tuple.getKeyNode());
+            Node value = tuple.getValueNode();
+            switch (String.valueOf(key)) {
+                case "projectName" -> agentConfig.setProjectName(scalar(value));
+                case "packageName" -> agentConfig.setPackageName(scalar(value));
+                case "include" -> agentConfig.setInclude(scalars(value, "file patterns", problems));
+                case "metrics" -> agentConfig.setMetrics(flag(value, problems));
+                case "trace" -> agentConfig.setTrace(flag(value, problems));
+                case "capture" -> agentConfig.setCapture(flag(value, problems));
+                case "checkpoint" -> agentConfig.setCheckpoint(flag(value, problems));
+                case "fusion" -> agentConfig.setFusion(flag(value, problems));
+                case "lockFree" -> agentConfig.setLockFree(flag(value, problems));
+                case "execution" -> agentConfig.setExecution(readExecution(value, problems));
+                case "codelets" -> {
+                    for (MappingNode item : items(value, problems))
+                        agentConfig.getCodelets().add(readCodelet(item, lines, problems));
+                }
+                case "memories" -> {
+                    for (MappingNode item : items(value, problems))
+                        agentConfig.getMemories().add(readMemory(item, lines, problems));
+                }
+                default -> problems.add(new ValidationProblem(lineOf(tuple.getKeyNode()), "Unknown property '" + key + "'"));
+            }
+        }
+        return agentConfig;
+    }
+
+    private static CodeletConfig readCodelet(MappingNode node, Map<Object, Integer> lines, List<ValidationProblem> problems) {
+        CodeletConfig codelet = new CodeletConfig();
+        lines.put(codelet, lineOf(node));
+        Node triggerNode = null;
+        for (NodeTuple tuple : node.getValue()) {
+            String key = scalar(tuple.getKeyNode());
+            Node value = tuple.getValueNode();
+            switch (String.valueOf(key)) {
+                case "name" -> codelet.setName(scalar(value));
+                case "group" -> codelet.setGroup(scalar(value));
+                case "in" -> codelet.setIn(scalars(value, problems));
+                case "out" -> codelet.setOut(scalars(value, problems));
+                case "broadcast" -> codelet.setBroadcast(scalars(value, problems));
+                case "trigger" -> triggerNode = value;
+                default -> problems.add(new ValidationProblem(lineOf(tuple.getKeyNode()), "Unknown codelet property '" + key + "'"));
+            }
+        }
+        if (triggerNode != null) {
+            String trigger = scalar(triggerNode);
+            if (CodeletConfig.isValidTrigger(trigger))
+                codelet.setTrigger(trigger);
+            else
+                problems.add(new ValidationProblem(lineOf(triggerNode), "CODELET[" + codelet.getName() + "]: trigger should be '"
+                        + CodeletConfig.PERIODIC_TRIGGER + "' or '" + CodeletConfig.ON_CHANGE_TRIGGER + "'"));
+        }
+        return codelet;
+    }
+
+    private static MemoryConfig readMemory(MappingNode node, Map<Object, Integer> lines, List<ValidationProblem> problems) {
+        MemoryConfig memory = new MemoryConfig();
+        lines.put(memory, lineOf(node));
+        String type = null;
+        Node typeNode = node;
+        Node capacityNode = null;
+        Node overflowNode = null;
+        for (NodeTuple tuple : node.getValue()) {
+            String key = scalar(tuple.getKeyNode());
+            Node value = tuple.getValueNode();
+            switch (String.valueOf(key)) {
+                case "name" -> memory.setName(scalar(value));
+                case "group" -> memory.setGroup(scalar(value));
+                case "content" -> memory.setContent(scalar(value));
+                case "type" -> {
+                    type = scalar(value);
+                    typeNode = value;
+                }
+                case "capacity" -> capacityNode = value;
+                case "overflow" -> overflowNode = value;
+                default -> problems.add(new ValidationProblem(lineOf(tuple.getKeyNode()), "Unknown memory property '" + key + "'"));
+            }
+        }
+        // Invalid types are reported here instead of letting MemoryConfig.setType abort the whole validation
+        if (type == null)
+            problems.add(new ValidationProblem(lineOf(node), "MEMORY[" + memory.getName() + "]: Memory type must be specified!"));
+        else if (MemoryConfig.isValidType(type))
+            memory.setType(type.toLowerCase());
+        else
+            problems.add(new ValidationProblem(lineOf(typeNode), "MEMORY[" + memory.getName() + "]: " + MemoryConfig.TYPE_PROBLEM));
+        if (capacityNode != null) {
+            String capacity = scalar(capacityNode);
+            if (capacityNode instanceof ScalarNode && Tag.INT.equals(capacityNode.getTag()) && capacity.matches("\\d{1,9}")
+                    && Integer.parseInt(capacity) > 0)
+                memory.setCapacity(Integer.parseInt(capacity));
+            else
+                problems.add(new ValidationProblem(lineOf(capacityNode), "MEMORY[" + memory.getName() + "]: capacity should be at least 1"));
+        }
+        if (overflowNode != null) {
+            String overflow = scalar(overflowNode);
+            if (MemoryConfig.isValidOverflow(overflow))
+                memory.setOverflow(overflow);
+            else
+                problems.add(new ValidationProblem(lineOf(overflowNode), "MEMORY[" + memory.getName() + "]: " + MemoryConfig.OVERFLOW_PROBLEM));
+        }
+        return memory;
+    }
+
+    private static ExecutionConfig readExecution(Node node, List<ValidationProblem> problems) {
+        if (node instanceof MappingNode) {
+            ExecutionConfig execution = new ExecutionConfig();
+            for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+                String key = scalar(tuple.getKeyNode());
+                Node value = tuple.getValueNode();
+                boolean pool = ExecutionConfig.POOL_EXECUTION.equals(key);
+                if (!pool && !ExecutionConfig.TICK_EXECUTION.equals(key)) {
+                    problems.add(new ValidationProblem(lineOf(tuple.getKeyNode()), "Unknown execution property '" + key + "'"));
+                    continue;
+                }
+                if (!execution.usesPlatformThreads()) {
+                    problems.add(new ValidationProblem(lineOf(tuple.getKeyNode()), "Execution takes either 'pool' or 'tick', not both"));
+                    continue;
+                }
+                String count = scalar(value);
+                boolean valid = value instanceof ScalarNode && Tag.INT.equals(value.getTag()) && count.matches("\\d{1,6}") && Integer.parseInt(count) > 0;
+                if (valid && pool)
+                    execution.setPool(Integer.parseInt(count));
+                else if (valid)
+                    execution.setTick(Integer.parseInt(count));
+                else if (pool)
+                    problems.add(new ValidationProblem(lineOf(value), "A pool needs a number of threads of at least 1"));
+                else
+                    problems.add(new ValidationProblem(lineOf(value), "A tick rate needs at least 1 tick per second"));
+            }
+            return execution;
+        }
+        String mode = scalar(node);
+        if (ExecutionConfig.POOL_EXECUTION.equals(mode))
+            problems.add(new ValidationProblem(lineOf(node), "A pool needs its number of threads, as in 'pool: 8'"));
+        else if (ExecutionConfig.PLATFORM_EXECUTION.equals(mode) || ExecutionConfig.VIRTUAL_EXECUTION.equals(mode)
+                || ExecutionConfig.TICK_EXECUTION.equals(mode))
+            return new ExecutionConfig(mode);
+        else
+            problems.add(new ValidationProblem(lineOf(node), "Execution should be '" + ExecutionConfig.PLATFORM_EXECUTION + "', '"
+                    + ExecutionConfig.VIRTUAL_EXECUTION + "', 'pool: N' or '" + ExecutionConfig.TICK_EXECUTION + "'"));
+        return new ExecutionConfig();
+    }
+
+    private static List<MappingNode> items(Node node, List<ValidationProblem> problems) {
+        List<MappingNode> items = new ArrayList<>();
+        if (node instanceof ScalarNode && Tag.NULL.equals(node.getTag()))
+            return items;
+        if (!(node instanceof SequenceNode)) {
+            problems.add(new ValidationProblem(lineOf(node), "Expected a list"));
+            return items;
+        }
+        for (Node item : ((SequenceNode) node).getValue()) {
+            if (item instanceof MappingNode)
+                items.add((MappingNode) item);
+            else
+                problems.add(new ValidationProblem(lineOf(item), "Expected a mapping"));
+        }
+        return items;
+    }
+
+    private static List<String> scalars(Node node, List<ValidationProblem> problems) {
+        return scalars(node, "memory names", problems);
+    }
+
+    private static List<String> scalars(Node node, String description, List<ValidationProblem> problems) {
+        List<String> values = new ArrayList<>();
+        if (node instanceof ScalarNode && Tag.NULL.equals(node.getTag()))
+            return values;
+        if (!(node instanceof SequenceNode)) {
+            problems.add(new ValidationProblem(lineOf(node), "Expected a list of " + description));
+            return values;
+        }
+        for (Node item : ((SequenceNode) node).getValue())
+            values.add(scalar(item));
+        return values;
+    }
+
+    private static boolean flag(Node node, List<ValidationProblem> problems) {
+        if (node instanceof ScalarNode && Tag.BOOL.equals(node.getTag()))
+            return Set.of("true", "yes", "on").contains(((ScalarNode) node).getValue().toLowerCase());
+        problems.add(new ValidationProblem(lineOf(node), "Expected true or false"));
+        return false;
+    }
+
+    private static String scalar(Node node) {
+        if (!(node instanceof ScalarNode) || Tag.NULL.equals(node.getTag()))
+            return null;
+        return ((ScalarNode) node).getValue();
+    }
+
+    private static int lineOf(Node node) {
+        return node.getStartMark() == null ? 0 : node.getStartMark().getLine() + 1;
+    }
+
+    public static class ValidationProblem {
+        private final Path file;
+        private final int line;
+        private final String message;
+
+        public ValidationProblem(int line, String message) {
+            this(null, line, message);
+        }
+
+        public ValidationProblem(Path file, int line, String message) {
+            this.file = file;
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Included file the problem was found in, null for the validated file itself
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return line > 0 ? "line " + line + ": " + message : message;
+        }
+    }
+}
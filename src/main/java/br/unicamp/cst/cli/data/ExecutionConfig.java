@@ -0,0 +1,150 @@
+package br.unicamp.cst.cli.data;
+
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.util.Objects;
+
+/**
+ * How the codelets of the generated agent are run. Written as {@code execution: platform}, the CST
+ * default of a timer thread per codelet, {@code execution: virtual}, a virtual thread per codelet,
+ * {@code execution: {pool: N}}, every codelet multiplexed on a work-stealing pool of N threads, or
+ * {@code execution: {tick: N}}, N ticks per second that each run every codelet once, in the order of
+ * the memories they read and write.
+ */
+public class ExecutionConfig {
+    public static final String PLATFORM_EXECUTION = "platform";
+    public static final String VIRTUAL_EXECUTION = "virtual";
+    public static final String POOL_EXECUTION = "pool";
+    public static final String TICK_EXECUTION = "tick";
+    // A tick per time step of the generated codelets
+    public static final int DEFAULT_TICK_RATE = 5;
+
+    private String mode = PLATFORM_EXECUTION;
+    private int pool;
+    private int tick;
+
+    public ExecutionConfig() {
+    }
+
+    /**
+     * Scalar form, {@code execution: virtual}, {@code execution: tick} ticks at {@link #DEFAULT_TICK_RATE}
+     */
+    public ExecutionConfig(String mode) {
+        setMode(mode);
+    }
+
+    /**
+     * Parses the command line form: {@code platform}, {@code virtual}, {@code pool:N}, {@code tick}
+     * or {@code tick:N}
+     *
+     * @return the execution, or null if {@code value} is none of them
+     */
+    public static ExecutionConfig parse(String value) {
+        if (PLATFORM_EXECUTION.equals(value) || VIRTUAL_EXECUTION.equals(value) || TICK_EXECUTION.equals(value))
+            return new ExecutionConfig(value);
+        if (value == null || !value.matches("(" + POOL_EXECUTION + "|" + TICK_EXECUTION + "):\\d{1,6}"))
+            return null;
+        int separator = value.indexOf(':');
+        int count = Integer.parseInt(value.substring(separator + 1));
+        if (count < 1)
+            return null;
+        return value.startsWith(POOL_EXECUTION) ? pool(count) : tick(count);
+    }
+
+    public static ExecutionConfig pool(int threads) {
+        ExecutionConfig execution = new ExecutionConfig();
+        execution.setPool(threads);
+        return execution;
+    }
+
+    public static ExecutionConfig tick(int ticksPerSecond) {
+        ExecutionConfig execution = new ExecutionConfig();
+        execution.setTick(ticksPerSecond);
+        return execution;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        if (POOL_EXECUTION.equals(mode))
+            throw new YAMLException("execution: a pool needs its number of threads, as in 'pool: 8'");
+        if (!PLATFORM_EXECUTION.equals(mode) && !VIRTUAL_EXECUTION.equals(mode) && !TICK_EXECUTION.equals(mode))
+            throw new YAMLException("execution should be '" + PLATFORM_EXECUTION + "', '" + VIRTUAL_EXECUTION + "', 'pool: N' or '"
+                    + TICK_EXECUTION + "'");
+        this.mode = mode;
+        this.pool = 0;
+        this.tick = TICK_EXECUTION.equals(mode) ? DEFAULT_TICK_RATE : 0;
+    }
+
+    /**
+     * Threads of the pool, 0 unless the mode is {@code pool}
+     */
+    public int getPool() {
+        return pool;
+    }
+
+    public void setPool(int pool) {
+        if (pool < 1)
+            throw new YAMLException("execution: a pool needs at least 1 thread");
+        this.mode = POOL_EXECUTION;
+        this.pool = pool;
+        this.tick = 0;
+    }
+
+    /**
+     * Ticks per second, 0 unless the mode is {@code tick}
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    public void setTick(int tick) {
+        if (tick < 1)
+            throw new YAMLException("execution: a tick rate needs at least 1 tick per second");
+        this.mode = TICK_EXECUTION;
+        this.tick = tick;
+        this.pool = 0;
+    }
+
+    public boolean usesPlatformThreads() {
+        return PLATFORM_EXECUTION.equals(mode);
+    }
+
+    public boolean usesVirtualThreads() {
+        return VIRTUAL_EXECUTION.equals(mode);
+    }
+
+    // Not named isPool(), a boolean "pool" property would hide the pool size from the YAML loader
+    public boolean usesPool() {
+        return POOL_EXECUTION.equals(mode);
+    }
+
+    public boolean usesTicks() {
+        return TICK_EXECUTION.equals(mode);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ExecutionConfig that = (ExecutionConfig) o;
+        return pool == that.pool && tick == that.tick && mode.equals(that.mode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mode, pool, tick);
+    }
+
+    /**
+     * The value as written in the YAML, {@code pool: N} for pools and {@code tick: N} for ticks
+     */
+    @Override
+    public String toString() {
+        if (usesPool())
+            return POOL_EXECUTION + ": " + pool;
+        return usesTicks() ? TICK_EXECUTION + ": " + tick : mode;
+    }
+}
@@ -4,15 +4,26 @@ import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.parser.ParserException;
 
 import java.text.ParseException;
+import java.util.Objects;
 
 
 public class MemoryConfig {
     public static final String OBJECT_TYPE = "object";
     public static final String CONTAINER_TYPE = "container";
+    public static final String COUNTER_TYPE = "counter";
+    public static final String QUEUE_TYPE = "queue";
+    public static final String TYPE_PROBLEM = "Memory type should be 'object', 'container', 'counter' or 'queue'";
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final String BLOCK_OVERFLOW = "block";
+    public static final String DROP_OLDEST_OVERFLOW = "drop-oldest";
+    public static final String DROP_NEWEST_OVERFLOW = "drop-newest";
+    public static final String OVERFLOW_PROBLEM = "overflow should be 'block', 'drop-oldest' or 'drop-newest'";
     private String name;
     private String type;
     private String content;
     private String group;
+    private Integer capacity;
+    private String overflow;
 
     public MemoryConfig(){}
 
@@ -34,11 +45,11 @@ public class MemoryConfig {
 
     public void setType(String type) {
         if (type != null) {
-            if (OBJECT_TYPE.equals(type.toLowerCase()) || CONTAINER_TYPE.equals(type.toLowerCase())) {
+            if (isValidType(type)) {
                 this.type = type;
             } else {
-                System.out.println("MEMORY[" + this.getName() + "]: Memory type should be 'object' or 'container'");
-                throw new YAMLException("MEMORY[" + this.getName() + "]: Memory type should be 'object' or 'container'");
+                System.out.println("MEMORY[" + this.getName() + "]: " + TYPE_PROBLEM);
+                throw new YAMLException("MEMORY[" + this.getName() + "]: " + TYPE_PROBLEM);
             }
         } else {
             System.out.println("MEMORY[" + this.getName() + "]: Memory type must be specified!");
@@ -46,6 +57,60 @@ public class MemoryConfig {
         }
     }
 
+    public static boolean isValidType(String type) {
+        return OBJECT_TYPE.equals(type.toLowerCase()) || CONTAINER_TYPE.equals(type.toLowerCase())
+                || COUNTER_TYPE.equals(type.toLowerCase()) || QUEUE_TYPE.equals(type.toLowerCase());
+    }
+
+    public boolean isQueue() {
+        return QUEUE_TYPE.equals(type);
+    }
+
+    /**
+     * Messages a queue holds before its overflow policy applies, null for the default of
+     * {@value #DEFAULT_CAPACITY}. The ring buffer rounds it up to a power of two.
+     */
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(Integer capacity) {
+        if (capacity != null && capacity < 1) {
+            System.out.println("MEMORY[" + this.getName() + "]: capacity should be at least 1");
+            throw new YAMLException("MEMORY[" + this.getName() + "]: capacity should be at least 1");
+        }
+        this.capacity = capacity;
+    }
+
+    public int getEffectiveCapacity() {
+        return capacity == null ? DEFAULT_CAPACITY : capacity;
+    }
+
+    /**
+     * What a full queue does with a new message: {@value #BLOCK_OVERFLOW} waits for a consumer to
+     * take one, {@value #DROP_OLDEST_OVERFLOW} discards the oldest message and
+     * {@value #DROP_NEWEST_OVERFLOW} discards the new one. Null is {@value #BLOCK_OVERFLOW}.
+     */
+    public String getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(String overflow) {
+        if (overflow != null && !isValidOverflow(overflow)) {
+            System.out.println("MEMORY[" + this.getName() + "]: " + OVERFLOW_PROBLEM);
+            throw new YAMLException("MEMORY[" + this.getName() + "]: " + OVERFLOW_PROBLEM);
+        }
+        this.overflow = overflow;
+    }
+
+    public String getEffectiveOverflow() {
+        return overflow == null ? BLOCK_OVERFLOW : overflow;
+    }
+
+    public static boolean isValidOverflow(String overflow) {
+        return BLOCK_OVERFLOW.equals(overflow) || DROP_OLDEST_OVERFLOW.equals(overflow) || DROP_NEWEST_OVERFLOW.equals(overflow);
+    }
+
     public String getContent() {
         return content;
     }
@@ -62,6 +127,25 @@ public class MemoryConfig {
         this.group = group;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MemoryConfig that = (MemoryConfig) o;
+        return Objects.equals(name, that.name) &&
+                Objects.equals(type, that.type) &&
+                Objects.equals(content, that.content) &&
+                Objects.equals(group, that.group) &&
+                // Defaults stated or not are the same queue
+                getEffectiveCapacity() == that.getEffectiveCapacity() &&
+                Objects.equals(getEffectiveOverflow(), that.getEffectiveOverflow());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type, content, group, getEffectiveCapacity(), getEffectiveOverflow());
+    }
+
     @Override
     public String toString() {
         return "MemoryConfig{" +
@@ -69,6 +153,8 @@ public class MemoryConfig {
                 ", type='" + type + '\'' +
                 ", content='" + content + '\'' +
                 ", group='" + group + '\'' +
+                (capacity != null ? ", capacity=" + capacity : "") +
+                (overflow != null ? ", overflow='" + overflow + '\'' : "") +
                 '}';
     }
 }
@@ -0,0 +1,95 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads the classes of one agent. Library classes come from a parent loader shared by every agent,
+ * while each codelet group ({@code <package>.codelets.<group>}) gets its own child loader so a group
+ * can be replaced without touching the rest of the agent.
+ */
+public class AgentClassLoader extends URLClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final String codeletsPackage;
+    private final URL[] classesUrls;
+    private final Map<String, GroupClassLoader> groups = new ConcurrentHashMap<>();
+
+    public AgentClassLoader(String name, AgentClasspath classpath, ClassLoader libraries) {
+        super(name, AgentClasspath.toUrls(List.of(classpath.getClassesDir())), libraries);
+        this.codeletsPackage = classpath.getPackageName() + ".codelets.";
+        this.classesUrls = getURLs();
+    }
+
+    /**
+     * Creates the loader shared by all agents for the project libraries, CST core included.
+     */
+    public static ClassLoader createLibraryLoader(AgentClasspath classpath) {
+        return new URLClassLoader("cst-libraries", classpath.libraryUrls(), ClassLoader.getPlatformClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        String group = groupOf(name);
+        if (group != null)
+            return groups.computeIfAbsent(group, this::newGroupLoader).loadClass(name, resolve);
+        return super.loadClass(name, resolve);
+    }
+
+    /**
+     * Starts a new generation for a codelet group. Classes already loaded keep working, classes loaded
+     * afterwards come from the current contents of the classes dir.
+     */
+    public ClassLoader reloadGroup(String group) {
+        GroupClassLoader loader = newGroupLoader(group);
+        groups.put(group, loader);
+        return loader;
+    }
+
+    public String groupOf(String className) {
+        if (!className.startsWith(codeletsPackage))
+            return null;
+        String rest = className.substring(codeletsPackage.length());
+        int dot = rest.indexOf('.');
+        return dot < 0 ? null : rest.substring(0, dot);
+    }
+
+    private GroupClassLoader newGroupLoader(String group) {
+        return new GroupClassLoader(getName() + "/" + group, classesUrls, this, codeletsPackage + group + ".");
+    }
+
+    static class GroupClassLoader extends URLClassLoader {
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        private final String groupPackage;
+
+        GroupClassLoader(String name, URL[] urls, AgentClassLoader parent, String groupPackage) {
+            super(name, urls, parent);
+            this.groupPackage = groupPackage;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(groupPackage))
+                return super.loadClass(name, resolve);
+            // Child first for the group classes, the parent would route them back here
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null)
+                    loaded = findClass(name);
+                if (resolve)
+                    resolveClass(loaded);
+                return loaded;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compiled classes and libraries of a CST project, as produced by its Gradle {@code installDist} task.
+ */
+public class AgentClasspath {
+
+    private final Path projectRoot;
+    private final String packageName;
+    private final List<Path> libraries;
+    private final Path classesDir;
+
+    public AgentClasspath(Path projectRoot, String packageName, List<Path> libraries, Path classesDir) {
+        this.projectRoot = projectRoot;
+        this.packageName = packageName;
+        this.libraries = libraries;
+        this.classesDir = classesDir;
+    }
+
+    /**
+     * Builds the project with its Gradle wrapper and collects the resulting classpath.
+     */
+    public static AgentClasspath build(File projectRoot, String packageName) throws IOException, InterruptedException {
+        String osName = System.getProperty("os.name").toLowerCase();
+        String gradlew = new File(projectRoot, osName.contains("win") ? "gradlew.bat" : "gradlew").getAbsolutePath();
+        Process process = new ProcessBuilder(gradlew, "-q", "installDist", "-p", projectRoot.getAbsolutePath())
+                .inheritIO()
+                .start();
+        if (process.waitFor() != 0)
+            throw new IOException("Project build failed, fix the errors above and try again");
+        return resolve(projectRoot.toPath(), packageName);
+    }
+
+    /**
+     * Collects the classpath of a project already built by {@code installDist}.
+     */
+    public static AgentClasspath resolve(Path projectRoot, String packageName) throws IOException {
+        Path installDir = projectRoot.resolve("build/install");
+        Path distribution;
+        try (Stream<Path> dirs = Files.list(installDir)) {
+            distribution = dirs.filter(d -> Files.isDirectory(d.resolve("lib"))).findFirst()
+                    .orElseThrow(() -> new IOException("No distribution found in " + installDir));
+        }
+        // The project jar is left out, its classes are loaded from the classes dir so they can be reloaded
+        String projectJar = distribution.getFileName().toString();
+        List<Path> libraries = new ArrayList<>();
+        try (Stream<Path> jars = Files.list(distribution.resolve("lib"))) {
+            jars.filter(j -> j.toString().endsWith(".jar"))
+                    .filter(j -> {
+                        String name = j.getFileName().toString();
+                        return !name.equals(projectJar + ".jar") && !name.startsWith(projectJar + "-");
+                    })
+                    .sorted()
+                    .forEach(libraries::add);
+        }
+        return new AgentClasspath(projectRoot, packageName, libraries, projectRoot.resolve("build/classes/java/main"));
+    }
+
+    public Path getProjectRoot() {
+        return projectRoot;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public List<Path> getLibraries() {
+        return libraries;
+    }
+
+    public Path getClassesDir() {
+        return classesDir;
+    }
+
+    public Path getCodeletsSourceDir() {
+        return projectRoot.resolve("src/main/java").resolve(packageName.replace(".", "/")).resolve("codelets");
+    }
+
+    public String getClasspathString() {
+        StringBuilder sb = new StringBuilder(classesDir.toString());
+        for (Path library : libraries)
+            sb.append(File.pathSeparator).append(library);
+        return sb.toString();
+    }
+
+    URL[] libraryUrls() {
+        return toUrls(libraries);
+    }
+
+    static URL[] toUrls(List<Path> paths) {
+        URL[] urls = new URL[paths.size()];
+        try {
+            for (int i = 0; i < urls.length; i++)
+                urls[i] = paths.get(i).toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,105 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs AgentMind instances of a project inside the CLI JVM. Library classes are loaded once and
+ * shared, every instance has its own {@link AgentClassLoader} and its own thread group, which the
+ * codelet threads inherit because they are created while the AgentMind constructor starts the mind.
+ */
+public class AgentRuntime {
+
+    private final AgentClasspath classpath;
+    private final ClassLoader libraries;
+    private final List<AgentInstance> instances = new ArrayList<>();
+
+    public AgentRuntime(AgentClasspath classpath) {
+        this.classpath = classpath;
+        this.libraries = AgentClassLoader.createLibraryLoader(classpath);
+    }
+
+    public AgentClasspath getClasspath() {
+        return classpath;
+    }
+
+    public List<AgentInstance> getInstances() {
+        return instances;
+    }
+
+    public AgentInstance start(String name) throws Exception {
+        AgentClassLoader loader = new AgentClassLoader(name, classpath, libraries);
+        ThreadGroup threads = new ThreadGroup(name);
+        AtomicReference<Object> mind = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread starter = new Thread(threads, () -> {
+            try {
+                Class<?> agentMind = loader.loadClass(classpath.getPackageName() + ".AgentMind");
+                // The generated AgentMind constructor is package private
+                Constructor<?> constructor = agentMind.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                mind.set(constructor.newInstance());
+            } catch (InvocationTargetException e) {
+                failure.set(e.getCause());
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, name + "-main");
+        starter.setContextClassLoader(loader);
+        starter.start();
+        starter.join();
+
+        if (failure.get() != null) {
+            if (failure.get() instanceof Exception)
+                throw (Exception) failure.get();
+            throw new IllegalStateException(failure.get());
+        }
+        AgentInstance instance = new AgentInstance(name, loader, threads, mind.get());
+        instances.add(instance);
+        return instance;
+    }
+
+    public void shutDown() {
+        for (AgentInstance instance : instances) {
+            try {
+                MindAccess.shutDown(instance.getMind());
+            } catch (RuntimeException e) {
+                System.err.println(instance.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public static class AgentInstance {
+        private final String name;
+        private final AgentClassLoader loader;
+        private final ThreadGroup threads;
+        private final Object mind;
+
+        AgentInstance(String name, AgentClassLoader loader, ThreadGroup threads, Object mind) {
+            this.name = name;
+            this.loader = loader;
+            this.threads = threads;
+            this.mind = mind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public AgentClassLoader getLoader() {
+            return loader;
+        }
+
+        public ThreadGroup getThreads() {
+            return threads;
+        }
+
+        public Object getMind() {
+            return mind;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.runtime.BenchRecord.Metric;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the metrics two {@link BenchRecord}s have in common. The difference of the means gets a
+ * 95% confidence interval from Welch's t-test, which does not assume both runs have the same
+ * variance, and is called a regression or an improvement only when the whole interval lies on one
+ * side of zero and the change is at least the given threshold. Long runs make tiny differences
+ * significant, the threshold keeps those from failing a build.
+ */
+public class BenchComparison {
+
+    // Two sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom
+    private static final double[] T_95 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+    public enum Verdict {
+        REGRESSION, IMPROVEMENT, NO_CHANGE,
+        /** Single values or a zero baseline, the change is shown without an interval */
+        INCONCLUSIVE
+    }
+
+    public static class Row {
+        private final String subject;
+        private final String metric;
+        private final Metric a;
+        private final Metric b;
+        private double change;
+        private double low;
+        private double high;
+        private Verdict verdict = Verdict.INCONCLUSIVE;
+
+        Row(String subject, String metric, Metric a, Metric b) {
+            this.subject = subject;
+            this.metric = metric;
+            this.a = a;
+            this.b = b;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+
+        public Metric getA() {
+            return a;
+        }
+
+        public Metric getB() {
+            return b;
+        }
+
+        /**
+         * Change of the mean from run A to run B, relative to A
+         */
+        public double getChange() {
+            return change;
+        }
+
+        /**
+         * Bounds of the 95% confidence interval of the relative change, NaN when inconclusive
+         */
+        public double getLow() {
+            return low;
+        }
+
+        public double getHigh() {
+            return high;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+    }
+
+    private BenchComparison() {
+    }
+
+    /**
+     * @param threshold smallest relative change reported as a regression or an improvement
+     * @return a row for each subject and metric in both records, in the order of {@code a}
+     */
+    public static List<Row> compare(BenchRecord a, BenchRecord b, double threshold) {
+        List<Row> rows = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Metric>> subject : a.getResults().entrySet()) {
+            Map<String, Metric> other = b.getResults().get(subject.getKey());
+            if (other == null)
+                continue;
+            for (Map.Entry<String, Metric> metric : subject.getValue().entrySet()) {
+                if (other.containsKey(metric.getKey()))
+                    rows.add(compare(subject.getKey(), metric.getKey(), metric.getValue(), other.get(metric.getKey()), threshold));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Subjects and metrics only one of the records has, as "subject metric"
+     */
+    public static Set<String> unmatched(BenchRecord a, BenchRecord b) {
+        Set<String> unmatched = new LinkedHashSet<>();
+        for (BenchRecord[] pair : new BenchRecord[][]{{a, b}, {b, a}}) {
+            for (Map.Entry<String, Map<String, Metric>> subject : pair[0].getResults().entrySet()) {
+                Map<String, Metric> other = pair[1].getResults().getOrDefault(subject.getKey(), Map.of());
+                for (String metric : subject.getValue().keySet()) {
+                    if (!other.containsKey(metric))
+                        unmatched.add(subject.getKey() + " " + metric);
+                }
+            }
+        }
+        return unmatched;
+    }
+
+    static Row compare(String subject, String name, Metric a, Metric b, double threshold) {
+        Row row = new Row(subject, name, a, b);
+        row.low = Double.NaN;
+        row.high = Double.NaN;
+        if (a.getMean() == 0)
+            return row;
+        double difference = b.getMean() - a.getMean();
+        row.change = difference / a.getMean();
+        if (a.getCount() < 2 || b.getCount() < 2)
+            return row;
+
+        double varianceA = a.getStddev() * a.getStddev() / a.getCount();
+        double varianceB = b.getStddev() * b.getStddev() / b.getCount();
+        double standardError = Math.sqrt(varianceA + varianceB);
+        double freedom = standardError == 0 ? Double.POSITIVE_INFINITY : (varianceA + varianceB) * (varianceA + varianceB)
+                / (varianceA * varianceA / (a.getCount() - 1) + varianceB * varianceB / (b.getCount() - 1));
+        double margin = tCritical(freedom) * standardError;
+        row.low = (difference - margin) / Math.abs(a.getMean());
+        row.high = (difference + margin) / Math.abs(a.getMean());
+
+        boolean significant = row.low > 0 || row.high < 0;
+        if (!significant || Math.abs(row.change) < threshold) {
+            row.verdict = Verdict.NO_CHANGE;
+            return row;
+        }
+        boolean increased = row.low > 0;
+        row.verdict = increased == a.isHigherBetter() ? Verdict.IMPROVEMENT : Verdict.REGRESSION;
+        return row;
+    }
+
+    static double tCritical(double freedom) {
+        if (freedom < 1)
+            return T_95[0];
+        if (freedom <= T_95.length)
+            return T_95[(int) Math.floor(freedom) - 1];
+        // Within 0.005 of the exact quantile above 30 degrees of freedom
+        return 1.96 + 2.4 / freedom;
+    }
+}
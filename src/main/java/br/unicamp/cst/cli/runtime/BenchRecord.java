@@ -0,0 +1,383 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One replay or load test run kept in the {@code .cst/bench} folder of the project, so runs can be
+ * compared by {@code cst compare} across code changes. Records are YAML files named after their
+ * id, written once and never changed.
+ * <p>
+ * Besides the results, a record holds what makes two runs comparable or not: the git revision of
+ * the project, marked dirty when it has uncommitted changes, a hash of its agent config and the
+ * JVM and host it ran on. Results are summaries per subject, a codelet or the whole agent, and
+ * metric, enough for a confidence interval of their mean.
+ */
+public class BenchRecord {
+
+    public static final String DIRECTORY = ".cst/bench";
+    public static final String AGENT_SUBJECT = "agent";
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String EXTENSION = ".yaml";
+
+    private String id;
+    private String kind;
+    private String time;
+    private String revision;
+    private String configHash;
+    private final Map<String, String> jvm = new LinkedHashMap<>();
+    private final Map<String, String> host = new LinkedHashMap<>();
+    private final Map<String, Map<String, Metric>> results = new LinkedHashMap<>();
+
+    public static class Metric {
+        private final String unit;
+        private final boolean higherIsBetter;
+        private final long count;
+        private final double mean;
+        private final double stddev;
+        private final double p50;
+        private final double p99;
+
+        public Metric(String unit, boolean higherIsBetter, long count, double mean, double stddev, double p50, double p99) {
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+            this.count = count;
+            this.mean = mean;
+            this.stddev = stddev;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+
+        /**
+         * A latency in nanoseconds, lower is better
+         */
+        public static Metric of(InputReplay.Latency latency) {
+            return new Metric("ns", false, latency.getCount(), latency.getTotalNanos() / (double) Math.max(1, latency.getCount()),
+                    latency.stddev(), latency.percentile(0.5), latency.percentile(0.99));
+        }
+
+        /**
+         * A value measured over several windows of a run, like a rate, one sample per window
+         */
+        public static Metric of(String unit, boolean higherIsBetter, double[] samples) {
+            int count = samples.length;
+            double mean = Arrays.stream(samples).average().orElse(0);
+            double squares = 0;
+            for (double sample : samples)
+                squares += (sample - mean) * (sample - mean);
+            double[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            return new Metric(unit, higherIsBetter, count, mean, count < 2 ? 0 : Math.sqrt(squares / (count - 1)),
+                    percentile(sorted, 0.5), percentile(sorted, 0.99));
+        }
+
+        private static double percentile(double[] sorted, double fraction) {
+            if (sorted.length == 0)
+                return 0;
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public boolean isHigherBetter() {
+            return higherIsBetter;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStddev() {
+            return stddev;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+    }
+
+    private BenchRecord() {
+    }
+
+    /**
+     * A new record of a {@code kind} run of the project at {@code projectRoot}, results are added with
+     * {@link #addResult(String, String, Metric)} before it is saved
+     */
+    public static BenchRecord start(String kind, File projectRoot, AgentConfig agentConfig) {
+        BenchRecord record = new BenchRecord();
+        record.kind = kind;
+        OffsetDateTime now = OffsetDateTime.now();
+        record.time = now.toString();
+        record.id = ID_FORMAT.format(now) + "-" + kind;
+        record.revision = gitRevision(projectRoot);
+        record.configHash = agentConfig.configHash();
+        record.jvm.put("version", System.getProperty("java.version"));
+        record.jvm.put("vendor", System.getProperty("java.vendor"));
+        record.jvm.put("vm", System.getProperty("java.vm.name"));
+        record.jvm.put("maxHeap", String.valueOf(Runtime.getRuntime().maxMemory()));
+        record.host.put("name", hostName());
+        record.host.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        record.host.put("arch", System.getProperty("os.arch"));
+        record.host.put("cpus", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        return record;
+    }
+
+    public void addResult(String subject, String metric, Metric value) {
+        results.computeIfAbsent(subject, s -> new LinkedHashMap<>()).put(metric, value);
+    }
+
+    /**
+     * Writes the record to a new file in the bench folder of the project, a run finishing in the
+     * same second as another gets a numbered id
+     *
+     * @return the file written
+     */
+    public Path save(File projectRoot) throws IOException {
+        Path directory = projectRoot.toPath().resolve(DIRECTORY);
+        Files.createDirectories(directory);
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        String base = id;
+        for (int attempt = 2; ; attempt++) {
+            Path file = directory.resolve(id + EXTENSION);
+            byte[] content = new Yaml(options).dump(toMap()).getBytes(StandardCharsets.UTF_8);
+            try {
+                Files.write(file, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return file;
+            } catch (FileAlreadyExistsException e) {
+                id = base + "-" + attempt;
+            }
+        }
+    }
+
+    private Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", id);
+        map.put("kind", kind);
+        map.put("time", time);
+        map.put("revision", revision);
+        map.put("configHash", configHash);
+        map.put("jvm", jvm);
+        map.put("host", host);
+        Map<String, Object> resultMap = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Metric>> subject : results.entrySet()) {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            for (Map.Entry<String, Metric> entry : subject.getValue().entrySet()) {
+                Metric metric = entry.getValue();
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("unit", metric.unit);
+                values.put("better", metric.higherIsBetter ? "higher" : "lower");
+                values.put("count", metric.count);
+                values.put("mean", metric.mean);
+                values.put("stddev", metric.stddev);
+                values.put("p50", metric.p50);
+                values.put("p99", metric.p99);
+                metrics.put(entry.getKey(), values);
+            }
+            resultMap.put(subject.getKey(), metrics);
+        }
+        map.put("results", resultMap);
+        return map;
+    }
+
+    /**
+     * Reads the record {@code reference} names: the path of a record file, the id of a record in the
+     * bench folder of the project or the start of a single one, {@code latest} for the last run, or
+     * {@code latest~N} for the run N runs before it
+     */
+    public static BenchRecord find(File projectRoot, String reference) throws IOException {
+        Path path = Path.of(reference);
+        if (reference.endsWith(EXTENSION) && Files.isRegularFile(path))
+            return read(path);
+
+        List<Path> records = list(projectRoot);
+        if (reference.equals("latest") || reference.startsWith("latest~")) {
+            int back;
+            try {
+                back = reference.equals("latest") ? 0 : Integer.parseInt(reference.substring("latest~".length()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid run " + reference + ", use latest or latest~N");
+            }
+            if (back < 0 || back >= records.size())
+                throw new IOException("There are only " + records.size() + " recorded runs");
+            return read(records.get(records.size() - 1 - back));
+        }
+        List<Path> matching = records.stream()
+                .filter(r -> idOf(r).startsWith(reference))
+                .toList();
+        Optional<Path> exact = matching.stream().filter(r -> idOf(r).equals(reference)).findFirst();
+        if (exact.isPresent())
+            return read(exact.get());
+        if (matching.isEmpty())
+            throw new IOException("No recorded run " + reference + " in " + DIRECTORY);
+        if (matching.size() > 1)
+            throw new IOException("Run " + reference + " is ambiguous, it matches " + matching.size() + " runs");
+        return read(matching.get(0));
+    }
+
+    /**
+     * Record files in the bench folder of the project, oldest first
+     */
+    public static List<Path> list(File projectRoot) throws IOException {
+        Path directory = projectRoot.toPath().resolve(DIRECTORY);
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            // Ids start with the time of the run, so their order is the order of the runs
+            return files.filter(f -> f.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparing(BenchRecord::idOf))
+                    .toList();
+        }
+    }
+
+    private static String idOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static BenchRecord read(Path file) throws IOException {
+        Object root;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            root = new Yaml(new SafeConstructor(ConfigParser.loaderOptions())).load(reader);
+        } catch (YAMLException e) {
+            throw new IOException("Not a bench record: " + e.getMessage());
+        }
+        if (!(root instanceof Map) || !((Map<String, Object>) root).containsKey("results"))
+            throw new IOException("Not a bench record");
+        Map<String, Object> map = (Map<String, Object>) root;
+        BenchRecord record = new BenchRecord();
+        record.id = String.valueOf(map.getOrDefault("id", idOf(file)));
+        record.kind = String.valueOf(map.get("kind"));
+        record.time = String.valueOf(map.get("time"));
+        record.revision = String.valueOf(map.get("revision"));
+        record.configHash = String.valueOf(map.get("configHash"));
+        strings(map.get("jvm")).forEach(record.jvm::put);
+        strings(map.get("host")).forEach(record.host::put);
+        try {
+            for (Map.Entry<String, Object> subject : ((Map<String, Object>) map.get("results")).entrySet()) {
+                for (Map.Entry<String, Object> metric : ((Map<String, Object>) subject.getValue()).entrySet()) {
+                    Map<String, Object> values = (Map<String, Object>) metric.getValue();
+                    record.addResult(subject.getKey(), metric.getKey(), new Metric(String.valueOf(values.get("unit")),
+                            "higher".equals(values.get("better")), ((Number) values.get("count")).longValue(),
+                            number(values, "mean"), number(values, "stddev"), number(values, "p50"), number(values, "p99")));
+                }
+            }
+        } catch (ClassCastException | NullPointerException e) {
+            throw new IOException("Malformed results in bench record " + file);
+        }
+        return record;
+    }
+
+    private static double number(Map<String, Object> values, String key) {
+        return ((Number) values.get(key)).doubleValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> strings(Object value) {
+        Map<String, String> strings = new LinkedHashMap<>();
+        if (value instanceof Map)
+            ((Map<Object, Object>) value).forEach((k, v) -> strings.put(String.valueOf(k), String.valueOf(v)));
+        return strings;
+    }
+
+    private static String gitRevision(File projectRoot) {
+        String head = git(projectRoot, "rev-parse", "HEAD");
+        if (head == null || head.isEmpty())
+            return "unknown";
+        String status = git(projectRoot, "status", "--porcelain", "--untracked-files=no");
+        return status == null || status.isEmpty() ? head : head + "-dirty";
+    }
+
+    private static String git(File projectRoot, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(List.of(args));
+        try {
+            Process process = new ProcessBuilder(command).directory(projectRoot).redirectErrorStream(true).start();
+            String output;
+            try (InputStream in = process.getInputStream()) {
+                output = new String(in.readAllBytes(), StandardCharsets.UTF_8).strip();
+            }
+            if (!process.waitFor(10, TimeUnit.SECONDS) || process.exitValue() != 0)
+                return null;
+            return output;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public String getConfigHash() {
+        return configHash;
+    }
+
+    public Map<String, String> getJvm() {
+        return jvm;
+    }
+
+    public Map<String, String> getHost() {
+        return host;
+    }
+
+    /**
+     * Metrics by subject, a codelet name or {@link #AGENT_SUBJECT}, then by metric name
+     */
+    public Map<String, Map<String, Metric>> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,148 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the input captures written by the InputCapture class generated with
+ * {@code cst init --capture}. The layout is described there, both must change together.
+ * <p>
+ * Values stay serialized until they are replayed, their classes are only known to the agent.
+ */
+public class CaptureFile {
+
+    private static final byte[] MAGIC = "CSTCAPTR".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private final long startMillis;
+    private final String agentName;
+    private final List<Record> records = new ArrayList<>();
+    private boolean truncated;
+
+    private CaptureFile(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            throw new IOException("Not a CST input capture");
+        }
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IOException("Not a CST input capture");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported capture version " + version);
+        startMillis = in.readLong();
+        agentName = in.readUTF();
+
+        while (true) {
+            long nanos;
+            try {
+                nanos = in.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            // An agent that crashed may have left half a record
+            try {
+                String memory = in.readUTF();
+                int length = in.readInt();
+                if (length < -1)
+                    throw new IOException("Capture record " + records.size() + " is malformed");
+                byte[] value = null;
+                if (length >= 0) {
+                    value = new byte[length];
+                    in.readFully(value);
+                }
+                records.add(new Record(nanos, memory, value));
+            } catch (EOFException e) {
+                truncated = true;
+                break;
+            }
+        }
+    }
+
+    public static CaptureFile read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return new CaptureFile(in);
+        }
+    }
+
+    /**
+     * Wall clock time the capture started, in milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public String getAgentName() {
+        return agentName;
+    }
+
+    /**
+     * Captured updates, in the order they were made
+     */
+    public List<Record> getRecords() {
+        return records;
+    }
+
+    /**
+     * Whether the file ends in the middle of a record, which is then left out
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Time covered by the records, in nanoseconds
+     */
+    public long getSpanNanos() {
+        return records.isEmpty() ? 0 : records.get(records.size() - 1).nanos - records.get(0).nanos;
+    }
+
+    public static class Record {
+        private final long nanos;
+        private final String memory;
+        private final byte[] value;
+
+        Record(long nanos, String memory, byte[] value) {
+            this.nanos = nanos;
+            this.memory = memory;
+            this.value = value;
+        }
+
+        /**
+         * Time since the capture started
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public String getMemory() {
+            return memory;
+        }
+
+        /**
+         * Deserializes a new copy of the captured value, resolving its classes with {@code loader}
+         */
+        public Object value(ClassLoader loader) throws IOException, ClassNotFoundException {
+            if (value == null)
+                return null;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value)) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+                    try {
+                        return Class.forName(description.getName(), false, loader);
+                    } catch (ClassNotFoundException e) {
+                        return super.resolveClass(description);
+                    }
+                }
+            }) {
+                return in.readObject();
+            }
+        }
+    }
+}
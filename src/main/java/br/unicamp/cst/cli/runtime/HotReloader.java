@@ -0,0 +1,148 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+
+import javax.tools.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the codelet sources of a running agent. Changed classes are recompiled with the system
+ * Java compiler and only the codelets created from them are stopped and replaced by new instances
+ * wired to the same memories. The rest of the agent keeps running untouched.
+ */
+public class HotReloader {
+
+    // Editors usually save in more than one step, changes are collected until the sources settle
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final AgentClasspath classpath;
+    private final AgentInstance instance;
+    private final JavaCompiler compiler;
+
+    public HotReloader(AgentClasspath classpath, AgentInstance instance) {
+        this.classpath = classpath;
+        this.instance = instance;
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("Hot reload needs a Java compiler, run the CLI with a JDK");
+    }
+
+    public void watch() throws IOException, InterruptedException {
+        Path codeletsDir = classpath.getCodeletsSourceDir();
+        try (WatchService watcher = codeletsDir.getFileSystem().newWatchService()) {
+            register(codeletsDir, watcher);
+            System.out.println("Watching " + codeletsDir + " for changes");
+            while (true) {
+                Set<Path> changed = new TreeSet<>();
+                collect(watcher.take(), watcher, changed);
+                WatchKey key;
+                while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    collect(key, watcher, changed);
+                if (!changed.isEmpty())
+                    reload(changed);
+            }
+        }
+    }
+
+    private void register(Path dir, WatchService watcher) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path subDir : dirs.filter(Files::isDirectory).toList())
+                subDir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        }
+    }
+
+    private void collect(WatchKey key, WatchService watcher, Set<Path> changed) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW)
+                continue;
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path))
+                register(path, watcher);
+            else if (path.toString().endsWith(".java") && Files.isRegularFile(path))
+                changed.add(path);
+        }
+        key.reset();
+    }
+
+    /**
+     * Recompiles the given sources and swaps the codelets created from them.
+     *
+     * @return false when the sources do not compile, in which case the running codelets are kept
+     */
+    public boolean reload(Collection<Path> sources) throws InterruptedException {
+        if (!compile(sources))
+            return false;
+
+        Path sourceRoot = classpath.getProjectRoot().resolve("src/main/java");
+        Map<String, ClassLoader> reloadedGroups = new HashMap<>();
+        for (Path source : sources) {
+            String relative = sourceRoot.relativize(source).toString();
+            String className = relative.substring(0, relative.length() - ".java".length()).replace(source.getFileSystem().getSeparator(), ".");
+            String group = instance.getLoader().groupOf(className);
+            if (group == null) {
+                System.out.println(className + " is not a codelet, restart the agent to apply this change");
+                continue;
+            }
+            ClassLoader loader = reloadedGroups.computeIfAbsent(group, instance.getLoader()::reloadGroup);
+            swap(className, loader);
+        }
+        return true;
+    }
+
+    private boolean compile(Collection<Path> sources) {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = List.of(
+                    "-d", classpath.getClassesDir().toString(),
+                    "-classpath", classpath.getClasspathString(),
+                    "-proc:none",
+                    "-implicit:none");
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromPaths(sources);
+            if (compiler.getTask(null, fileManager, diagnostics, options, null, units).call())
+                return true;
+        } catch (IOException e) {
+            System.out.println("Could not compile changes: " + e.getMessage());
+            return false;
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                System.out.println(diagnostic.getSource().getName() + ":" + diagnostic.getLineNumber() + ": "
+                        + diagnostic.getMessage(Locale.getDefault()));
+        }
+        System.out.println("Compilation failed, running codelets were kept");
+        return false;
+    }
+
+    private void swap(String className, ClassLoader loader) throws InterruptedException {
+        // New codelet threads must belong to the instance thread group, like the ones they replace
+        Thread swapper = new Thread(instance.getThreads(), () -> {
+            try {
+                Class<?> codeletClass = loader.loadClass(className);
+                int swapped = 0;
+                for (Object codelet : MindAccess.getCodelets(instance.getMind())) {
+                    if (!codelet.getClass().getName().equals(className))
+                        continue;
+                    MindAccess.replaceCodelet(instance.getMind(), codelet, codeletClass.getConstructor().newInstance());
+                    swapped++;
+                }
+                if (swapped == 0)
+                    System.out.println(className + " compiled, it is not used by the running agent");
+                else
+                    System.out.println("Reloaded " + className + " (" + swapped + " instance(s))");
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.out.println("Could not reload " + className + ": " + e);
+            }
+        }, instance.getName() + "-reload");
+        swapper.setContextClassLoader(instance.getLoader());
+        swapper.start();
+        swapper.join();
+    }
+}
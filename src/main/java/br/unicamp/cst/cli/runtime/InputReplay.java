@@ -0,0 +1,325 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a capture back to an agent instance from a single thread. The agent is stopped first, then
+ * every captured update is applied in order and followed by one cycle of each periodic codelet, in
+ * code rack order. Codelets triggered on change run inside the update, CST notifies them from the
+ * updating thread, so they are timed with it.
+ * <p>
+ * Cycles no longer depend on codelet timers, the same capture runs the same sequence of cycles on
+ * every replay and its timings can be compared across code changes.
+ */
+public class InputReplay {
+
+    private static final long STOP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    static final int RATE_WINDOWS = 10;
+
+    private final AgentInstance instance;
+    private final Set<String> triggeredOnChange;
+
+    /**
+     * @param triggeredOnChange names of the codelets run by updates of their inputs instead of a timer
+     */
+    public InputReplay(AgentInstance instance, Set<String> triggeredOnChange) {
+        this.instance = instance;
+        this.triggeredOnChange = triggeredOnChange;
+    }
+
+    /**
+     * @param recordedSpeed whether updates are spaced as they were captured, otherwise each one is
+     *                      applied as soon as the cycles of the previous one end
+     */
+    public Result replay(CaptureFile capture, boolean recordedSpeed) throws IOException, InterruptedException {
+        Object mind = instance.getMind();
+        MindAccess.shutDown(mind);
+        awaitCycles();
+
+        Result result = new Result();
+        List<CodeletTarget> periodic = new ArrayList<>();
+        List<CodeletTarget> observers = new ArrayList<>();
+        for (Object codelet : MindAccess.getCodelets(mind)) {
+            CodeletTarget target = new CodeletTarget(codelet, capture.getRecords().size());
+            (triggeredOnChange.contains(target.name) ? observers : periodic).add(target);
+            result.codelets.put(target.name, target.latency);
+        }
+        Map<String, MemoryTarget> memories = new HashMap<>();
+        for (Object memory : MindAccess.getMemories(mind)) {
+            String name = String.valueOf(MindAccess.call(memory, "getName"));
+            memories.computeIfAbsent(name, n -> new MemoryTarget(memory, n, observersOf(memory, observers)));
+        }
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(instance.getLoader());
+        try {
+            List<CaptureFile.Record> records = capture.getRecords();
+            long firstNanos = records.isEmpty() ? 0 : records.get(0).getNanos();
+            result.endNanos = new long[records.size()];
+            long start = System.nanoTime();
+            result.startNanos = start;
+            for (int i = 0; i < records.size(); i++) {
+                CaptureFile.Record record = records.get(i);
+                MemoryTarget memory = memories.get(record.getMemory());
+                if (memory == null) {
+                    result.unknownMemories.add(record.getMemory());
+                    continue;
+                }
+                Object value;
+                try {
+                    value = record.value(instance.getLoader());
+                } catch (ClassNotFoundException | IOException e) {
+                    throw new IOException("Cannot read the value of " + record.getMemory() + " in record " + i + ": " + e, e);
+                }
+                if (recordedSpeed)
+                    result.maxLagNanos = Math.max(result.maxLagNanos, waitUntil(start + record.getNanos() - firstNanos));
+
+                long updateStart = System.nanoTime();
+                invoke(memory.setI, memory.memory, memory.description, i, value);
+                long updateNanos = System.nanoTime() - updateStart;
+                for (CodeletTarget observer : memory.observers)
+                    observer.latency.add(updateNanos);
+                for (CodeletTarget codelet : periodic)
+                    codelet.cycle(i);
+                result.endNanos[(int) result.replayed++] = System.nanoTime();
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+        }
+        return result;
+    }
+
+    // Cycles started by the codelet timers before the agent stopped must end before the replay starts
+    private void awaitCycles() throws InterruptedException {
+        long deadline = System.nanoTime() + STOP_TIMEOUT_NANOS;
+        Thread[] threads = new Thread[instance.getThreads().activeCount() * 2 + 8];
+        int count = instance.getThreads().enumerate(threads, true);
+        for (int i = 0; i < count; i++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return;
+            threads[i].join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        }
+    }
+
+    /**
+     * Events per second in each of {@link #RATE_WINDOWS} equal windows of the span starting at
+     * {@code start}, so a rate gets a spread. Events are given by the times they happened at.
+     */
+    static double[] rates(long[] times, int count, long start, long spanNanos) {
+        if (spanNanos <= 0)
+            return new double[0];
+        long[] events = new long[RATE_WINDOWS];
+        for (int i = 0; i < count; i++)
+            events[(int) Math.max(0, Math.min(RATE_WINDOWS - 1, (times[i] - start) * RATE_WINDOWS / spanNanos))]++;
+        double windowSeconds = spanNanos / 1e9 / RATE_WINDOWS;
+        return Arrays.stream(events).mapToDouble(e -> e / windowSeconds).toArray();
+    }
+
+    private static long waitUntil(long deadline) {
+        long now;
+        while ((now = System.nanoTime()) < deadline)
+            LockSupport.parkNanos(deadline - now);
+        return now - deadline;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<CodeletTarget> observersOf(Object memory, List<CodeletTarget> observers) {
+        List<CodeletTarget> result = new ArrayList<>();
+        for (CodeletTarget observer : observers) {
+            for (Object input : (List<Object>) MindAccess.call(observer.codelet, "getInputs")) {
+                if (input == memory) {
+                    result.add(observer);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Object invoke(Method method, Object target, String what, int record, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access " + method.getName() + " of " + target.getClass().getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(what + " failed replaying record " + record + ": " + e.getCause(), e.getCause());
+        }
+    }
+
+    private static class MemoryTarget {
+        final Object memory;
+        final String description;
+        final Method setI;
+        final List<CodeletTarget> observers;
+
+        MemoryTarget(Object memory, String name, List<CodeletTarget> observers) {
+            this.memory = memory;
+            this.description = "Update of " + name;
+            this.setI = MindAccess.findMethod(memory.getClass(), "setI", 1);
+            this.observers = observers;
+        }
+    }
+
+    // Methods are looked up once, a lookup costs more than many codelet cycles
+    private static class CodeletTarget {
+        final Object codelet;
+        final String name;
+        final Latency latency;
+        final Method accessMemoryObjects;
+        final Method calculateActivation;
+        final Method getActivation;
+        final Method getThreshold;
+        final Method proc;
+
+        CodeletTarget(Object codelet, int capacity) {
+            this.codelet = codelet;
+            this.name = String.valueOf(MindAccess.call(codelet, "getName"));
+            this.latency = new Latency(capacity);
+            Class<?> type = codelet.getClass();
+            this.accessMemoryObjects = MindAccess.findMethod(type, "accessMemoryObjects", 0);
+            this.calculateActivation = MindAccess.findMethod(type, "calculateActivation", 0);
+            this.getActivation = MindAccess.findMethod(type, "getActivation", 0);
+            this.getThreshold = MindAccess.findMethod(type, "getThreshold", 0);
+            this.proc = MindAccess.findMethod(type, "proc", 0);
+        }
+
+        // The cycle a CST codelet runs on every tick of its timer
+        void cycle(int record) {
+            long start = System.nanoTime();
+            invoke(accessMemoryObjects, codelet, name, record);
+            invoke(calculateActivation, codelet, name, record);
+            double activation = ((Number) invoke(getActivation, codelet, name, record)).doubleValue();
+            double threshold = ((Number) invoke(getThreshold, codelet, name, record)).doubleValue();
+            if (activation >= threshold)
+                invoke(proc, codelet, name, record);
+            latency.add(System.nanoTime() - start);
+        }
+    }
+
+    public static class Latency {
+        private long[] samples;
+        private int count;
+        private long total;
+
+        Latency(int capacity) {
+            this.samples = new long[Math.max(16, capacity)];
+        }
+
+        void add(long nanos) {
+            if (count == samples.length)
+                samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = nanos;
+            total += nanos;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return total;
+        }
+
+        /**
+         * @return the latency in nanoseconds below which the given fraction of samples fall, or -1 without samples
+         */
+        public long percentile(double fraction) {
+            if (count == 0)
+                return -1;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(fraction * count);
+            return sorted[Math.max(0, Math.min(count - 1, rank - 1))];
+        }
+
+        public long mean() {
+            return count == 0 ? -1 : total / count;
+        }
+
+        /**
+         * @return the sample standard deviation in nanoseconds, 0 with fewer than two samples
+         */
+        public double stddev() {
+            if (count < 2)
+                return 0;
+            double mean = total / (double) count;
+            double squares = 0;
+            for (int i = 0; i < count; i++)
+                squares += (samples[i] - mean) * (samples[i] - mean);
+            return Math.sqrt(squares / (count - 1));
+        }
+
+        /**
+         * @return how many samples fall in each bucket, bucket i holding those above bound i - 1 and up
+         * to bound i, and a last bucket for those above every bound
+         */
+        public int[] histogram(long[] upperBounds) {
+            int[] buckets = new int[upperBounds.length + 1];
+            for (int i = 0; i < count; i++) {
+                int bucket = Arrays.binarySearch(upperBounds, samples[i]);
+                buckets[bucket >= 0 ? bucket : -bucket - 1]++;
+            }
+            return buckets;
+        }
+    }
+
+    public static class Result {
+        private final Map<String, Latency> codelets = new LinkedHashMap<>();
+        private final Set<String> unknownMemories = new TreeSet<>();
+        private long replayed;
+        private long[] endNanos = new long[0];
+        private long startNanos;
+        private long elapsedNanos;
+        private long maxLagNanos;
+
+        /**
+         * Latency of every codelet, in code rack order
+         */
+        public Map<String, Latency> getCodelets() {
+            return codelets;
+        }
+
+        /**
+         * Captured memories the agent no longer has, their updates were skipped
+         */
+        public Set<String> getUnknownMemories() {
+            return unknownMemories;
+        }
+
+        public long getReplayed() {
+            return replayed;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * How far behind the recorded timing the slowest update was applied
+         */
+        public long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        public double getUpdatesPerSecond() {
+            return elapsedNanos == 0 ? 0 : replayed * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Inputs per second over successive windows of the replay, by the time their cycles ended
+         */
+        public double[] getRateSamples() {
+            return rates(endNanos, (int) replayed, startNanos, elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Java agent loaded by {@code cst inspect} into a running agent JVM. It streams samples of the
+ * codelets and memories of the running minds back to the CLI through a local socket.
+ * <p>
+ * A Mind is not reachable from outside, but every periodic CST codelet runs from a {@link Timer}
+ * task that refers to it, so the codelets are found through the timer threads, the memories
+ * through the codelets and codelets triggered on change through the observers of the memories.
+ * Agents generated with another execution mode start no timer, their codelets are found through
+ * the running instances the generated CodeletExecutor and TickScheduler classes keep.
+ * Values are read straight from fields, never through the synchronized CST getters, so sampling
+ * cannot block or stall a codelet thread.
+ * <p>
+ * This class is copied into the agent jar on its own, it must only use java.base and
+ * java.instrument and must not have nested classes.
+ */
+public class InspectorAgent {
+
+    static final String CODELET_CLASS = "br.unicamp.cst.core.entities.Codelet";
+    static final String HELLO = "CST-INSPECT 1";
+
+    // Content types whose toString() neither locks nor runs user code
+    private static final Set<String> PLAIN_TYPES = Set.of("java.lang.String", "java.lang.Boolean", "java.lang.Character",
+            "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double",
+            "java.math.BigInteger", "java.math.BigDecimal");
+    private static final int MAX_CONTENT = 120;
+    // TimerTask.CANCELLED
+    private static final int TASK_CANCELLED = 3;
+    // Generated by cst init for the virtual, pool and tick execution modes
+    private static final Set<String> SCHEDULER_CLASSES = Set.of("CodeletExecutor", "TickScheduler");
+
+    public static void agentmain(String arguments, Instrumentation instrumentation) {
+        Map<String, String> options = new HashMap<>();
+        for (String option : arguments.split(";")) {
+            int equals = option.indexOf('=');
+            if (equals > 0)
+                options.put(option.substring(0, equals), option.substring(equals + 1));
+        }
+        // Timer internals live in java.util, which is only opened to this agent
+        Module javaBase = Object.class.getModule();
+        instrumentation.redefineModule(javaBase, Set.of(), Map.of(),
+                Map.of("java.util", Set.of(InspectorAgent.class.getModule())), Set.of(), Map.of());
+
+        Thread sampler = new Thread(() -> run(options, instrumentation), "cst-inspect");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    private static void run(Map<String, String> options, Instrumentation instrumentation) {
+        long interval = Long.parseLong(options.getOrDefault("interval", "1000"));
+        boolean callToString = Boolean.parseBoolean(options.get("toString"));
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(options.get("port")));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.write(HELLO + "\t" + options.get("token") + "\n");
+            out.flush();
+            Map<Object, Object> lastTimestamps = new IdentityHashMap<>();
+            while (true) {
+                sample(out, lastTimestamps, callToString, instrumentation.getAllLoadedClasses());
+                out.flush();
+                Thread.sleep(interval);
+            }
+        } catch (IOException | InterruptedException e) {
+            // The CLI went away, sampling simply stops
+        }
+    }
+
+    private static void sample(BufferedWriter out, Map<Object, Object> lastTimestamps, boolean callToString,
+                               Class<?>[] loadedClasses) throws IOException {
+        out.write("S\t" + System.currentTimeMillis() + "\n");
+        Set<Object> memories = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Object> ordered = new ArrayList<>();
+        for (Object codelet : findCodelets(loadedClasses)) {
+            List<?> inputs = list(read(codelet, "inputs"));
+            List<?> outputs = list(read(codelet, "outputs"));
+            List<?> broadcast = list(read(codelet, "broadcast"));
+            out.write("C\t" + escape(codelet.getClass().getName()) + "\t" + escape(String.valueOf(read(codelet, "name")))
+                    + "\t" + read(codelet, "activation") + "\t" + read(codelet, "timeStep")
+                    + "\t" + names(inputs) + "\t" + names(outputs) + "\t" + names(broadcast) + "\n");
+            for (List<?> wired : List.of(inputs, outputs, broadcast)) {
+                for (Object memory : wired) {
+                    if (memory != null && memories.add(memory))
+                        ordered.add(memory);
+                }
+            }
+        }
+        for (Object memory : ordered) {
+            Object timestamp = read(memory, "timestamp");
+            Object previous = lastTimestamps.put(memory, timestamp);
+            boolean updated = previous != null && !previous.equals(timestamp);
+            out.write("M\t" + escape(String.valueOf(read(memory, "name"))) + "\t" + escape(memory.getClass().getSimpleName())
+                    + "\t" + (updated ? "1" : "0") + "\t" + escape(describe(memory, callToString)) + "\n");
+        }
+        out.write("E\n");
+    }
+
+    /**
+     * Codelets scheduled on the timer threads of this JVM or run by the generated executors among
+     * {@code loadedClasses}, in a stable order
+     */
+    public static List<Object> findCodelets(Class<?>[] loadedClasses) {
+        List<Object> codelets = new ArrayList<>();
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Class<?> type : loadedClasses) {
+            if (!SCHEDULER_CLASSES.contains(type.getSimpleName()))
+                continue;
+            Field running = field(type, "RUNNING");
+            if (running == null || !Modifier.isStatic(running.getModifiers()))
+                continue;
+            for (Object scheduler : collection(get(running, null))) {
+                // CodeletExecutor maps its codelets to their tasks, TickScheduler lists them
+                Object tasks = read(scheduler, "tasks");
+                Collection<?> scheduled = tasks instanceof Map ? collection(((Map<?, ?>) tasks).keySet()) : list(read(scheduler, "codelets"));
+                for (Object codelet : scheduled) {
+                    if (codelet != null && seen.add(codelet))
+                        codelets.add(codelet);
+                }
+            }
+        }
+        for (Thread thread : allThreads()) {
+            if (thread == null || !thread.getClass().getName().equals("java.util.TimerThread"))
+                continue;
+            Object queue = read(thread, "queue");
+            Object[] tasks = queue == null ? null : (Object[]) read(queue, "queue");
+            if (tasks == null)
+                continue;
+            for (Object task : tasks.clone()) {
+                // Cancelled tasks stay queued until their time comes, e.g. codelets replaced by a hot reload
+                if (task == null || Integer.valueOf(TASK_CANCELLED).equals(read(task, "state")))
+                    continue;
+                Object codelet = enclosingCodelet(task);
+                if (codelet != null && seen.add(codelet))
+                    codelets.add(codelet);
+            }
+        }
+        // Observer codelets have no timer, they are reached through the memories they observe
+        for (int i = 0; i < codelets.size(); i++) {
+            Object codelet = codelets.get(i);
+            for (String wiring : List.of("inputs", "outputs", "broadcast")) {
+                for (Object memory : list(read(codelet, wiring))) {
+                    Object observers = memory == null ? null : read(memory, "memoryObservers");
+                    for (Object observer : collection(observers)) {
+                        if (observer != null && isCodelet(observer.getClass()) && seen.add(observer))
+                            codelets.add(observer);
+                    }
+                }
+            }
+        }
+        codelets.sort(Comparator.comparing((Object c) -> c.getClass().getName()).thenComparing(System::identityHashCode));
+        return codelets;
+    }
+
+    // Unlike Thread.getAllStackTraces() this needs no safepoint, running threads are not paused
+    private static Thread[] allThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null)
+            root = root.getParent();
+        Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+        root.enumerate(threads, true);
+        return threads;
+    }
+
+    private static Object enclosingCodelet(Object task) {
+        for (Class<?> type = task.getClass(); type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive())
+                    continue;
+                Object value = get(field, task);
+                if (value != null && isCodelet(value.getClass()))
+                    return value;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isCodelet(Class<?> type) {
+        for (; type != null; type = type.getSuperclass()) {
+            if (type.getName().equals(CODELET_CLASS))
+                return true;
+        }
+        return false;
+    }
+
+    private static String describe(Object memory, boolean callToString) {
+        Field content = field(memory.getClass(), "I");
+        if (content == null) {
+            List<?> members = list(read(memory, "memories"));
+            return "[" + members.size() + " memories]";
+        }
+        Object value = get(content, memory);
+        if (value == null)
+            return "null";
+        Class<?> type = value.getClass();
+        if (type.isArray())
+            return type.getComponentType().getSimpleName() + "[" + java.lang.reflect.Array.getLength(value) + "]";
+        if (!callToString && !PLAIN_TYPES.contains(type.getName()) && !type.isEnum())
+            return type.getSimpleName();
+        String text;
+        try {
+            text = String.valueOf(value);
+        } catch (RuntimeException e) {
+            text = type.getSimpleName() + " (toString failed)";
+        }
+        return text.length() > MAX_CONTENT ? text.substring(0, MAX_CONTENT) + "..." : text;
+    }
+
+    private static String names(List<?> memories) {
+        StringJoiner joined = new StringJoiner(",");
+        for (Object memory : memories) {
+            if (memory != null)
+                joined.add(escape(String.valueOf(read(memory, "name"))).replace(",", " "));
+        }
+        return joined.toString();
+    }
+
+    private static List<?> list(Object value) {
+        if (!(value instanceof List))
+            return List.of();
+        // Lists may change while they are read, a partial copy is good enough for a sample
+        try {
+            return new ArrayList<>((List<?>) value);
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+    }
+
+    private static Collection<?> collection(Object value) {
+        if (!(value instanceof Collection))
+            return List.of();
+        try {
+            return new ArrayList<>((Collection<?>) value);
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+    }
+
+    private static Object read(Object target, String name) {
+        Field field = field(target.getClass(), name);
+        return field == null ? null : get(field, target);
+    }
+
+    private static Field field(Class<?> type, String name) {
+        for (; type != null; type = type.getSuperclass()) {
+            try {
+                return type.getDeclaredField(name);
+            } catch (NoSuchFieldException e) {
+                // Declared by a superclass
+            }
+        }
+        return null;
+    }
+
+    private static Object get(Field field, Object target) {
+        try {
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "");
+    }
+
+    static String unescape(String value) {
+        StringBuilder text = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                text.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,278 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.util.CSTHome;
+import br.unicamp.cst.cli.util.Constants;
+import com.sun.tools.attach.AgentInitializationException;
+import com.sun.tools.attach.AgentLoadException;
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * CLI side of {@code cst inspect}: loads {@link InspectorAgent} into another JVM through the
+ * Attach API and reads the samples it sends back.
+ */
+public class InspectorClient implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private final Socket socket;
+    private final BufferedReader in;
+
+    private InspectorClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    public static InspectorClient attach(String pid, long intervalMillis, boolean callToString) throws IOException {
+        Path agentJar = agentJar();
+        String token = Long.toHexString(new SecureRandom().nextLong());
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            String options = "port=" + server.getLocalPort() + ";interval=" + intervalMillis
+                    + ";toString=" + callToString + ";token=" + token;
+            VirtualMachine vm;
+            try {
+                vm = VirtualMachine.attach(pid);
+            } catch (AttachNotSupportedException | IOException e) {
+                throw new IOException("Could not attach to process " + pid + ": " + e.getMessage(), e);
+            }
+            try {
+                vm.loadAgent(agentJar.toString(), options);
+            } catch (AgentLoadException | AgentInitializationException e) {
+                throw new IOException("Process " + pid + " refused the inspector agent: " + e.getMessage(), e);
+            } finally {
+                vm.detach();
+            }
+
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Process " + pid + " did not connect back, it may not be running a CST agent", e);
+            }
+            InspectorClient client = new InspectorClient(socket);
+            // Anyone on this host can connect to the port, only the loaded agent knows the token
+            String hello = client.in.readLine();
+            if (!(InspectorAgent.HELLO + "\t" + token).equals(hello)) {
+                client.close();
+                throw new IOException("Unexpected connection while waiting for process " + pid);
+            }
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, intervalMillis * 3 + CONNECT_TIMEOUT_MILLIS));
+            return client;
+        }
+    }
+
+    /**
+     * Blocks until the next sample arrives.
+     *
+     * @return null when the inspected JVM ended
+     */
+    public Sample next() throws IOException {
+        Sample sample = null;
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] fields = line.split("\t", -1);
+            switch (fields[0]) {
+                case "S" -> sample = new Sample(Long.parseLong(fields[1]));
+                case "C" -> {
+                    if (sample != null)
+                        sample.codelets.add(new CodeletSample(fields));
+                }
+                case "M" -> {
+                    if (sample != null)
+                        sample.memories.add(new MemorySample(fields));
+                }
+                case "E" -> {
+                    if (sample != null)
+                        return sample;
+                }
+                default -> {
+                    // Lines from newer agents are ignored
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Jar holding only the agent class, kept in the CLI cache. The name includes a hash of the
+     * class, so a rebuilt CLI never loads a stale agent.
+     */
+    static Path agentJar() throws IOException {
+        byte[] agentClass;
+        try (InputStream classFile = InspectorAgent.class.getResourceAsStream("InspectorAgent.class")) {
+            if (classFile == null)
+                throw new IOException("Inspector agent class is not bundled with the CLI");
+            agentClass = classFile.readAllBytes();
+        }
+        Path jar = CSTHome.cacheDir().resolve(Constants.CLI_VERSION).resolve("inspect-agent-" + hash(agentClass) + ".jar");
+        if (Files.isRegularFile(jar))
+            return jar;
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Agent-Class", InspectorAgent.class.getName());
+        Files.createDirectories(jar.getParent());
+        Path temp = Files.createTempFile(jar.getParent(), "inspect-agent", ".tmp");
+        try {
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(temp), manifest)) {
+                out.putNextEntry(new JarEntry(InspectorAgent.class.getName().replace('.', '/') + ".class"));
+                out.write(agentClass);
+                out.closeEntry();
+            }
+            Files.move(temp, jar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return jar;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content), 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Sample {
+        private final long time;
+        private final List<CodeletSample> codelets = new ArrayList<>();
+        private final List<MemorySample> memories = new ArrayList<>();
+
+        Sample(long time) {
+            this.time = time;
+        }
+
+        /**
+         * Wall clock time of the inspected JVM, in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public List<CodeletSample> getCodelets() {
+            return codelets;
+        }
+
+        public List<MemorySample> getMemories() {
+            return memories;
+        }
+    }
+
+    public static class CodeletSample {
+        private final String className;
+        private final String name;
+        private final String activation;
+        private final String timeStep;
+        private final List<String> in;
+        private final List<String> out;
+        private final List<String> broadcast;
+
+        CodeletSample(String[] fields) {
+            this.className = InspectorAgent.unescape(fields[1]);
+            this.name = InspectorAgent.unescape(fields[2]);
+            this.activation = fields[3];
+            this.timeStep = fields[4];
+            this.in = names(fields[5]);
+            this.out = names(fields[6]);
+            this.broadcast = names(fields[7]);
+        }
+
+        private static List<String> names(String field) {
+            List<String> names = new ArrayList<>();
+            for (String name : field.split(","))
+                if (!name.isEmpty())
+                    names.add(InspectorAgent.unescape(name));
+            return names;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getSimpleClassName() {
+            return className.substring(className.lastIndexOf('.') + 1);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getActivation() {
+            return activation;
+        }
+
+        public String getTimeStep() {
+            return timeStep;
+        }
+
+        public List<String> getIn() {
+            return in;
+        }
+
+        public List<String> getOut() {
+            return out;
+        }
+
+        public List<String> getBroadcast() {
+            return broadcast;
+        }
+    }
+
+    public static class MemorySample {
+        private final String name;
+        private final String type;
+        private final boolean updated;
+        private final String content;
+
+        MemorySample(String[] fields) {
+            this.name = InspectorAgent.unescape(fields[1]);
+            this.type = InspectorAgent.unescape(fields[2]);
+            this.updated = fields[3].equals("1");
+            this.content = InspectorAgent.unescape(fields[4]);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Whether the memory changed since the previous sample
+         */
+        public boolean isUpdated() {
+            return updated;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+}
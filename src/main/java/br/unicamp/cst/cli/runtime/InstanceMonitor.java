@@ -0,0 +1,142 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the resources used by each agent instance of a runtime: threads, CPU time and allocated
+ * bytes of the threads in the instance thread group, plus codelet cycles when the agent counts them.
+ * Only agents generated with metrics count their cycles, and virtual threads belong to no thread
+ * group, so codelets running on them are missing from the threads, CPU time and allocations. The
+ * report says so when it applies.
+ */
+public class InstanceMonitor {
+
+    private static final String ROW_FORMAT = "%-12s %8s %8s %14s %12s";
+
+    private final AgentRuntime runtime;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final Map<AgentInstance, Sample> lastSamples = new HashMap<>();
+    private long lastTime = System.nanoTime();
+
+    public InstanceMonitor(AgentRuntime runtime) {
+        this.runtime = runtime;
+        if (threadBean.isThreadCpuTimeSupported())
+            threadBean.setThreadCpuTimeEnabled(true);
+        if (threadBean instanceof com.sun.management.ThreadMXBean allocationBean && allocationBean.isThreadAllocatedMemorySupported())
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Gives every instance thread a name prefixed by its instance, so thread dumps and profilers
+     * tell the instances apart. New threads are picked up on the next call.
+     */
+    public void nameThreads() {
+        for (AgentInstance instance : runtime.getInstances()) {
+            String prefix = instance.getName() + "/";
+            for (Thread thread : threadsOf(instance)) {
+                if (!thread.getName().startsWith(prefix))
+                    thread.setName(prefix + thread.getName());
+            }
+        }
+    }
+
+    public List<String> report() {
+        nameThreads();
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastTime) / 1e9;
+        lastTime = now;
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(ROW_FORMAT, "instance", "threads", "cpu %", "alloc MB/s", "cycles/s"));
+        Sample total = new Sample();
+        Sample totalDelta = new Sample();
+        List<String> uncounted = new ArrayList<>();
+        List<String> virtual = new ArrayList<>();
+        for (AgentInstance instance : runtime.getInstances()) {
+            Sample current = sample(instance);
+            if (current.cycles < 0)
+                uncounted.add(instance.getName());
+            if (MindAccess.runsOnVirtualThreads(instance.getMind()))
+                virtual.add(instance.getName());
+            Sample previous = lastSamples.getOrDefault(instance, new Sample());
+            Sample delta = current.minus(previous);
+            lastSamples.put(instance, current);
+            lines.add(row(instance.getName(), current.threads, delta, seconds));
+            total.threads += current.threads;
+            totalDelta.add(delta);
+        }
+        lines.add(row("total", total.threads, totalDelta, seconds));
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        lines.add(String.format("heap used %d MB of %d MB committed, %d live JVM threads, %d cores",
+                heap.getUsed() >> 20, heap.getCommitted() >> 20, threadBean.getThreadCount(),
+                Runtime.getRuntime().availableProcessors()));
+        if (!uncounted.isEmpty())
+            lines.add("cycles/s: " + String.join(", ", uncounted) + " count no cycles, generate the project with 'cst init --metrics'");
+        if (!virtual.isEmpty())
+            lines.add("threads: " + String.join(", ", virtual) + " run codelets on virtual threads, which are not in threads, cpu % and alloc MB/s");
+        return lines;
+    }
+
+    private String row(String name, int threads, Sample delta, double seconds) {
+        String cpu = delta.cpuNanos < 0 ? "-" : String.format("%.1f", 100.0 * delta.cpuNanos / 1e9 / seconds);
+        String allocation = delta.allocatedBytes < 0 ? "-" : String.format("%.2f", delta.allocatedBytes / 1048576.0 / seconds);
+        String cycles = delta.cycles < 0 ? "-" : String.format("%.1f", delta.cycles / seconds);
+        return String.format(ROW_FORMAT, name, threads, cpu, allocation, cycles);
+    }
+
+    private Sample sample(AgentInstance instance) {
+        Sample sample = new Sample();
+        List<Thread> threads = threadsOf(instance);
+        sample.threads = threads.size();
+        sample.cycles = MindAccess.getCycleCount(instance.getMind());
+        if (!threadBean.isThreadCpuTimeEnabled())
+            sample.cpuNanos = -1;
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+            sample.allocatedBytes = -1;
+        for (Thread thread : threads) {
+            if (sample.cpuNanos >= 0)
+                sample.cpuNanos += Math.max(0, threadBean.getThreadCpuTime(thread.getId()));
+            if (sample.allocatedBytes >= 0)
+                sample.allocatedBytes += Math.max(0, ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(thread.getId()));
+        }
+        return sample;
+    }
+
+    private static List<Thread> threadsOf(AgentInstance instance) {
+        Thread[] threads = new Thread[instance.getThreads().activeCount() * 2 + 8];
+        int count = instance.getThreads().enumerate(threads, true);
+        return Arrays.asList(threads).subList(0, count);
+    }
+
+    private static class Sample {
+        int threads;
+        long cpuNanos;
+        long allocatedBytes;
+        long cycles;
+
+        // Time and allocations of threads that ended since the last sample are lost, so deltas never go below zero
+        Sample minus(Sample previous) {
+            Sample delta = new Sample();
+            delta.cpuNanos = cpuNanos < 0 ? -1 : Math.max(0, cpuNanos - previous.cpuNanos);
+            delta.allocatedBytes = allocatedBytes < 0 ? -1 : Math.max(0, allocatedBytes - previous.allocatedBytes);
+            delta.cycles = cycles < 0 ? -1 : Math.max(0, cycles - previous.cycles);
+            return delta;
+        }
+
+        void add(Sample delta) {
+            cpuNanos = cpuNanos < 0 || delta.cpuNanos < 0 ? -1 : cpuNanos + delta.cpuNanos;
+            allocatedBytes = allocatedBytes < 0 || delta.allocatedBytes < 0 ? -1 : allocatedBytes + delta.allocatedBytes;
+            cycles = cycles < 0 || delta.cycles < 0 ? -1 : cycles + delta.cycles;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package br.unicamp.cst.cli.runtime;
+
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+import br.unicamp.cst.cli.runtime.InputReplay.Latency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes inputs to the source memories of a running agent instance at a fixed rate and times how
+ * long its sink memories take to react, while the codelets run as they normally do.
+ * <p>
+ * Every input writes each source memory once and is stamped with {@link System#nanoTime()} right
+ * before the first write. Sinks are observed through CST memory observers, which run on the thread
+ * that updates them, in the same JVM and on the same clock. Periodic codelets rewrite their outputs
+ * on every cycle, so only an update that changes the value of a sink answers an input.
+ * <p>
+ * Sources without values get the sequence number of the input. When a sink update carries one of
+ * the unanswered sequence numbers back, as pass-through paths do, it answers exactly that input,
+ * and the older unanswered inputs were superseded: the agent read a newer value before reaching
+ * them. Any other change answers every unanswered input, the best guess when no id survives the
+ * path. Inputs still unanswered when a step has drained are counted as lost.
+ * <p>
+ * The outputs of every codelet are observed the same way, so each codelet reacts to the inputs
+ * on its own and the path of an input through the agent can be followed. A memory written by
+ * several codelets reacts for each of them.
+ */
+public class LoadDriver {
+
+    private static final String OBSERVER_INTERFACE = "br.unicamp.cst.core.entities.MemoryObserver";
+
+    private final AgentInstance instance;
+    private final List<Source> sources = new ArrayList<>();
+    private final List<String> codelets = new ArrayList<>();
+    private final boolean carriesSequence;
+    private Step current;
+    private long sequence;
+
+    /**
+     * @param values values written to each source memory in turn, sources without values get the
+     *               sequence number of the input as a {@link Long}
+     */
+    @SuppressWarnings("unchecked")
+    public LoadDriver(AgentInstance instance, List<String> sources, List<String> sinks, Map<String, List<Object>> values) {
+        this.instance = instance;
+        Object mind = instance.getMind();
+        Map<String, Object> memories = new HashMap<>();
+        for (Object memory : MindAccess.getMemories(mind))
+            memories.putIfAbsent(String.valueOf(MindAccess.call(memory, "getName")), memory);
+
+        for (String name : sources)
+            this.sources.add(new Source(find(memories, name), name, values.getOrDefault(name, List.of())));
+        this.carriesSequence = this.sources.stream().anyMatch(source -> source.values.isEmpty());
+        Class<?> observerType;
+        try {
+            observerType = Class.forName(OBSERVER_INTERFACE, false, instance.getLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The agent uses a CST version without memory observers, sinks cannot be observed");
+        }
+
+        Map<Object, Watched> watched = new IdentityHashMap<>();
+        for (String name : sinks)
+            watched.computeIfAbsent(find(memories, name), Watched::new).sink = true;
+        for (Object codelet : MindAccess.getCodelets(mind)) {
+            String name = String.valueOf(MindAccess.call(codelet, "getName"));
+            List<Object> outputs = (List<Object>) MindAccess.call(codelet, "getOutputs");
+            if (outputs.isEmpty() || codelets.contains(name))
+                continue;
+            for (Object output : outputs)
+                watched.computeIfAbsent(output, Watched::new).codelets.add(codelets.size());
+            codelets.add(name);
+        }
+        for (Watched memory : watched.values()) {
+            Object observer = Proxy.newProxyInstance(instance.getLoader(), new Class<?>[]{observerType}, (proxy, method, args) ->
+                    switch (method.getName()) {
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "LoadDriver observer of " + memory.memory;
+                        default -> {
+                            answer(memory, System.nanoTime());
+                            yield null;
+                        }
+                    });
+            MindAccess.call(memory.memory, "addMemoryObserver", observer);
+        }
+    }
+
+    private static Object find(Map<String, Object> memories, String name) {
+        Object memory = memories.get(name);
+        if (memory == null)
+            throw new IllegalStateException("The agent has no memory " + name + ", run 'cst sync' or rebuild the project");
+        return memory;
+    }
+
+    /**
+     * Writes {@code rate} inputs per second for {@code durationNanos}, then waits up to
+     * {@code drainNanos} for the sinks to answer the last ones
+     */
+    public Step run(double rate, long durationNanos, long drainNanos) throws InterruptedException {
+        Step step = new Step(rate, (int) Math.min(1 << 20, rate * durationNanos / 1e9), sequence, codelets);
+        synchronized (this) {
+            current = step;
+        }
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(instance.getLoader());
+        long interval = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        step.startNanos = start;
+        try {
+            for (long i = 0; ; i++) {
+                long deadline = start + i * interval;
+                if (deadline >= end || System.nanoTime() >= end)
+                    break;
+                waitUntil(deadline);
+                long stamp = System.nanoTime();
+                // Sent before the writes, observers triggered on change may answer while they run
+                synchronized (this) {
+                    step.send(stamp);
+                }
+                for (Source source : sources)
+                    source.write(sequence);
+                sequence++;
+            }
+            step.elapsedNanos = System.nanoTime() - start;
+
+            long drainDeadline = System.nanoTime() + drainNanos;
+            while (System.nanoTime() < drainDeadline) {
+                synchronized (this) {
+                    if (step.sinks.next == step.sent)
+                        break;
+                }
+                Thread.sleep(1);
+            }
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            synchronized (this) {
+                step.lost = step.sent - step.sinks.next;
+                current = null;
+            }
+        }
+        return step;
+    }
+
+    private synchronized void answer(Watched memory, long now) {
+        if (!memory.changed())
+            return;
+        if (current == null)
+            return;
+        Long carried = carriesSequence ? sequenceOf(memory.value) : null;
+        // Numbers past the last input sent are values that happen to be numbers, not sequence numbers
+        Long input = carried == null || carried - current.firstSequence >= current.sent ? null : carried - current.firstSequence;
+        if (memory.sink) {
+            current.sinkUpdates++;
+            current.sinks.answer(current, input, now);
+        }
+        for (int codelet : memory.codelets)
+            current.codelets[codelet].answer(current, input, now);
+    }
+
+    private static Long sequenceOf(Object value) {
+        if (value instanceof Long || value instanceof Integer)
+            return ((Number) value).longValue();
+        return null;
+    }
+
+    private static void waitUntil(long deadline) {
+        long now;
+        while ((now = System.nanoTime()) < deadline)
+            LockSupport.parkNanos(deadline - now);
+    }
+
+    private static class Watched {
+        final Object memory;
+        final Method getI;
+        final List<Integer> codelets = new ArrayList<>();
+        boolean sink;
+        Object value;
+        int hash;
+
+        Watched(Object memory) {
+            this.memory = memory;
+            this.getI = MindAccess.findMethod(memory.getClass(), "getI", 0);
+            this.value = read();
+            this.hash = Objects.hashCode(value);
+        }
+
+        /**
+         * Whether the value differs from the last one seen, by equality or by the hash of an object
+         * changed in place
+         */
+        boolean changed() {
+            Object current = read();
+            int currentHash = Objects.hashCode(current);
+            if (Objects.equals(current, value) && currentHash == hash)
+                return false;
+            value = current;
+            hash = currentHash;
+            return true;
+        }
+
+        private Object read() {
+            try {
+                return getI.invoke(memory);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Cannot read " + memory, e);
+            }
+        }
+    }
+
+    private static class Source {
+        final Object memory;
+        final String name;
+        final Method setI;
+        final List<Object> values;
+
+        Source(Object memory, String name, List<Object> values) {
+            this.memory = memory;
+            this.name = name;
+            this.setI = MindAccess.findMethod(memory.getClass(), "setI", 1);
+            this.values = values;
+        }
+
+        void write(long sequence) {
+            Object value = values.isEmpty() ? (Object) sequence : values.get((int) (sequence % values.size()));
+            try {
+                setI.invoke(memory, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access setI of " + memory.getClass().getName(), e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Writing input " + sequence + " to " + name + " failed: " + e.getCause(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The inputs one sink or codelet answered, in the order they were sent
+     */
+    private static class Reaction {
+        final Latency latency;
+        int next;
+        long superseded;
+
+        Reaction(int capacity) {
+            this.latency = new Latency(capacity);
+        }
+
+        /**
+         * @param input the input carried back by the update, null when it carries none
+         */
+        void answer(Step step, Long input, long now) {
+            if (input == null) {
+                for (; next < step.sent; next++)
+                    latency.add(now - step.stamps[next]);
+                return;
+            }
+            // Older than every unanswered input, the update repeats an input already answered
+            if (input < next)
+                return;
+            superseded += input - next;
+            latency.add(now - step.stamps[input.intValue()]);
+            next = input.intValue() + 1;
+        }
+    }
+
+    public static class Step {
+        private final double offeredRate;
+        private final long firstSequence;
+        private final Reaction sinks;
+        private final Reaction[] codelets;
+        private final List<String> codeletNames;
+        private long[] stamps;
+        private int sent;
+        private long lost;
+        private long sinkUpdates;
+        private long startNanos;
+        private long elapsedNanos;
+
+        Step(double offeredRate, int capacity, long firstSequence, List<String> codeletNames) {
+            this.offeredRate = offeredRate;
+            this.firstSequence = firstSequence;
+            this.stamps = new long[Math.max(16, capacity)];
+            this.sinks = new Reaction(capacity);
+            this.codeletNames = codeletNames;
+            this.codelets = new Reaction[codeletNames.size()];
+            for (int i = 0; i < codelets.length; i++)
+                codelets[i] = new Reaction(capacity);
+        }
+
+        void send(long stamp) {
+            if (sent == stamps.length)
+                stamps = Arrays.copyOf(stamps, sent * 2);
+            stamps[sent++] = stamp;
+        }
+
+        public double getOfferedRate() {
+            return offeredRate;
+        }
+
+        /**
+         * Inputs written per second, below the offered rate when writing an input takes longer than the interval
+         */
+        public double getAchievedRate() {
+            return elapsedNanos == 0 ? 0 : sent * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Inputs written per second over successive windows of the step, their mean is the achieved rate
+         */
+        public double[] getRateSamples() {
+            return InputReplay.rates(stamps, sent, startNanos, elapsedNanos);
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * Inputs no sink update followed before the step drained
+         */
+        public long getLost() {
+            return lost;
+        }
+
+        /**
+         * Inputs overwritten by a newer one before the agent read them, only known when the sinks
+         * carry the sequence numbers back
+         */
+        public long getSuperseded() {
+            return sinks.superseded;
+        }
+
+        /**
+         * Updates that changed the value of a sink
+         */
+        public long getSinkUpdates() {
+            return sinkUpdates;
+        }
+
+        /**
+         * Time from each answered input to the sink update answering it
+         */
+        public Latency getLatency() {
+            return sinks.latency;
+        }
+
+        /**
+         * Time from each input to the first change of the outputs of every codelet that followed it, in
+         * code rack order. Codelets whose outputs never changed have no samples.
+         */
+        public Map<String, Latency> getCodelets() {
+            Map<String, Latency> latencies = new LinkedHashMap<>();
+            for (int i = 0; i < codelets.length; i++)
+                latencies.put(codeletNames.get(i), codelets[i].latency);
+            return latencies;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reflective access to the CST core classes of a running agent. The CLI is not compiled against
+ * CST and each agent may bring its own CST version, so only the public Mind/Codelet API is used.
+ */
+public class MindAccess {
+
+    private MindAccess() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> getCodelets(Object mind) {
+        Object codeRack = call(mind, "getCodeRack");
+        return new ArrayList<>((List<Object>) call(codeRack, "getAllCodelets"));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Object> getMemories(Object mind) {
+        Object rawMemory = call(mind, "getRawMemory");
+        return new ArrayList<>((List<Object>) call(rawMemory, "getAllMemoryObjects"));
+    }
+
+    /**
+     * Stops {@code old}, moves its memories, time step and group membership to {@code replacement}
+     * and starts the replacement. Memory objects are shared, so their content survives the swap.
+     * Agents that run their codelets on a CodeletExecutor hand the replacement to it instead of
+     * starting its CST timer. A codelet triggered on change has no timer: the replacement is made an
+     * observer and takes the place of the old instance among the observers of each input.
+     */
+    @SuppressWarnings("unchecked")
+    public static void replaceCodelet(Object mind, Object old, Object replacement) {
+        Object executor = getCodeletExecutor(mind);
+        Object codeRack = call(mind, "getCodeRack");
+        List<Object> inputs = new ArrayList<>((List<Object>) call(old, "getInputs"));
+        boolean observer = Boolean.TRUE.equals(call(old, "getIsMemoryObserver"));
+        // Unregistered first, an update arriving during the swap must not run the old proc() again
+        if (observer) {
+            for (Object input : inputs)
+                call(input, "removeMemoryObserver", old);
+        }
+        call(codeRack, "destroyCodelet", old);
+        if (executor != null)
+            call(executor, "cancel", old);
+
+        call(replacement, "setInputs", inputs);
+        call(replacement, "setOutputs", new ArrayList<>((List<Object>) call(old, "getOutputs")));
+        call(replacement, "setBroadcast", new ArrayList<>((List<Object>) call(old, "getBroadcast")));
+        call(replacement, "setTimeStep", call(old, "getTimeStep"));
+        call(replacement, "setName", call(old, "getName"));
+        call(replacement, "setIsMemoryObserver", observer);
+
+        Object groups = call(mind, "getCodeletGroups");
+        if (groups instanceof Map) {
+            for (Object members : ((Map<Object, Object>) groups).values()) {
+                if (!(members instanceof List))
+                    continue;
+                List<Object> list = (List<Object>) members;
+                int index = list.indexOf(old);
+                if (index >= 0)
+                    list.set(index, replacement);
+            }
+        }
+
+        call(codeRack, "insertCodelet", replacement);
+        if (observer) {
+            for (Object input : inputs)
+                call(input, "addMemoryObserver", replacement);
+        } else if (executor != null) {
+            call(executor, "submit", replacement);
+        } else {
+            call(replacement, "start");
+        }
+    }
+
+    /**
+     * The executor or tick scheduler running the codelets, for agents exposing a public {@code getCodeletExecutor()}, or null.
+     */
+    public static Object getCodeletExecutor(Object mind) {
+        for (Method method : mind.getClass().getMethods()) {
+            if (method.getName().equals("getCodeletExecutor") && method.getParameterCount() == 0)
+                return call(mind, "getCodeletExecutor");
+        }
+        return null;
+    }
+
+    /**
+     * Whether the codelets run on virtual threads, for agents whose executor exposes a public
+     * {@code usesVirtualThreads()}
+     */
+    public static boolean runsOnVirtualThreads(Object mind) {
+        Object executor = getCodeletExecutor(mind);
+        if (executor == null)
+            return false;
+        for (Method method : executor.getClass().getMethods()) {
+            if (method.getName().equals("usesVirtualThreads") && method.getParameterCount() == 0)
+                return Boolean.TRUE.equals(call(executor, "usesVirtualThreads"));
+        }
+        return false;
+    }
+
+    /**
+     * Codelet cycles run so far, for agents exposing a public {@code getCycleCount()}, or -1.
+     */
+    public static long getCycleCount(Object mind) {
+        for (Method method : mind.getClass().getMethods()) {
+            if (method.getName().equals("getCycleCount") && method.getParameterCount() == 0
+                    && Number.class.isAssignableFrom(boxed(method.getReturnType())))
+                return ((Number) call(mind, "getCycleCount")).longValue();
+        }
+        return -1;
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (type == long.class)
+            return Long.class;
+        if (type == int.class)
+            return Integer.class;
+        return type;
+    }
+
+    public static void shutDown(Object mind) {
+        call(mind, "shutDown");
+    }
+
+    static Object call(Object target, String name, Object... args) {
+        Method method = findMethod(target.getClass(), name, args.length);
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access " + name + " of " + target.getClass().getName(), e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(name + " failed on " + target.getClass().getName(), e.getCause());
+        }
+    }
+
+    static Method findMethod(Class<?> type, String name, int parameters) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == parameters)
+                return method;
+        }
+        throw new IllegalStateException(type.getName() + " has no method " + name
+                + ", the agent uses a CST version not supported by this command");
+    }
+}
@@ -0,0 +1,290 @@
+package br.unicamp.cst.cli.runtime;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads the memory access traces written by the MemoryTrace class generated with
+ * {@code cst init --trace}. The layout is described there, both must change together.
+ * <p>
+ * Slots that wrapped around lost their oldest records while the others kept theirs, so only the
+ * time window every slot still covers is analyzed.
+ */
+public class TraceFile {
+
+    private static final byte[] MAGIC = "CSTTRACE".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 128;
+    private static final int SLOT_HEADER_SIZE = 64;
+    private static final byte CODELET_NAME = 0;
+    private static final byte READ = 1;
+    private static final byte WRITE = 2;
+
+    private final long startMillis;
+    private final int unrecordedThreads;
+    private final Map<Integer, String> codeletNames = new HashMap<>();
+    private final Map<Integer, String> memoryNames = new HashMap<>();
+    private final List<String> threads = new ArrayList<>();
+    private final List<Access> accesses = new ArrayList<>();
+    private long overwritten;
+    private long windowStart;
+
+    private TraceFile(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IOException("Not a CST memory trace");
+        int version = buffer.getInt(8);
+        if (version != VERSION)
+            throw new IOException("Unsupported trace version " + version);
+        int slotCount = buffer.getInt(12);
+        int slotRecords = buffer.getInt(16);
+        int recordSize = buffer.getInt(20);
+        startMillis = buffer.getLong(24);
+        int namesSize = buffer.getInt(32);
+        int namesUsed = buffer.getInt(36);
+        unrecordedThreads = buffer.getInt(40);
+        long slotSize = SLOT_HEADER_SIZE + (long) slotRecords * recordSize;
+        if (slotRecords <= 0 || recordSize < 13 || namesUsed > namesSize
+                || HEADER_SIZE + namesSize + slotCount * slotSize > buffer.capacity())
+            throw new IOException("Trace header is malformed");
+
+        readNames(buffer, namesUsed);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = (int) (HEADER_SIZE + namesSize + slot * slotSize);
+            long written = buffer.getLong(offset);
+            if (written == 0)
+                continue;
+            byte[] threadName = new byte[Math.min(buffer.getInt(offset + 8), SLOT_HEADER_SIZE - 12)];
+            buffer.get(offset + 12, threadName);
+            threads.add(new String(threadName, StandardCharsets.UTF_8));
+
+            long kept = Math.min(written, slotRecords);
+            overwritten += written - kept;
+            List<Access> slotAccesses = new ArrayList<>();
+            for (long i = written - kept; i < written; i++) {
+                int at = (int) (offset + SLOT_HEADER_SIZE + (i % slotRecords) * recordSize);
+                slotAccesses.add(new Access(buffer.getLong(at), buffer.getShort(at + 8) & 0xFFFF,
+                        buffer.getShort(at + 10) & 0xFFFF, buffer.get(at + 12)));
+            }
+            if (written > kept && !slotAccesses.isEmpty())
+                windowStart = Math.max(windowStart, slotAccesses.get(0).nanos);
+            accesses.addAll(slotAccesses);
+        }
+        int beforeWindow = accesses.size();
+        accesses.removeIf(a -> a.nanos < windowStart);
+        overwritten += beforeWindow - accesses.size();
+        accesses.sort(Comparator.comparingLong(a -> a.nanos));
+    }
+
+    public static TraceFile read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Not a CST memory trace");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new TraceFile(buffer);
+        }
+    }
+
+    private void readNames(ByteBuffer buffer, int namesUsed) {
+        int at = HEADER_SIZE;
+        while (at + 5 <= HEADER_SIZE + namesUsed) {
+            byte kind = buffer.get(at);
+            int id = buffer.getShort(at + 1) & 0xFFFF;
+            byte[] name = new byte[buffer.getShort(at + 3) & 0xFFFF];
+            buffer.get(at + 5, name);
+            (kind == CODELET_NAME ? codeletNames : memoryNames).put(id, new String(name, StandardCharsets.UTF_8));
+            at += 5 + name.length;
+        }
+    }
+
+    /**
+     * Wall clock time the trace was opened, in milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public List<String> getThreads() {
+        return threads;
+    }
+
+    /**
+     * Threads that accessed memories after every slot was taken, their accesses are missing
+     */
+    public int getUnrecordedThreads() {
+        return unrecordedThreads;
+    }
+
+    /**
+     * Records lost because their slot wrapped around, plus the ones dropped to align the slots
+     */
+    public long getOverwritten() {
+        return overwritten;
+    }
+
+    /**
+     * Accesses in the analyzed window, ordered by time
+     */
+    public List<Access> getAccesses() {
+        return accesses;
+    }
+
+    public String codeletName(int id) {
+        return codeletNames.getOrDefault(id, "#" + id);
+    }
+
+    public String memoryName(int id) {
+        return memoryNames.getOrDefault(id, "#" + id);
+    }
+
+    /**
+     * Time covered by the analyzed accesses, in nanoseconds
+     */
+    public long getSpanNanos() {
+        return accesses.isEmpty() ? 0 : accesses.get(accesses.size() - 1).nanos - accesses.get(0).nanos;
+    }
+
+    /**
+     * Statistics of every traced memory, ordered by name.
+     * <ul>
+     *     <li>latency: time from a write until each codelet first reads the new value</li>
+     *     <li>staleness: age of the value seen by every read</li>
+     *     <li>unread writes: values overwritten before any codelet read them</li>
+     * </ul>
+     * Reads before the first write of a memory have no known age and are only counted.
+     */
+    public List<MemoryStatistics> memoryStatistics() {
+        Map<Integer, MemoryStatistics> statistics = new HashMap<>();
+        Map<Integer, Long> lastWrite = new HashMap<>();
+        Map<Integer, Set<Integer>> readers = new HashMap<>();
+        for (Access access : accesses) {
+            MemoryStatistics memory = statistics.computeIfAbsent(access.memory, id -> new MemoryStatistics(memoryName(id)));
+            Set<Integer> seenBy = readers.computeIfAbsent(access.memory, id -> new HashSet<>());
+            Long written = lastWrite.get(access.memory);
+            if (access.kind == WRITE) {
+                if (written != null && seenBy.isEmpty())
+                    memory.unreadWrites++;
+                memory.writes++;
+                lastWrite.put(access.memory, access.nanos);
+                seenBy.clear();
+            } else if (access.kind == READ) {
+                memory.reads++;
+                if (written == null)
+                    continue;
+                memory.staleness.add(access.nanos - written);
+                if (seenBy.add(access.codelet))
+                    memory.latency.add(access.nanos - written);
+            }
+        }
+        long span = getSpanNanos();
+        List<MemoryStatistics> result = new ArrayList<>(statistics.values());
+        for (MemoryStatistics memory : result)
+            memory.spanNanos = span;
+        result.sort(Comparator.comparing(m -> m.name));
+        return result;
+    }
+
+    public static class Access {
+        private final long nanos;
+        private final int codelet;
+        private final int memory;
+        private final byte kind;
+
+        Access(long nanos, int codelet, int memory, byte kind) {
+            this.nanos = nanos;
+            this.codelet = codelet;
+            this.memory = memory;
+            this.kind = kind;
+        }
+
+        /**
+         * Time since the trace was opened
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getCodelet() {
+            return codelet;
+        }
+
+        public int getMemory() {
+            return memory;
+        }
+
+        public boolean isWrite() {
+            return kind == WRITE;
+        }
+    }
+
+    public static class MemoryStatistics {
+        private final String name;
+        private final List<Long> latency = new ArrayList<>();
+        private final List<Long> staleness = new ArrayList<>();
+        private long reads;
+        private long writes;
+        private long unreadWrites;
+        private long spanNanos;
+
+        MemoryStatistics(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getUnreadWrites() {
+            return unreadWrites;
+        }
+
+        public double getReadsPerSecond() {
+            return perSecond(reads);
+        }
+
+        public double getWritesPerSecond() {
+            return perSecond(writes);
+        }
+
+        private double perSecond(long count) {
+            return spanNanos == 0 ? 0 : count * 1e9 / spanNanos;
+        }
+
+        /**
+         * @return the latency in nanoseconds below which the given fraction of samples fall, or -1 without samples
+         */
+        public long latencyPercentile(double fraction) {
+            return percentile(latency, fraction);
+        }
+
+        public long stalenessPercentile(double fraction) {
+            return percentile(staleness, fraction);
+        }
+
+        private static long percentile(List<Long> samples, double fraction) {
+            if (samples.isEmpty())
+                return -1;
+            List<Long> sorted = new ArrayList<>(samples);
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(fraction * sorted.size());
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+        }
+    }
+}
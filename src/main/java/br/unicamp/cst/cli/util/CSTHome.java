@@ -0,0 +1,20 @@
+package br.unicamp.cst.cli.util;
+
+import java.nio.file.Path;
+
+public class CSTHome {
+
+    // Allows tests and CI machines to move the CLI state away from the user home
+    public static final String HOME_PROPERTY = "cst.home";
+
+    public static Path get() {
+        String home = System.getProperty(HOME_PROPERTY);
+        if (home != null && !home.isBlank())
+            return Path.of(home);
+        return Path.of(System.getProperty("user.home"), ".cst");
+    }
+
+    public static Path cacheDir() {
+        return get().resolve("cache");
+    }
+}
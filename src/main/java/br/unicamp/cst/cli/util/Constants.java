@@ -1,11 +1,43 @@
 package br.unicamp.cst.cli.util;
 
+import java.util.List;
+
 public class Constants {
 
+    public static final String CLI_VERSION = "0.2";
+
     public static final String MEMORY_OBJECT_TYPE = "MemoryObject";
     public static final String MEMORY_CONTAINER_TYPE = "MemoryContainer";
     public static final String MEMORY_BASE_TYPE = "Memory";
+    public static final String CODELET_BASE_TYPE = "Codelet";
     public static final String CREATE_MEMORY_OBJECT_FUNCTION = "createMemoryObject";
     public static final String CREATE_MEMORY_CONTAINER_FUNCTION = "createMemoryContainer";
     public static final String REGISTER_MEMORY_FUNCTION = "registerMemory";
+    public static final String CREATE_CODELET_GROUP_FUNCTION = "createCodeletGroup";
+    public static final String CREATE_MEMORY_GROUP_FUNCTION = "createMemoryGroup";
+    public static final String INSERT_CODELET_FUNCTION = "insertCodelet";
+    public static final String REGISTER_CODELET_FUNCTION = "registerCodelet";
+    public static final String METRICS_CLASS = "AgentMetrics";
+    public static final String METRICS_REGISTER_FUNCTION = "register";
+    public static final String TRACE_CLASS = "MemoryTrace";
+    public static final String TRACE_OPEN_FUNCTION = "open";
+    public static final String CAPTURE_CLASS = "InputCapture";
+    public static final String CAPTURE_START_FUNCTION = "start";
+    public static final String CHECKPOINT_CLASS = "Checkpoint";
+    public static final String CHECKPOINT_RESTORE_FUNCTION = "restore";
+    public static final String EXECUTOR_CLASS = "CodeletExecutor";
+    public static final String EXECUTOR_VIRTUAL_FUNCTION = "virtualThreads";
+    public static final String EXECUTOR_POOL_FUNCTION = "pool";
+    public static final String TICK_SCHEDULER_CLASS = "TickScheduler";
+    public static final String TICK_SCHEDULER_FUNCTION = "start";
+    public static final String FUSED_CODELET_CLASS = "FusedCodelet";
+    public static final String SINGLE_WRITER_MEMORY_CLASS = "SingleWriterMemory";
+    public static final String STRIPED_COUNTER_CLASS = "StripedCounter";
+    public static final String RING_BUFFER_MEMORY_CLASS = "RingBufferMemory";
+    public static final String MUTABLE_NUMBER_CLASS = "MutableNumber";
+    public static final String CREATE_MEMORY_FUNCTION = "create";
+    public static final String OBSERVER_FLAG_FUNCTION = "setIsMemoryObserver";
+    public static final String ADD_OBSERVER_FUNCTION = "addMemoryObserver";
+    public static final List<String> WIRING_FUNCTIONS = List.of("addInput", "addOutput", "addBroadcast",
+            OBSERVER_FLAG_FUNCTION, ADD_OBSERVER_FUNCTION);
 }
@@ -0,0 +1,84 @@
+package br.unicamp.cst.cli.util;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * File based Maven repository under {@code ~/.cst/repo} holding CST core releases, so generated
+ * projects can be built without reaching jitpack.
+ */
+public class LocalRepository {
+
+    public static final String CST_GROUP = "com.github.CST-Group";
+    public static final String CST_ARTIFACT = "cst";
+
+    private final Path root;
+
+    public LocalRepository(Path root) {
+        this.root = root;
+    }
+
+    public static LocalRepository getInstance() {
+        return new LocalRepository(CSTHome.get().resolve("repo"));
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public boolean contains(String version) {
+        return Files.isRegularFile(jarPath(version)) && Files.isRegularFile(pomPath(version));
+    }
+
+    public List<String> listVersions() throws IOException {
+        List<String> versions = new ArrayList<>();
+        Path artifactDir = artifactDir();
+        if (!Files.isDirectory(artifactDir))
+            return versions;
+        try (Stream<Path> dirs = Files.list(artifactDir)) {
+            dirs.map(d -> d.getFileName().toString()).filter(this::contains).sorted().forEach(versions::add);
+        }
+        return versions;
+    }
+
+    /**
+     * Installs a CST core jar and its pom under the given version. The pom is required, Gradle
+     * takes the dependencies of CST from it and a project built offline would miss them otherwise.
+     */
+    public void install(String version, Path jar, Path pom) throws IOException {
+        Files.createDirectories(artifactDir().resolve(version));
+        // The pom goes last, contains() only reports a version once both files are in place
+        place(jarPath(version), target -> Files.copy(jar, target, StandardCopyOption.REPLACE_EXISTING));
+        place(pomPath(version), target -> Files.copy(pom, target, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    private Path artifactDir() {
+        return root.resolve(CST_GROUP.replace('.', '/')).resolve(CST_ARTIFACT);
+    }
+
+    private Path jarPath(String version) {
+        return artifactDir().resolve(version).resolve(CST_ARTIFACT + "-" + version + ".jar");
+    }
+
+    private Path pomPath(String version) {
+        return artifactDir().resolve(version).resolve(CST_ARTIFACT + "-" + version + ".pom");
+    }
+
+    // Gradle may be reading the repository while it is seeded, files only appear once complete
+    private static void place(Path target, FileProducer producer) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            producer.write(temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private interface FileProducer {
+        void write(Path target) throws IOException;
+    }
+}
@@ -0,0 +1,119 @@
+package br.unicamp.cst.cli.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.*;
+
+/**
+ * Collects every file produced by a command and writes them all at the end.
+ * <p>
+ * Each file goes to a temporary sibling first and is then renamed over the target, so an
+ * interrupted run never leaves half written sources behind. Files whose bytes are already on
+ * disk are not touched at all, which keeps their timestamps and avoids needless recompilation.
+ */
+public class OutputSink {
+
+    private final Map<Path, byte[]> pending = new LinkedHashMap<>();
+    private final boolean fsync;
+    private int written;
+    private int skipped;
+
+    public OutputSink() {
+        this(false);
+    }
+
+    /**
+     * @param fsync forces written files and the directories holding them to disk when flushing
+     */
+    public OutputSink(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public void write(Path file, String content) {
+        write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void write(Path file, byte[] content) {
+        pending.put(file.toAbsolutePath().normalize(), content);
+    }
+
+    public void flush() throws IOException {
+        Set<Path> directories = new LinkedHashSet<>();
+        Iterator<Map.Entry<Path, byte[]>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, byte[]> entry = entries.next();
+            if (isUpToDate(entry.getKey(), entry.getValue())) {
+                skipped++;
+            } else {
+                replace(entry.getKey(), entry.getValue());
+                directories.add(entry.getKey().getParent());
+                written++;
+            }
+            entries.remove();
+        }
+        if (fsync) {
+            for (Path directory : directories)
+                syncDirectory(directory);
+        }
+    }
+
+    public int getWritten() {
+        return written;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    private static boolean isUpToDate(Path file, byte[] content) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) != content.length)
+            return false;
+        return Arrays.equals(Files.readAllBytes(file), content);
+    }
+
+    private void replace(Path file, byte[] content) throws IOException {
+        Path directory = file.getParent();
+        Files.createDirectories(directory);
+        Path temp = directory.resolve("." + file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                if (fsync)
+                    channel.force(true);
+            }
+            copyPermissions(file, temp);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from))
+            return;
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(from);
+            Files.setPosixFilePermissions(to, permissions);
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, the new file keeps the default permissions
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms (e.g. Windows) cannot open directories, the file data itself is already synced
+        }
+    }
+}
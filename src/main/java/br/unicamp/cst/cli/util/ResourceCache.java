@@ -0,0 +1,87 @@
+package br.unicamp.cst.cli.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Resources bundled with the CLI (e.g. the Gradle wrapper), extracted once per CLI version
+ * under {@code ~/.cst/cache/<version>/} and shared by every project created afterwards.
+ */
+public class ResourceCache {
+
+    private static final Set<PosixFilePermission> READ_ONLY = PosixFilePermissions.fromString("r--r--r--");
+
+    private final Path root;
+
+    public ResourceCache(Path root) {
+        this.root = root;
+    }
+
+    public static ResourceCache getInstance() {
+        return new ResourceCache(CSTHome.cacheDir().resolve(Constants.CLI_VERSION));
+    }
+
+    /**
+     * Returns the cached copy of a classpath resource, extracting it on first use.
+     */
+    public Path get(String resource) throws IOException {
+        Path cached = root.resolve(resource.startsWith("/") ? resource.substring(1) : resource);
+        if (Files.isRegularFile(cached))
+            return cached;
+
+        Files.createDirectories(cached.getParent());
+        Path temp = Files.createTempFile(cached.getParent(), cached.getFileName().toString(), ".tmp");
+        try (InputStream in = ResourceCache.class.getResourceAsStream(resource)) {
+            if (in == null)
+                throw new NoSuchFileException(resource, null, "resource not bundled with the CLI");
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            // Cached files may be hard linked into projects, nobody should edit them in place
+            setPermissions(temp, READ_ONLY);
+            // Parallel inits may extract the same resource, both copies are identical
+            Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return cached;
+    }
+
+    /**
+     * Places a read only resource in a project as a hard link to the cached file, falling back to
+     * a copy when the file system does not support links between both locations.
+     */
+    public void link(String resource, Path target) throws IOException {
+        Path cached = get(resource);
+        if (Files.exists(target) && Files.isSameFile(cached, target))
+            return;
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, cached);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(cached, target);
+        }
+    }
+
+    /**
+     * Places a private, writable copy of a resource in a project.
+     */
+    public void copy(String resource, Path target, Set<PosixFilePermission> permissions) throws IOException {
+        Path cached = get(resource);
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Files.deleteIfExists(target);
+        Files.copy(cached, target);
+        setPermissions(target, permissions);
+    }
+
+    private static void setPermissions(Path file, Set<PosixFilePermission> permissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, permissions);
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, permissions are left to the platform defaults
+        }
+    }
+}
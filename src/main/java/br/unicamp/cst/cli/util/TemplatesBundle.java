@@ -21,6 +21,26 @@ public class TemplatesBundle {
         loadTemplate("settings", TemplatesBundle.class.getResourceAsStream("/templates/settings.gradle"));
         loadTemplate("build", TemplatesBundle.class.getResourceAsStream("/templates/build.gradle"));
         loadTemplate("MainTemplate", TemplatesBundle.class.getResourceAsStream("/templates/MainTemplate"));
+        loadTemplate("AgentMetricsTemplate", TemplatesBundle.class.getResourceAsStream("/templates/AgentMetricsTemplate"));
+        loadTemplate("MeasuredCodeletTemplate", TemplatesBundle.class.getResourceAsStream("/templates/MeasuredCodeletTemplate"));
+        loadTemplate("MetricsOverheadTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/MetricsOverheadTestTemplate"));
+        loadTemplate("MemoryTraceTemplate", TemplatesBundle.class.getResourceAsStream("/templates/MemoryTraceTemplate"));
+        loadTemplate("TraceOverheadTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/TraceOverheadTestTemplate"));
+        loadTemplate("InputCaptureTemplate", TemplatesBundle.class.getResourceAsStream("/templates/InputCaptureTemplate"));
+        loadTemplate("CheckpointTemplate", TemplatesBundle.class.getResourceAsStream("/templates/CheckpointTemplate"));
+        loadTemplate("CheckpointTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/CheckpointTestTemplate"));
+        loadTemplate("CodeletExecutorTemplate", TemplatesBundle.class.getResourceAsStream("/templates/CodeletExecutorTemplate"));
+        loadTemplate("ExecutionBenchmarkTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/ExecutionBenchmarkTestTemplate"));
+        loadTemplate("TickSchedulerTemplate", TemplatesBundle.class.getResourceAsStream("/templates/TickSchedulerTemplate"));
+        loadTemplate("TickSchedulerTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/TickSchedulerTestTemplate"));
+        loadTemplate("FusedCodeletTemplate", TemplatesBundle.class.getResourceAsStream("/templates/FusedCodeletTemplate"));
+        loadTemplate("SingleWriterMemoryTemplate", TemplatesBundle.class.getResourceAsStream("/templates/SingleWriterMemoryTemplate"));
+        loadTemplate("StripedCounterTemplate", TemplatesBundle.class.getResourceAsStream("/templates/StripedCounterTemplate"));
+        loadTemplate("MutableNumberTemplate", TemplatesBundle.class.getResourceAsStream("/templates/MutableNumberTemplate"));
+        loadTemplate("MemoryReadBenchmarkTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/MemoryReadBenchmarkTestTemplate"));
+        loadTemplate("RingBufferMemoryTemplate", TemplatesBundle.class.getResourceAsStream("/templates/RingBufferMemoryTemplate"));
+        loadTemplate("RingBufferMemoryTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/RingBufferMemoryTestTemplate"));
+        loadTemplate("SkeletonOverheadTestTemplate", TemplatesBundle.class.getResourceAsStream("/templates/SkeletonOverheadTestTemplate"));
     }
 
     public static TemplatesBundle getInstance(){
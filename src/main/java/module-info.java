@@ -4,6 +4,11 @@ module br.unicamp.cst.cli {
     requires java.logging;
     requires com.github.javaparser.core;
     requires java.desktop;
+    requires java.compiler;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.attach;
+    requires java.instrument;
 
     exports br.unicamp.cst.cli;
     opens br.unicamp.cst.cli to info.picocli;
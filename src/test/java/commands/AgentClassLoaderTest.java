@@ -0,0 +1,71 @@
+package commands;
+
+import br.unicamp.cst.cli.runtime.AgentClassLoader;
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AgentClassLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String versioned(String className, int version) {
+        int dot = className.lastIndexOf('.');
+        return """
+                package %s;
+
+                public class %s {
+                    public static int version() {
+                        return %d;
+                    }
+                }
+                """.formatted(className.substring(0, dot), className.substring(dot + 1), version);
+    }
+
+    @Test
+    public void testGroupOf() {
+        AgentClasspath classpath = new AgentClasspath(tempDir, "test.agent", List.of(), tempDir.resolve("classes"));
+        AgentClassLoader loader = new AgentClassLoader("test", classpath, ClassLoader.getPlatformClassLoader());
+
+        assertEquals("relay", loader.groupOf("test.agent.codelets.relay.Relay"));
+        assertEquals("relay", loader.groupOf("test.agent.codelets.relay.Relay$State"));
+        assertEquals("relay", loader.groupOf("test.agent.codelets.relay.util.Buffer"));
+        // Classes outside a group are shared by the whole agent and never reloaded
+        assertNull(loader.groupOf("test.agent.codelets.Relay"));
+        assertNull(loader.groupOf("test.agent.AgentMind"));
+        assertNull(loader.groupOf("test.agentx.codelets.relay.Relay"));
+        assertNull(loader.groupOf("br.unicamp.cst.core.entities.Codelet"));
+    }
+
+    @Test
+    public void testReloadGroupReplacesOnlyThatGroup() throws Exception {
+        AgentClasspath classpath = TestAgents.compile(tempDir, Map.of(
+                "test.agent.codelets.relay.Relay", versioned("test.agent.codelets.relay.Relay", 1),
+                "test.agent.codelets.sensor.Sensor", versioned("test.agent.codelets.sensor.Sensor", 1),
+                "test.agent.Shared", versioned("test.agent.Shared", 1)));
+        AgentClassLoader loader = new AgentClassLoader("test", classpath, ClassLoader.getPlatformClassLoader());
+        Class<?> relay = loader.loadClass("test.agent.codelets.relay.Relay");
+        Class<?> sensor = loader.loadClass("test.agent.codelets.sensor.Sensor");
+        Class<?> shared = loader.loadClass("test.agent.Shared");
+        assertNotSame(loader, relay.getClassLoader());
+        assertSame(loader, shared.getClassLoader());
+
+        TestAgents.compile(tempDir, Map.of("test.agent.codelets.relay.Relay", versioned("test.agent.codelets.relay.Relay", 2)));
+        ClassLoader generation = loader.reloadGroup("relay");
+
+        Class<?> reloaded = loader.loadClass("test.agent.codelets.relay.Relay");
+        assertNotSame(relay, reloaded);
+        assertSame(generation, reloaded.getClassLoader());
+        assertEquals(1, relay.getMethod("version").invoke(null));
+        assertEquals(2, reloaded.getMethod("version").invoke(null));
+        assertSame(sensor, loader.loadClass("test.agent.codelets.sensor.Sensor"));
+        assertSame(shared, loader.loadClass("test.agent.Shared"));
+    }
+}
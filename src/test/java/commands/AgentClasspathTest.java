@@ -0,0 +1,39 @@
+package commands;
+
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AgentClasspathTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testResolveLeavesProjectJarOut() throws IOException {
+        Path lib = Files.createDirectories(tempDir.resolve("build/install/agent/lib"));
+        for (String file : List.of("agent.jar", "agent-1.0.jar", "cst-1.4.1.jar", "snakeyaml-2.0.jar", "README.txt"))
+            Files.createFile(lib.resolve(file));
+
+        AgentClasspath classpath = AgentClasspath.resolve(tempDir, "test.agent");
+        assertEquals(List.of(lib.resolve("cst-1.4.1.jar"), lib.resolve("snakeyaml-2.0.jar")), classpath.getLibraries());
+        assertEquals(tempDir.resolve("build/classes/java/main"), classpath.getClassesDir());
+        assertTrue(classpath.getClasspathString().startsWith(classpath.getClassesDir().toString()));
+        assertEquals(tempDir.resolve("src/main/java/test/agent/codelets"), classpath.getCodeletsSourceDir());
+    }
+
+    @Test
+    public void testResolveWithoutDistribution() throws IOException {
+        Files.createDirectories(tempDir.resolve("build/install/agent"));
+
+        IOException e = assertThrows(IOException.class, () -> AgentClasspath.resolve(tempDir, "test.agent"));
+        assertTrue(e.getMessage().startsWith("No distribution found"));
+    }
+}
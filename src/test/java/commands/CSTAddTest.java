@@ -0,0 +1,234 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.data.MemoryConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTAddTest {
+
+    @TempDir
+    Path tempDir;
+
+    @TempDir
+    Path cstHome;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final InputStream originalIn = System.in;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    String yamlConfig = """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: [MemThree]
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: container
+                  - content: null
+                    group: test
+                    name: MemThree
+                    type: object""";
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.setIn(originalIn);
+        System.clearProperty("cst.home");
+    }
+
+    private String readFileFromTmpDir(String file) throws IOException {
+        return Files.lines(new File(tempDir.toString(), file).toPath()).collect(Collectors.joining("\n"));
+    }
+
+    private void initProject() {
+        File configFile = new File(tempDir.toString(), "test_config.yaml");
+        try {
+            FileWriter writer = new FileWriter(configFile);
+            writer.write(yamlConfig);
+            writer.close();
+        } catch (IOException e) {
+            fail("Failed to create mock config file");
+        }
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+    }
+
+    @Test
+    public void testAddMemory() throws IOException {
+        initProject();
+        String codeletBefore = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java");
+
+        exitCode = new CommandLine(new Main()).execute("add", "memory", "--name", "MemFour", "--group", "extra", "--type", "container");
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("createMemoryGroup(\"extra\");"));
+        assertTrue(agentMind.contains("Memory memFour;"));
+        assertTrue(agentMind.contains("memFour = createMemoryContainer(\"MemFour\");"));
+        assertTrue(agentMind.contains("registerMemory(memFour, \"extra\");"));
+        assertEquals(codeletBefore, readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java"));
+    }
+
+    @Test
+    public void testAddCounterMemory() throws IOException {
+        initProject();
+
+        exitCode = new CommandLine(new Main()).execute("add", "memory", "--name", "Events", "--group", "test", "--type", "counter");
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.memory.StripedCounter;"));
+        assertTrue(agentMind.contains("events = StripedCounter.create(this, \"Events\");"));
+        assertTrue(new File(tempDir.toString(), "src/main/java/my/project/memory/StripedCounter.java").exists());
+    }
+
+    @Test
+    public void testAddQueueMemory() throws IOException {
+        initProject();
+
+        exitCode = new CommandLine(new Main()).execute("add", "memory", "--name", "Frames", "--group", "test", "--type", "queue",
+                "--capacity", "64", "--overflow", "drop-newest");
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.memory.RingBufferMemory;"));
+        assertTrue(agentMind.contains("frames = RingBufferMemory.create(this, \"Frames\", 64, RingBufferMemory.Overflow.DROP_NEWEST, false);"));
+        assertTrue(new File(tempDir.toString(), "src/main/java/my/project/memory/RingBufferMemory.java").exists());
+    }
+
+    @Test
+    public void testAddCapacityOnObjectMemory() throws IOException {
+        initProject();
+
+        exitCode = new CommandLine(new Main()).execute("add", "memory", "--name", "Frames", "--group", "test", "--capacity", "64");
+        assertEquals(2, exitCode);
+    }
+
+    @Test
+    public void testAddMemoryWithUnknownType() throws IOException {
+        initProject();
+        out.reset();
+
+        exitCode = new CommandLine(new Main()).execute("add", "memory", "--name", "Frames", "--group", "test", "--type", "stack");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("MEMORY[Frames]: " + MemoryConfig.TYPE_PROBLEM));
+        assertFalse(readFileFromTmpDir("src/main/java/my/project/AgentMind.java").contains("frames"));
+    }
+
+    @Test
+    public void testAddCodeletKeepsHandEdits() throws IOException {
+        initProject();
+        File agentMindFile = new File(tempDir.toString(), "src/main/java/my/project/AgentMind.java");
+        String handEdited = readFileFromTmpDir("src/main/java/my/project/AgentMind.java")
+                .replace("start();", "// hand written comment\n        start();");
+        FileWriter writer = new FileWriter(agentMindFile);
+        writer.write(handEdited);
+        writer.close();
+
+        exitCode = new CommandLine(new Main()).execute("add", "codelet", "-n", "NewCodelet", "-g", "motor",
+                "--in", "MemOne,MemTwo", "--out", "MemThree");
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("// hand written comment"));
+        assertTrue(agentMind.contains("import my.project.codelets.motor.NewCodelet;"));
+        assertTrue(agentMind.contains("createCodeletGroup(\"motor\");"));
+        assertTrue(agentMind.contains("Codelet newCodelet = new NewCodelet();"));
+        assertTrue(agentMind.contains("newCodelet.addInput(memTwo);"));
+        assertTrue(agentMind.contains("registerCodelet(newCodelet, \"motor\");"));
+        assertTrue(new File(tempDir.toString(), "src/main/java/my/project/codelets/motor/NewCodelet.java").exists());
+
+        AgentConfig agentConfig = ConfigParser.parseProjectToConfig();
+        CodeletConfig newCodelet = agentConfig.findCodelet("NewCodelet").orElseThrow();
+        assertEquals("motor", newCodelet.getGroup());
+        assertEquals(List.of("MemOne", "MemTwo"), newCodelet.getIn());
+        assertEquals(List.of("MemThree"), newCodelet.getOut());
+    }
+
+    @Test
+    public void testAddCodeletWithCachedSkeleton() throws IOException {
+        initProject();
+
+        exitCode = new CommandLine(new Main()).execute("add", "codelet", "-n", "NewCodelet", "-g", "motor",
+                "--in", "MemOne", "--out", "MemTwo", "--skeleton", "cached");
+        assertEquals(0, exitCode);
+        String codelet = readFileFromTmpDir("src/main/java/my/project/codelets/motor/NewCodelet.java");
+        assertTrue(codelet.contains("if (memoriesResolved)"));
+        assertTrue(codelet.contains("private <T> T readMemOne()"));
+        assertTrue(codelet.contains("private void updateMemTwo(Object value)"));
+        assertFalse(codelet.contains("private void updateMemTwo(double value)"));
+        assertFalse(new File(tempDir.toString(), "src/main/java/my/project/memory/MutableNumber.java").exists());
+
+        exitCode = new CommandLine(new Main()).execute("add", "codelet", "-n", "NumberCodelet", "-g", "motor",
+                "--in", "MemOne", "--out", "MemTwo", "--skeleton", "cached", "--mutable-numbers");
+        assertEquals(0, exitCode);
+        codelet = readFileFromTmpDir("src/main/java/my/project/codelets/motor/NumberCodelet.java");
+        assertTrue(codelet.contains("private void updateMemTwo(double value)"));
+        assertTrue(new File(tempDir.toString(), "src/main/java/my/project/memory/MutableNumber.java").exists());
+
+        exitCode = new CommandLine(new Main()).execute("add", "codelet", "-n", "OtherCodelet", "-g", "motor", "--skeleton", "fast");
+        assertEquals(2, exitCode);
+        assertTrue(err.toString().contains("--skeleton must be 'plain' or 'cached'"));
+    }
+
+    @Test
+    public void testAddCodeletWithUnknownMemory() throws IOException {
+        initProject();
+        String agentMindBefore = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+
+        exitCode = new CommandLine(new Main()).execute("add", "codelet", "-n", "NewCodelet", "-g", "motor", "--in", "MemMissing");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("MemMissing"));
+        assertEquals(agentMindBefore, readFileFromTmpDir("src/main/java/my/project/AgentMind.java"));
+    }
+
+    @Test
+    public void testAddDuplicateCodelet() {
+        initProject();
+        exitCode = new CommandLine(new Main()).execute("add", "codelet", "-n", "TestCodelet", "-g", "test");
+        assertEquals(1, exitCode);
+    }
+}
@@ -0,0 +1,133 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @TempDir
+    Path cstHome;
+
+    // Stand-in for a downloaded CST release
+    @TempDir
+    Path releaseDir;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final InputStream originalIn = System.in;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.setIn(originalIn);
+        System.clearProperty("cst.home");
+    }
+
+    private Path createReleaseJar(String name) throws IOException {
+        Path jar = releaseDir.resolve(name);
+        try (JarOutputStream stream = new JarOutputStream(Files.newOutputStream(jar))) {
+            stream.putNextEntry(new ZipEntry("br/unicamp/cst/core/entities/Mind.class"));
+            stream.closeEntry();
+        }
+        return jar;
+    }
+
+    private Path createReleasePom(String name, String version) throws IOException {
+        return Files.writeString(releaseDir.resolve(name), "<project><version>" + version + "</version></project>");
+    }
+
+    private Path repositoryFile(String version, String extension) {
+        return cstHome.resolve("repo/com/github/CST-Group/cst/" + version + "/cst-" + version + extension);
+    }
+
+    @Test
+    public void testCacheJarWithVersion() throws IOException {
+        Path jar = createReleaseJar("core.jar");
+        Path pom = createReleasePom("release.pom", "1.4.1");
+        exitCode = new CommandLine(new Main()).execute("cache", jar.toString(), "--cst-version", "1.4.1", "--pom", pom.toString());
+        assertEquals(0, exitCode);
+
+        assertArrayEquals(Files.readAllBytes(jar), Files.readAllBytes(repositoryFile("1.4.1", ".jar")));
+        assertTrue(Files.readString(repositoryFile("1.4.1", ".pom")).contains("<version>1.4.1</version>"));
+
+        out.reset();
+        exitCode = new CommandLine(new Main()).execute("cache", "--list");
+        assertEquals(0, exitCode);
+        assertEquals("1.4.1\n", out.toString());
+    }
+
+    @Test
+    public void testCacheDirectoryInfersVersion() throws IOException {
+        createReleaseJar("cst-1.4.0.jar");
+        Files.writeString(releaseDir.resolve("cst-1.4.0.pom"), "<project/>");
+        exitCode = new CommandLine(new Main()).execute("cache", releaseDir.toString());
+        assertEquals(0, exitCode);
+
+        assertTrue(Files.exists(repositoryFile("1.4.0", ".jar")));
+        assertEquals("<project/>", Files.readString(repositoryFile("1.4.0", ".pom")));
+    }
+
+    @Test
+    public void testCacheJarWithoutPomFails() throws IOException {
+        Path jar = createReleaseJar("cst-1.4.1.jar");
+        exitCode = new CommandLine(new Main()).execute("cache", jar.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("No pom found at " + releaseDir.resolve("cst-1.4.1.pom")));
+        assertFalse(Files.exists(repositoryFile("1.4.1", ".jar")));
+    }
+
+    @Test
+    public void testOfflineInitUsesCachedVersion() throws IOException {
+        Path jar = createReleaseJar("cst-1.4.1.jar");
+        createReleasePom("cst-1.4.1.pom", "1.4.1");
+        exitCode = new CommandLine(new Main()).execute("cache", jar.toString());
+        assertEquals(0, exitCode);
+
+        exitCode = new CommandLine(new Main()).execute("init", "--offline", "--project-name", "Test", "--package", "test");
+        assertEquals(0, exitCode);
+        String buildGradle = Files.readString(tempDir.resolve("build.gradle"));
+        assertTrue(buildGradle.contains("maven { url '" + cstHome.resolve("repo").toUri() + "' }"));
+        assertTrue(buildGradle.indexOf(cstHome.resolve("repo").toUri().toString()) < buildGradle.indexOf("mavenCentral()"));
+    }
+
+    @Test
+    public void testOfflineInitFailsWithoutCachedVersion() {
+        exitCode = new CommandLine(new Main()).execute("init", "--offline", "--cst-version", "1.3.0", "--project-name", "Test", "--package", "test");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("CST 1.3.0 is not cached"));
+        assertFalse(Files.exists(tempDir.resolve("build.gradle")));
+    }
+}
@@ -0,0 +1,114 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTCompareTest {
+
+    @TempDir
+    Path tempDir;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams() {
+        out.reset();
+        System.setOut(new PrintStream(out));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(originalOut);
+    }
+
+    private void writeRecord(String id, String kind, double mean, double stddev) throws IOException {
+        Path directory = Files.createDirectories(tempDir.resolve(".cst/bench"));
+        Files.writeString(directory.resolve(id + ".yaml"), """
+                id: %s
+                kind: %s
+                time: '2026-01-01T00:00:00Z'
+                revision: unknown
+                configHash: abcdef
+                jvm: {version: '17'}
+                host: {name: test}
+                results:
+                  Perception:
+                    latency: {unit: ns, better: lower, count: 1000, mean: %s, stddev: %s, p50: %s, p99: %s}
+                """.formatted(id, kind, mean, stddev, mean, 2 * mean));
+    }
+
+    @Test
+    public void testCompareRegression() throws IOException {
+        writeRecord("20260101-000000-replay", "replay", 1_000_000, 100_000);
+        writeRecord("20260101-000100-replay", "replay", 1_500_000, 100_000);
+
+        exitCode = new CommandLine(new Main()).execute("compare", "latest~1", "latest");
+        assertEquals(0, exitCode);
+        assertTrue(out.toString().contains("regression"));
+
+        exitCode = new CommandLine(new Main()).execute("compare", "--fail-on-regression", "20260101-0000", "20260101-0001");
+        assertEquals(1, exitCode);
+    }
+
+    @Test
+    public void testCompareNoChange() throws IOException {
+        writeRecord("20260101-000000-replay", "replay", 1_000_000, 100_000);
+        writeRecord("20260101-000100-replay", "replay", 1_001_000, 100_000);
+
+        exitCode = new CommandLine(new Main()).execute("compare", "--fail-on-regression", "latest~1", "latest");
+        assertEquals(0, exitCode);
+        assertTrue(out.toString().contains("no change"));
+    }
+
+    @Test
+    public void testCompareImprovement() throws IOException {
+        writeRecord("20260101-000000-replay", "replay", 1_000_000, 100_000);
+        writeRecord("20260101-000100-replay", "replay", 500_000, 100_000);
+
+        exitCode = new CommandLine(new Main()).execute("compare", "--fail-on-regression", "latest~1", "latest");
+        assertEquals(0, exitCode);
+        assertTrue(out.toString().contains("improvement"));
+    }
+
+    @Test
+    public void testCompareDifferentKinds() throws IOException {
+        writeRecord("20260101-000000-replay", "replay", 1_000_000, 100_000);
+        writeRecord("20260101-000100-loadtest", "loadtest", 1_000_000, 100_000);
+
+        exitCode = new CommandLine(new Main()).execute("compare", "latest~1", "latest");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("Cannot compare a replay run with a loadtest run"));
+    }
+
+    @Test
+    public void testCompareUnknownRun() throws IOException {
+        writeRecord("20260101-000000-replay", "replay", 1_000_000, 100_000);
+
+        exitCode = new CommandLine(new Main()).execute("compare", "20260101-000000-replay", "20250101");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("No recorded run 20250101"));
+
+        exitCode = new CommandLine(new Main()).execute("compare", "latest~1", "latest");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("There are only 1 recorded runs"));
+    }
+}
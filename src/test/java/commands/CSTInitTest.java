@@ -1,6 +1,12 @@
 package commands;
 
 import br.unicamp.cst.cli.Main;
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import br.unicamp.cst.cli.data.ExecutionConfig;
+import br.unicamp.cst.cli.data.MemoryConfig;
+import br.unicamp.cst.cli.util.Constants;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,6 +16,7 @@ import picocli.CommandLine;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -22,6 +29,9 @@ public class CSTInitTest {
     @TempDir
     Path tempDir;
 
+    @TempDir
+    Path cstHome;
+
     String dirName;
     int exitCode;
     final PrintStream originalOut = System.out;
@@ -34,6 +44,7 @@ public class CSTInitTest {
     @BeforeEach
     public void setDir() {
         System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
         String[] dirs = tempDir.toString().split("/");
         dirName = dirs[dirs.length - 1];
     }
@@ -51,6 +62,7 @@ public class CSTInitTest {
         System.setOut(originalOut);
         System.setErr(originalErr);
         System.setIn(originalIn);
+        System.clearProperty("cst.home");
     }
 
     private void setInput(String data){
@@ -291,6 +303,9 @@ public class CSTInitTest {
         assertTrue(isApplication);
         assertTrue(hasCSTDependency);
         assertTrue(hasMainClassDefinition);
+        // Benchmarks only run in their own task
+        assertTrue(buildGradle.contains("tasks.register('benchmark', Test)"));
+        assertTrue(buildGradle.contains("systemProperty 'cst.benchmark', 'true'"));
     }
 
     @Test
@@ -452,6 +467,36 @@ public class CSTInitTest {
         assertPathsExists(expectedPaths);
     }
 
+    @Test
+    public void testGradleWrapperFromResourceCache() throws IOException {
+        initBasicTestProject();
+        assertEquals(0, exitCode);
+
+        Path cacheDir = cstHome.resolve("cache/" + Constants.CLI_VERSION);
+        Path wrapperJar = tempDir.resolve("gradle/wrapper/gradle-wrapper.jar");
+        assertTrue(Files.isExecutable(tempDir.resolve("gradlew")));
+        if (Files.getFileStore(tempDir).supportsFileAttributeView("posix"))
+            assertEquals("rwxr-xr-x", PosixFilePermissions.toString(Files.getPosixFilePermissions(tempDir.resolve("gradlew"))));
+        assertArrayEquals(Files.readAllBytes(cacheDir.resolve("gradle/gradle/wrapper/gradle-wrapper.jar")), Files.readAllBytes(wrapperJar));
+        assertTrue(Files.exists(cacheDir.resolve("gradle/gradle/wrapper/gradle-wrapper.properties")));
+    }
+
+    @Test
+    public void testRerunKeepsUnchangedFiles() throws IOException {
+        File configFile = createMockYAMLFile();
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+        File agentMind = new File(tempDir.toString(), "src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.setLastModified(1000));
+
+        exitCode = new CommandLine(new Main()).execute("init", "--overwrite", "--fsync", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+        assertEquals(1000, agentMind.lastModified());
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertTrue(files.noneMatch(f -> f.toString().endsWith(".tmp")));
+        }
+    }
+
     @Test
     public void testMemoryTypesInYAMLFile(){
         // Create a mock YAML config file
@@ -493,4 +538,592 @@ public class CSTInitTest {
         originalOut.println(out.toString());
     }
 
+    private File writeTmpFile(String name, String content) {
+        File file = new File(tempDir.toString(), name);
+        try {
+            FileWriter writer = new FileWriter(file);
+            writer.write(content);
+            writer.close();
+        } catch (IOException e) {
+            fail("Failed to create mock config file");
+        }
+        return file;
+    }
+
+    @Test
+    public void testIncludedConfigFragments() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                include: ["*.fragment.yaml"]
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object""");
+        writeTmpFile("motor.fragment.yaml", """
+                codelets:
+                  - name: MotorCodelet
+                    group: motor
+                    in: [MemTwo]
+                    out: []
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: motor
+                    name: MemTwo
+                    type: container""");
+        // Same definition as the root file, merged without conflict
+        writeTmpFile("shared.fragment.yaml", """
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("Codelet motorCodelet = new MotorCodelet();"));
+        assertTrue(agentMind.contains("motorCodelet.addInput(memTwo);"));
+        assertEquals(1, agentMind.split("Memory memOne =").length - 1);
+        assertPathsExists(List.of("/src/main/java/my/project/codelets/motor/MotorCodelet.java"));
+        try (Stream<Path> cached = Files.list(cstHome.resolve("cache/" + Constants.CLI_VERSION + "/fragments"))) {
+            assertEquals(3, cached.filter(f -> f.toString().endsWith(".bin")).count());
+        }
+    }
+
+    @Test
+    public void testConflictingConfigFragments() {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                include: [other.fragment.yaml]
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object""");
+        writeTmpFile("other.fragment.yaml", """
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: container""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("Memory 'MemOne' is defined differently in more than one file"));
+        assertTrue(out.toString().contains("other.fragment.yaml"));
+    }
+
+    @Test
+    public void testMetricsOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                metrics: true
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: []
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/metrics/AgentMetrics.java",
+                "/src/main/java/my/project/metrics/MeasuredCodelet.java",
+                "/src/test/java/my/project/metrics/MetricsOverheadTest.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.metrics.AgentMetrics;"));
+        assertTrue(agentMind.contains("agentMetrics = AgentMetrics.register(this, \"MyProject\");"));
+        assertTrue(agentMind.indexOf("AgentMetrics.register") < agentMind.indexOf("start();"));
+        assertTrue(agentMind.contains("public long getCycleCount()"));
+        String codelet = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java");
+        assertTrue(codelet.contains("public class TestCodelet extends MeasuredCodelet"));
+        assertTrue(codelet.contains("public void doProc()"));
+
+        assertTrue(ConfigParser.parseProjectToConfig().isMetrics());
+    }
+
+    @Test
+    public void testOnChangeTrigger() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: []
+                    broadcast: []
+                    trigger: onChange
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("testCodelet.setIsMemoryObserver(true);"));
+        assertTrue(agentMind.contains("memOne.addMemoryObserver(testCodelet);"));
+
+        assertTrue(ConfigParser.parseProjectToConfig().findCodelet("TestCodelet").orElseThrow().isTriggeredOnChange());
+    }
+
+    @Test
+    public void testCachedSkeletonOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--skeleton", "cached");
+        assertEquals(0, exitCode);
+
+        String codelet = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java");
+        assertTrue(codelet.contains("private boolean memoriesResolved;"));
+        assertTrue(codelet.indexOf("if (memoriesResolved)") < codelet.indexOf("MemOne = getInput(\"MemOne\");"));
+        assertTrue(codelet.contains("memoriesResolved = MemOne != null && MemTwo != null;"));
+        assertTrue(codelet.contains("private <T> T readMemOne()"));
+        assertTrue(codelet.contains("private double readMemOneAsDouble()"));
+        assertTrue(codelet.contains("private void updateMemTwo(Object value)"));
+        // Numbers stay boxed unless asked for, readers may cast them to Double
+        assertFalse(codelet.contains("private void updateMemTwo(double value)"));
+        assertPathsExists(List.of("/src/test/java/my/project/codelets/SkeletonOverheadTest.java"));
+        assertFalse(new File(tempDir.toString(), "src/main/java/my/project/memory/MutableNumber.java").exists());
+
+        // The wiring is still read from the lookups
+        assertTrue(ConfigParser.checkCodeletWiring(ConfigParser.parseProjectToConfig()).isEmpty());
+    }
+
+    @Test
+    public void testTraceOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--trace");
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/trace/MemoryTrace.java",
+                "/src/test/java/my/project/trace/TraceOverheadTest.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.trace.MemoryTrace;"));
+        assertTrue(agentMind.indexOf("MemoryTrace.open(\"MyProject\", getCodeRack().getAllCodelets().size());") < agentMind.indexOf("start();"));
+        String codelet = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java");
+        assertTrue(codelet.contains("private static final int TRACE_CODELET = MemoryTrace.codeletId(\"TestCodelet\");"));
+        assertTrue(codelet.contains("private static final int TRACE_MEM_ONE = MemoryTrace.memoryId(\"MemOne\");"));
+        assertTrue(codelet.contains("MemoryTrace.read(TRACE_CODELET, TRACE_MEM_ONE);"));
+        assertTrue(codelet.contains("MemoryTrace.write(TRACE_CODELET, TRACE_MEM_TWO);"));
+        // Tracing does not change what the codelet writes
+        assertFalse(codelet.contains("MutableNumber"));
+
+        assertTrue(ConfigParser.parseProjectToConfig().isTrace());
+    }
+
+    @Test
+    public void testMutableNumbersOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--mutable-numbers");
+        assertEquals(0, exitCode);
+
+        String codelet = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java");
+        assertTrue(codelet.contains("private void updateMemTwo(Object value)"));
+        assertTrue(codelet.contains("private void updateMemTwo(double value)"));
+        assertTrue(codelet.contains("private void updateMemTwo(long value)"));
+        assertTrue(codelet.contains("private final MutableNumber MemTwoDouble = MutableNumber.ofDouble();"));
+        assertPathsExists(List.of("/src/main/java/my/project/memory/MutableNumber.java"));
+    }
+
+    @Test
+    public void testCaptureOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--capture");
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/capture/InputCapture.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.capture.InputCapture;"));
+        // Input memories are found once every codelet is wired
+        int captureStart = agentMind.indexOf("InputCapture.start(this, \"MyProject\");");
+        assertTrue(agentMind.indexOf("insertCodelet(testCodelet);") < captureStart);
+        assertTrue(captureStart < agentMind.indexOf("start();", captureStart + 1));
+
+        assertTrue(ConfigParser.parseProjectToConfig().isCapture());
+    }
+
+    @Test
+    public void testExecutionOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--execution", "pool:4");
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/execution/CodeletExecutor.java",
+                "/src/test/java/my/project/execution/ExecutionBenchmarkTest.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.execution.CodeletExecutor;"));
+        assertTrue(agentMind.contains("codeletExecutor = CodeletExecutor.pool(this, 4);"));
+        assertFalse(agentMind.contains("        start();"));
+        assertTrue(agentMind.contains("codeletExecutor.close();"));
+        assertEquals(ExecutionConfig.pool(4), ConfigParser.parseProjectToConfig().getExecution());
+    }
+
+    @Test
+    public void testTickExecution() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                execution:
+                  tick: 20
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/execution/TickScheduler.java",
+                "/src/test/java/my/project/execution/TickSchedulerTest.java"));
+        assertFalse(Files.exists(tempDir.resolve("src/main/java/my/project/execution/CodeletExecutor.java")));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.execution.TickScheduler;"));
+        assertTrue(agentMind.contains("codeletExecutor = TickScheduler.start(this, 20);"));
+        assertFalse(agentMind.contains("        start();"));
+        assertEquals(ExecutionConfig.tick(20), ConfigParser.parseProjectToConfig().getExecution());
+    }
+
+    @Test
+    public void testFuseOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: Perception
+                    group: test
+                    in: [Sensor]
+                    out: [Percept]
+                    broadcast: []
+                  - name: Decision
+                    group: test
+                    in: [Percept]
+                    out: [Action]
+                    broadcast: []
+                  - name: Monitor
+                    group: test
+                    in: [Sensor, Action]
+                    out: []
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: Sensor
+                    type: object
+                  - content: null
+                    group: test
+                    name: Percept
+                    type: object
+                  - content: null
+                    group: test
+                    name: Action
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--fuse");
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/fusion/FusedCodelet.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.fusion.FusedCodelet;"));
+        assertTrue(agentMind.contains("new FusedCodelet(perception, decision);"));
+        assertFalse(agentMind.contains("insertCodelet(perception);"));
+        assertFalse(agentMind.contains("insertCodelet(decision);"));
+        // Monitor reads two memories, so it is not chained to Decision
+        assertTrue(agentMind.contains("insertCodelet(monitor);"));
+
+        AgentConfig parsed = ConfigParser.parseProjectToConfig();
+        assertTrue(parsed.isFusion());
+        assertEquals(List.of("Perception", "Decision", "Monitor"),
+                parsed.getCodelets().stream().map(CodeletConfig::getName).toList());
+        assertEquals(List.of("Percept"), parsed.getCodelets().get(1).getIn());
+    }
+
+    @Test
+    public void testFuseWithoutChains() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--fuse");
+        assertEquals(0, exitCode);
+
+        assertFalse(Files.exists(tempDir.resolve("src/main/java/my/project/fusion/FusedCodelet.java")));
+        assertTrue(readFileFromTmpDir("src/main/java/my/project/AgentMind.java").contains("insertCodelet(testCodelet);"));
+    }
+
+    @Test
+    public void testLockFreeOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: Writer
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo, Events]
+                    broadcast: []
+                  - name: Reader
+                    group: test
+                    in: [MemTwo]
+                    out: [Events]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object
+                  - content: null
+                    group: test
+                    name: Events
+                    type: counter""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--lock-free");
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/memory/SingleWriterMemory.java",
+                "/src/main/java/my/project/memory/StripedCounter.java",
+                "/src/test/java/my/project/memory/MemoryReadBenchmarkTest.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.memory.SingleWriterMemory;"));
+        assertTrue(agentMind.contains("memTwo = SingleWriterMemory.create(this, \"MemTwo\");"));
+        assertTrue(agentMind.contains("events = StripedCounter.create(this, \"Events\");"));
+        // Nothing in the agent writes MemOne
+        assertTrue(agentMind.contains("memOne = createMemoryObject(\"MemOne\");"));
+
+        AgentConfig parsed = ConfigParser.parseProjectToConfig();
+        assertTrue(parsed.isLockFree());
+        assertEquals(MemoryConfig.COUNTER_TYPE, parsed.findMemory("Events").get().getType());
+        assertEquals(MemoryConfig.OBJECT_TYPE, parsed.findMemory("MemTwo").get().getType());
+    }
+
+    @Test
+    public void testCheckpointOption() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString(), "--checkpoint");
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/checkpoint/Checkpoint.java",
+                "/src/test/java/my/project/checkpoint/CheckpointTest.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.checkpoint.Checkpoint;"));
+        // Contents are restored once the memories exist and before any codelet observes them
+        int restore = agentMind.indexOf("Checkpoint.restore(this, \"MyProject\");");
+        assertTrue(agentMind.indexOf("registerMemory(memTwo, \"test\");") < restore);
+        assertTrue(restore < agentMind.indexOf("testCodelet.addInput(memOne);"));
+
+        assertTrue(ConfigParser.parseProjectToConfig().isCheckpoint());
+    }
+
+    @Test
+    public void testQueueMemory() throws IOException {
+        File configFile = writeTmpFile("agent.yaml", """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: Camera
+                    group: test
+                    in: []
+                    out: [Frames]
+                    broadcast: []
+                  - name: Detector
+                    group: test
+                    in: [Frames]
+                    out: [Objects]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: Frames
+                    type: queue
+                    capacity: 256
+                    overflow: drop-oldest
+                  - content: null
+                    group: test
+                    name: Objects
+                    type: object""");
+
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        assertPathsExists(List.of("/src/main/java/my/project/memory/RingBufferMemory.java",
+                "/src/test/java/my/project/memory/RingBufferMemoryTest.java"));
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("import my.project.memory.RingBufferMemory;"));
+        // Camera is the only producer
+        assertTrue(agentMind.contains("frames = RingBufferMemory.create(this, \"Frames\", 256, RingBufferMemory.Overflow.DROP_OLDEST, true);"));
+        String detector = readFileFromTmpDir("src/main/java/my/project/codelets/test/Detector.java");
+        assertTrue(detector.contains("private final Object[] FramesBatch = new Object[RingBufferMemory.DEFAULT_BATCH];"));
+        assertTrue(detector.contains("int FramesCount = ((RingBufferMemory) Frames).drainTo(FramesBatch);"));
+
+        AgentConfig parsed = ConfigParser.parseProjectToConfig();
+        MemoryConfig frames = parsed.findMemory("Frames").get();
+        assertEquals(MemoryConfig.QUEUE_TYPE, frames.getType());
+        assertEquals(256, frames.getEffectiveCapacity());
+        assertEquals(MemoryConfig.DROP_OLDEST_OVERFLOW, frames.getEffectiveOverflow());
+    }
+
+    @Test
+    public void testExecutionOptionInvalid() {
+        exitCode = new CommandLine(new Main()).execute("init", "--project-name", "ProjectName", "--package", "project.name", "--execution", "pool");
+        assertEquals(2, exitCode);
+        assertFalse(Files.exists(tempDir.resolve("src")));
+    }
 }
@@ -0,0 +1,106 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+import br.unicamp.cst.cli.runtime.InspectorAgent;
+import br.unicamp.cst.cli.runtime.MindAccess;
+import br.unicamp.cst.cli.util.TemplatesBundle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTInspectTest {
+
+    @TempDir
+    Path tempDir;
+
+    @TempDir
+    Path cstHome;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.clearProperty("cst.home");
+    }
+
+    @Test
+    public void testInvalidProcess() throws IOException {
+        exitCode = new CommandLine(new Main()).execute("inspect", "not-a-pid");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("Could not attach to process not-a-pid"));
+
+        // The agent jar is prepared before attaching and reused afterwards
+        Path agentJar;
+        try (Stream<Path> cached = Files.list(cstHome.resolve("cache/0.2"))) {
+            agentJar = cached.filter(f -> f.getFileName().toString().startsWith("inspect-agent-")).findFirst().orElseThrow();
+        }
+        try (JarFile jar = new JarFile(agentJar.toFile())) {
+            assertEquals("br.unicamp.cst.cli.runtime.InspectorAgent", jar.getManifest().getMainAttributes().getValue("Agent-Class"));
+            assertNotNull(jar.getEntry("br/unicamp/cst/cli/runtime/InspectorAgent.class"));
+        }
+    }
+
+    @Test
+    public void testIntervalTooShort() {
+        exitCode = new CommandLine(new Main()).execute("inspect", "1", "--interval", "1");
+        assertEquals(2, exitCode);
+        assertTrue(err.toString().contains("--interval must be at least 10 milliseconds"));
+    }
+
+    @Test
+    public void testFindsCodeletsOfPoolExecution() throws Exception {
+        AgentClasspath classpath = TestAgents.compile(tempDir, Map.of(
+                "test.agent.AgentMind", TestAgents.pooledRelayAgentMind(10, 2),
+                "test.agent.codelets.relay.Relay", TestAgents.relayCodelet(1),
+                "test.agent.execution.CodeletExecutor", TemplatesBundle.getInstance().getTemplate("CodeletExecutorTemplate")
+                        .replace("{{rootPackage}}", TestAgents.PACKAGE)));
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        AgentInstance instance = runtime.start("inspect");
+        List<Object> relay = MindAccess.getCodelets(instance.getMind());
+        Class<?> executor = instance.getLoader().loadClass(TestAgents.PACKAGE + ".execution.CodeletExecutor");
+        try {
+            // The pool starts no CST timer, the codelets are only reached through the executor
+            assertFalse(InspectorAgent.findCodelets(new Class<?>[0]).containsAll(relay));
+            assertTrue(InspectorAgent.findCodelets(new Class<?>[]{executor}).containsAll(relay));
+        } finally {
+            runtime.shutDown();
+        }
+        // A closed executor runs nothing anymore
+        assertFalse(InspectorAgent.findCodelets(new Class<?>[]{executor}).containsAll(relay));
+    }
+}
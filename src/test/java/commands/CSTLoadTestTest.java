@@ -0,0 +1,109 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTLoadTestTest {
+
+    @TempDir
+    Path tempDir;
+
+    @TempDir
+    Path cstHome;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams() {
+        out.reset();
+        System.setOut(new PrintStream(out));
+    }
+
+    @AfterEach
+    public void restoreStreams() {
+        System.setOut(originalOut);
+        System.clearProperty("cst.home");
+    }
+
+    private void initProject(String codelets, String memories) throws IOException {
+        Path config = tempDir.resolve("agent.yaml");
+        Files.writeString(config, "projectName: MyProject\npackageName: my.project\ncodelets:\n" + codelets + "memories:\n" + memories);
+        exitCode = new CommandLine(new Main()).execute("init", "--file", config.toString());
+        assertEquals(0, exitCode);
+    }
+
+    @Test
+    public void testLoadTestOutsideProject() {
+        exitCode = new CommandLine(new Main()).execute("loadtest");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("No project found!"));
+    }
+
+    @Test
+    public void testLoadTestInvalidRate() {
+        exitCode = new CommandLine(new Main()).execute("loadtest", "--rate", "100", "--max-rate", "10");
+        assertEquals(2, exitCode);
+    }
+
+    @Test
+    public void testLoadTestWithoutSinks() throws IOException {
+        // Loop writes the memory it reads, nothing enters or leaves the agent
+        initProject("""
+                  - name: Loop
+                    group: test
+                    in: [State]
+                    out: [State]
+                    broadcast: []
+                """, """
+                  - name: State
+                    group: test
+                    type: object
+                """);
+
+        exitCode = new CommandLine(new Main()).execute("loadtest");
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("it has 0 and 0"));
+    }
+
+    @Test
+    public void testLoadTestValuesForUnknownSource() throws IOException {
+        initProject("""
+                  - name: Relay
+                    group: test
+                    in: [Input]
+                    out: [Output]
+                    broadcast: []
+                """, """
+                  - name: Input
+                    group: test
+                    type: object
+                  - name: Output
+                    group: test
+                    type: object
+                """);
+        Path values = Files.writeString(tempDir.resolve("values.txt"), "1\n2\n");
+
+        exitCode = new CommandLine(new Main()).execute("loadtest", "--values", "Output=" + values);
+        assertEquals(2, exitCode);
+    }
+}
@@ -0,0 +1,87 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTReplayTest {
+
+    @TempDir
+    Path tempDir;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+    }
+
+    /**
+     * Same layout as the InputCapture generated by init --capture
+     */
+    private Path writeCapture() throws IOException {
+        Path file = tempDir.resolve("agent.cst-capture");
+        try (DataOutputStream capture = new DataOutputStream(Files.newOutputStream(file))) {
+            capture.write("CSTCAPTR".getBytes(StandardCharsets.US_ASCII));
+            capture.writeInt(1);
+            capture.writeLong(0);
+            capture.writeUTF("MyProject");
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(value)) {
+                objects.writeObject(42.0);
+            }
+            capture.writeLong(1_000);
+            capture.writeUTF("MemOne");
+            capture.writeInt(value.size());
+            capture.write(value.toByteArray());
+        }
+        return file;
+    }
+
+    @Test
+    public void testReplayOutsideProject() throws IOException {
+        Path file = writeCapture();
+
+        exitCode = new CommandLine(new Main()).execute("replay", file.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("No project found!"));
+    }
+
+    @Test
+    public void testReplayNotACapture() throws IOException {
+        Path file = tempDir.resolve("agent.yaml");
+        Files.writeString(file, "projectName: MyProject\n");
+
+        exitCode = new CommandLine(new Main()).execute("replay", "--max-speed", file.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("Could not read capture " + file + ": Not a CST input capture"));
+    }
+}
@@ -2,7 +2,9 @@ package commands;
 
 import br.unicamp.cst.cli.Main;
 import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.BinaryConfigFormat;
 import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,11 +15,14 @@ import org.yaml.snakeyaml.constructor.Constructor;
 import picocli.CommandLine;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,6 +31,9 @@ public class CSTSaveTest {
     @TempDir
     Path tempDir;
 
+    @TempDir
+    Path cstHome;
+
     String dirName;
     int exitCode;
     final PrintStream originalOut = System.out;
@@ -61,6 +69,7 @@ public class CSTSaveTest {
     @BeforeEach
     public void setDir() {
         System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
         String[] dirs = tempDir.toString().split("/");
         dirName = dirs[dirs.length - 1];
     }
@@ -78,6 +87,7 @@ public class CSTSaveTest {
         System.setOut(originalOut);
         System.setErr(originalErr);
         System.setIn(originalIn);
+        System.clearProperty("cst.home");
     }
 
     private void setInput(String data){
@@ -133,4 +143,135 @@ public class CSTSaveTest {
 
         assertEquals(originalAgentConfig.toString(), newAgentConfig.toString());
     }
+
+    @Test
+    public void testCheckWiring() throws IOException {
+        File configFile = createMockYAMLFile();
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        exitCode = new CommandLine(new Main()).execute("save", "--check-wiring");
+        assertEquals(0, exitCode);
+
+        File codeletFile = new File(tempDir.toString(), "src/main/java/my/project/codelets/test/TestCodelet.java");
+        String codelet = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java")
+                .replace("getInput(\"MemOne\")", "getInput(\"MemUnknown\")");
+        FileWriter writer = new FileWriter(codeletFile);
+        writer.write(codelet);
+        writer.close();
+
+        err.reset();
+        exitCode = new CommandLine(new Main()).execute("save", "--check-wiring");
+        assertEquals(1, exitCode);
+        assertTrue(err.toString().contains("CODELET[TestCodelet]: reads 'MemUnknown' but it is not wired as input"));
+        assertTrue(err.toString().contains("CODELET[TestCodelet]: input 'MemOne' is wired but never accessed"));
+    }
+
+    @Test
+    public void testSaveBinaryFormat() throws IOException {
+        File configFile = createMockYAMLFile();
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        File binaryFile = new File(tempDir.toString(), "config.bin");
+        exitCode = new CommandLine(new Main()).execute("save", "--format", "bin", "--out", binaryFile.toString());
+        assertEquals(0, exitCode);
+        assertTrue(BinaryConfigFormat.isBinary(binaryFile.toPath()));
+
+        Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, new LoaderOptions()));
+        AgentConfig originalAgentConfig = yamlParser.load(yamlConfig);
+        AgentConfig binaryAgentConfig = ConfigParser.parseConfigFile(binaryFile);
+        assertEquals(originalAgentConfig.toString(), binaryAgentConfig.toString());
+
+        // YAML -> binary -> YAML must not lose anything
+        AgentConfig roundTrip = BinaryConfigFormat.decode(ByteBuffer.wrap(BinaryConfigFormat.encode(originalAgentConfig)));
+        assertEquals(originalAgentConfig.toYaml(), roundTrip.toYaml());
+    }
+
+    @Test
+    public void testSaveUnfuse() throws IOException {
+        yamlConfig = """
+                projectName: MyProject
+                packageName: my.project
+                fusion: true
+                codelets:
+                  - name: First
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                  - name: Second
+                    group: test
+                    in: [MemTwo]
+                    out: [MemThree]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemThree
+                    type: object""";
+        File configFile = createMockYAMLFile();
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        exitCode = new CommandLine(new Main()).execute("save", "--out", tempDir + "/fused.yaml");
+        assertEquals(0, exitCode);
+        assertTrue(readFileFromTmpDir("fused.yaml").contains("fusion: true"));
+
+        exitCode = new CommandLine(new Main()).execute("save", "--unfuse", "--out", tempDir + "/unfused.yaml");
+        assertEquals(0, exitCode);
+
+        Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, new LoaderOptions()));
+        AgentConfig unfused = yamlParser.load(readFileFromTmpDir("unfused.yaml"));
+        AgentConfig original = yamlParser.load(yamlConfig);
+        original.setFusion(false);
+        assertFalse(unfused.isFusion());
+        assertEquals(original.toString(), unfused.toString());
+    }
+
+    @Test
+    public void testBinaryFormatRequiresOutputFile() {
+        exitCode = new CommandLine(new Main()).execute("save", "--format", "bin");
+        assertNotEquals(0, exitCode);
+    }
+
+    @Test
+    public void testCorruptedBinaryConfig() {
+        Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, new LoaderOptions()));
+        byte[] encoded = BinaryConfigFormat.encode(yamlParser.load(yamlConfig));
+        encoded[encoded.length - 1] ^= 0x01;
+        assertThrows(IOException.class, () -> BinaryConfigFormat.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    public void testInvalidValueInBinaryConfig() {
+        Yaml yamlParser = new Yaml(new Constructor(AgentConfig.class, new LoaderOptions()));
+        byte[] encoded = BinaryConfigFormat.encode(yamlParser.load(yamlConfig));
+        byte[] type = "container".getBytes(StandardCharsets.UTF_8);
+        int at = indexOf(encoded, type);
+        assertTrue(at > 0);
+        System.arraycopy("cupboards".getBytes(StandardCharsets.UTF_8), 0, encoded, at, type.length);
+        // A well formed file with a bad value, so the checksum has to match the edited body
+        CRC32 crc = new CRC32();
+        crc.update(encoded, 16, encoded.length - 16);
+        ByteBuffer.wrap(encoded).putInt(12, (int) crc.getValue());
+
+        IOException e = assertThrows(IOException.class, () -> BinaryConfigFormat.decode(ByteBuffer.wrap(encoded)));
+        assertEquals("Invalid binary config: memory MemTwo has unknown type 'cupboards'", e.getMessage());
+    }
+
+    private static int indexOf(byte[] array, byte[] target) {
+        for (int i = 0; i + target.length <= array.length; i++)
+            if (Arrays.equals(array, i, i + target.length, target, 0, target.length))
+                return i;
+        return -1;
+    }
 }
@@ -0,0 +1,238 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import br.unicamp.cst.cli.data.AgentConfig;
+import br.unicamp.cst.cli.data.CodeletConfig;
+import br.unicamp.cst.cli.data.ConfigParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTSyncTest {
+
+    @TempDir
+    Path tempDir;
+
+    @TempDir
+    Path cstHome;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final InputStream originalIn = System.in;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    String yamlConfig = """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: [MemThree]
+                  - name: OldCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemThree]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: container
+                  - content: null
+                    group: test
+                    name: MemThree
+                    type: object""";
+
+    String changedYamlConfig = """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne, MemFour]
+                    out: [MemTwo]
+                    broadcast: []
+                  - name: NewCodelet
+                    group: motor
+                    in: [MemFour]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: container
+                  - content: null
+                    group: motor
+                    name: MemFour
+                    type: object""";
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+        System.setProperty("cst.home", cstHome.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.setIn(originalIn);
+        System.clearProperty("cst.home");
+    }
+
+    private String readFileFromTmpDir(String file) throws IOException {
+        return Files.lines(new File(tempDir.toString(), file).toPath()).collect(Collectors.joining("\n"));
+    }
+
+    private File writeConfig(String name, String content) {
+        File configFile = new File(tempDir.toString(), name);
+        try {
+            FileWriter writer = new FileWriter(configFile);
+            writer.write(content);
+            writer.close();
+        } catch (IOException e) {
+            fail("Failed to create mock config file");
+        }
+        return configFile;
+    }
+
+    @Test
+    public void testCheckWithoutDrift() {
+        File configFile = writeConfig("test_config.yaml", yamlConfig);
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        exitCode = new CommandLine(new Main()).execute("sync", "--check", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+    }
+
+    @Test
+    public void testCheckWithDrift() throws IOException {
+        File configFile = writeConfig("test_config.yaml", yamlConfig);
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+        String agentMindBefore = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+
+        File changedConfig = writeConfig("changed_config.yaml", changedYamlConfig);
+        exitCode = new CommandLine(new Main()).execute("sync", "--check", "--file", changedConfig.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("+ codelet NewCodelet"));
+        assertTrue(out.toString().contains("- codelet OldCodelet"));
+        assertTrue(out.toString().contains("~ codelet TestCodelet"));
+        assertEquals(agentMindBefore, readFileFromTmpDir("src/main/java/my/project/AgentMind.java"));
+    }
+
+    @Test
+    public void testCheckWithFeatureDrift() throws IOException {
+        File configFile = writeConfig("test_config.yaml", yamlConfig);
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        File changedConfig = writeConfig("changed_config.yaml", "metrics: true\n" + yamlConfig);
+        exitCode = new CommandLine(new Main()).execute("sync", "--check", "--file", changedConfig.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("~ feature metrics enabled"));
+        assertFalse(out.toString().contains("Project is in sync"));
+
+        exitCode = new CommandLine(new Main()).execute("sync", "--file", changedConfig.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("cst init --overwrite"));
+    }
+
+    @Test
+    public void testSyncChangesQueueCapacity() throws IOException {
+        String queueConfig = """
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: Relay
+                    group: test
+                    in: [Input]
+                    out: [Messages]
+                    broadcast: []
+                memories:
+                  - name: Input
+                    group: test
+                    type: object
+                  - name: Messages
+                    group: test
+                    type: queue
+                    capacity: 64""";
+        File configFile = writeConfig("test_config.yaml", queueConfig);
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+
+        File changedConfig = writeConfig("changed_config.yaml", queueConfig.replace("capacity: 64", "capacity: 128\n    overflow: drop-oldest"));
+        exitCode = new CommandLine(new Main()).execute("sync", "--check", "--file", changedConfig.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("~ memory Messages"));
+
+        exitCode = new CommandLine(new Main()).execute("sync", "--file", changedConfig.toString());
+        assertEquals(0, exitCode);
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertTrue(agentMind.contains("128"));
+        assertTrue(agentMind.contains("DROP_OLDEST"));
+
+        exitCode = new CommandLine(new Main()).execute("sync", "--check", "--file", changedConfig.toString());
+        assertEquals(0, exitCode);
+    }
+
+    @Test
+    public void testSyncAppliesChanges() throws IOException {
+        File configFile = writeConfig("test_config.yaml", yamlConfig);
+        exitCode = new CommandLine(new Main()).execute("init", "--file", configFile.toString());
+        assertEquals(0, exitCode);
+        String oldCodeletSource = readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java");
+
+        File changedConfig = writeConfig("changed_config.yaml", changedYamlConfig);
+        exitCode = new CommandLine(new Main()).execute("sync", "--file", changedConfig.toString());
+        assertEquals(0, exitCode);
+
+        String agentMind = readFileFromTmpDir("src/main/java/my/project/AgentMind.java");
+        assertFalse(agentMind.contains("memThree"));
+        assertFalse(agentMind.contains("OldCodelet"));
+        assertTrue(agentMind.contains("testCodelet.addInput(memFour);"));
+        assertTrue(agentMind.contains("Codelet newCodelet = new NewCodelet();"));
+        assertTrue(new File(tempDir.toString(), "src/main/java/my/project/codelets/motor/NewCodelet.java").exists());
+        assertEquals(oldCodeletSource, readFileFromTmpDir("src/main/java/my/project/codelets/test/TestCodelet.java"));
+
+        AgentConfig agentConfig = ConfigParser.parseProjectToConfig();
+        CodeletConfig testCodelet = agentConfig.findCodelet("TestCodelet").orElseThrow();
+        assertEquals(List.of("MemOne", "MemFour"), testCodelet.getIn());
+        assertTrue(testCodelet.getBroadcast().isEmpty());
+
+        exitCode = new CommandLine(new Main()).execute("sync", "--check", "--file", changedConfig.toString());
+        assertEquals(0, exitCode);
+    }
+}
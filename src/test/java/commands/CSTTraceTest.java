@@ -0,0 +1,134 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTTraceTest {
+
+    private static final int NAMES_SIZE = 256;
+    private static final int SLOT_RECORDS = 4;
+    private static final int SLOT_SIZE = 64 + SLOT_RECORDS * 16;
+
+    @TempDir
+    Path tempDir;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+    }
+
+    /**
+     * Same layout as the MemoryTrace generated by init --trace: a writer thread updates MemOne
+     * three times and a reader thread reads it after the first and the last update.
+     */
+    private Path writeTrace() throws IOException {
+        ByteBuffer trace = ByteBuffer.allocate(128 + NAMES_SIZE + 2 * SLOT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        trace.put(0, "CSTTRACE".getBytes(StandardCharsets.US_ASCII));
+        trace.putInt(8, 1);
+        trace.putInt(12, 2);
+        trace.putInt(16, SLOT_RECORDS);
+        trace.putInt(20, 16);
+        trace.putLong(24, 0);
+        trace.putInt(32, NAMES_SIZE);
+
+        int names = 128;
+        names = putName(trace, names, 0, 1, "Writer");
+        names = putName(trace, names, 0, 2, "Reader");
+        names = putName(trace, names, 1, 1, "MemOne");
+        trace.putInt(36, names - 128);
+
+        int writer = 128 + NAMES_SIZE;
+        putSlot(trace, writer, "writer-thread", 3);
+        putRecord(trace, writer, 0, 1_000, 1, 1, 2);
+        putRecord(trace, writer, 1, 5_000, 1, 1, 2);
+        putRecord(trace, writer, 2, 9_000, 1, 1, 2);
+        int reader = writer + SLOT_SIZE;
+        putSlot(trace, reader, "reader-thread", 3);
+        putRecord(trace, reader, 0, 1_500, 2, 1, 1);
+        putRecord(trace, reader, 1, 1_700, 2, 1, 1);
+        putRecord(trace, reader, 2, 9_100, 2, 1, 1);
+
+        Path file = tempDir.resolve("agent.cst-trace");
+        Files.write(file, trace.array());
+        return file;
+    }
+
+    private static int putName(ByteBuffer trace, int at, int kind, int id, String name) {
+        trace.put(at, (byte) kind);
+        trace.putShort(at + 1, (short) id);
+        trace.putShort(at + 3, (short) name.length());
+        trace.put(at + 5, name.getBytes(StandardCharsets.UTF_8));
+        return at + 5 + name.length();
+    }
+
+    private static void putSlot(ByteBuffer trace, int slot, String thread, long written) {
+        trace.putLong(slot, written);
+        trace.putInt(slot + 8, thread.length());
+        trace.put(slot + 12, thread.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void putRecord(ByteBuffer trace, int slot, int index, long nanos, int codelet, int memory, int access) {
+        int at = slot + 64 + index * 16;
+        trace.putLong(at, nanos);
+        trace.putShort(at + 8, (short) codelet);
+        trace.putShort(at + 10, (short) memory);
+        trace.put(at + 12, (byte) access);
+    }
+
+    @Test
+    public void testAnalyze() throws IOException {
+        Path file = writeTrace();
+
+        exitCode = new CommandLine(new Main()).execute("trace", "analyze", file.toString());
+        assertEquals(0, exitCode);
+        String output = out.toString();
+        assertTrue(output.contains("6 accesses by 2 threads over 8.1 us"));
+        String memOne = output.lines().filter(l -> l.startsWith("MemOne")).findFirst().orElseThrow();
+        // Reads after the first and the last write arrive 500 and 100 ns late, the second write is never read
+        assertArrayEquals(new String[]{"MemOne", "3", "3", "370370.4", "370370.4", "100", "ns", "500", "ns", "500", "ns", "700", "ns", "1"},
+                memOne.trim().split("\\s+"));
+    }
+
+    @Test
+    public void testAnalyzeNotATrace() throws IOException {
+        Path file = tempDir.resolve("agent.yaml");
+        Files.writeString(file, "projectName: MyProject\n".repeat(10));
+
+        exitCode = new CommandLine(new Main()).execute("trace", "analyze", file.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("Not a CST memory trace"));
+    }
+}
@@ -0,0 +1,178 @@
+package commands;
+
+import br.unicamp.cst.cli.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CSTValidateTest {
+
+    @TempDir
+    Path tempDir;
+
+    int exitCode;
+    final PrintStream originalOut = System.out;
+    final PrintStream originalErr = System.err;
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    public void setDir() {
+        System.setProperty("user.dir", tempDir.toString());
+    }
+
+    @BeforeEach
+    public void setUpStreams(){
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+    }
+
+    @AfterEach
+    public void restoreStreams(){
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+    }
+
+    private File writeConfig(String content) {
+        File configFile = new File(tempDir.toString(), "test_config.yaml");
+        try {
+            FileWriter writer = new FileWriter(configFile);
+            writer.write(content);
+            writer.close();
+        } catch (IOException e) {
+            fail("Failed to create mock config file");
+        }
+        return configFile;
+    }
+
+    @Test
+    public void testValidConfig() {
+        File configFile = writeConfig("""
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne]
+                    out: [MemTwo]
+                    broadcast: []
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: container""");
+
+        exitCode = new CommandLine(new Main()).execute("validate", configFile.toString());
+        assertEquals(0, exitCode);
+        assertEquals("test_config.yaml is valid\n", out.toString());
+    }
+
+    @Test
+    public void testReportsAllProblemsWithLines() {
+        File configFile = writeConfig("""
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: [MemOne, MemMissing]
+                    out: [MemTwo]
+                  - name: class
+                    group: ""
+                memories:
+                  - content: null
+                    group: test
+                    name: MemOne
+                    type: object
+                  - content: null
+                    group: test
+                    name: MEMONE
+                    type: object
+                  - content: null
+                    group: test
+                    name: MemTwo
+                    type: invalid""");
+
+        exitCode = new CommandLine(new Main()).execute("validate", configFile.toString());
+        assertEquals(1, exitCode);
+        String output = out.toString();
+        assertTrue(output.contains("test_config.yaml:line 4: CODELET[TestCodelet]: 'in' references undeclared memory 'MemMissing'"));
+        assertTrue(output.contains("test_config.yaml:line 8: CODELET[class]: 'class' is not a valid Java class name"));
+        assertTrue(output.contains("test_config.yaml:line 8: CODELET[class]: group must not be empty"));
+        assertTrue(output.contains("test_config.yaml:line 15: MEMORY[MEMONE]: name differs only in case from 'MemOne' (line 11)"));
+        assertTrue(output.contains("test_config.yaml:line 22: MEMORY[MemTwo]: Memory type should be 'object', 'container', 'counter' or 'queue'"));
+        assertTrue(output.contains("5 problem(s) found"));
+    }
+
+    @Test
+    public void testTriggers() {
+        File configFile = writeConfig("""
+                projectName: MyProject
+                packageName: my.project
+                codelets:
+                  - name: TestCodelet
+                    group: test
+                    in: []
+                    out: []
+                    trigger: onChange
+                  - name: OtherCodelet
+                    group: test
+                    trigger: sometimes""");
+
+        exitCode = new CommandLine(new Main()).execute("validate", configFile.toString());
+        assertEquals(1, exitCode);
+        String output = out.toString();
+        assertTrue(output.contains("test_config.yaml:line 4: CODELET[TestCodelet]: 'onChange' trigger needs at least one 'in' memory"));
+        assertTrue(output.contains("test_config.yaml:line 11: CODELET[OtherCodelet]: trigger should be 'periodic' or 'onChange'"));
+        assertTrue(output.contains("2 problem(s) found"));
+    }
+
+    @Test
+    public void testExecution() {
+        File configFile = writeConfig("""
+                projectName: MyProject
+                packageName: my.project
+                execution:
+                  pool: 0
+                  threads: 4""");
+
+        exitCode = new CommandLine(new Main()).execute("validate", configFile.toString());
+        assertEquals(1, exitCode);
+        String output = out.toString();
+        assertTrue(output.contains("test_config.yaml:line 4: A pool needs a number of threads of at least 1"));
+        assertTrue(output.contains("test_config.yaml:line 5: Unknown execution property 'threads'"));
+
+        configFile = writeConfig("""
+                projectName: MyProject
+                packageName: my.project
+                execution:
+                  tick: 10
+                  pool: 4""");
+        out.reset();
+        exitCode = new CommandLine(new Main()).execute("validate", configFile.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("test_config.yaml:line 5: Execution takes either 'pool' or 'tick', not both"));
+
+        configFile = writeConfig("""
+                projectName: MyProject
+                packageName: my.project
+                execution: fibers""");
+        out.reset();
+        exitCode = new CommandLine(new Main()).execute("validate", configFile.toString());
+        assertEquals(1, exitCode);
+        assertTrue(out.toString().contains("test_config.yaml:line 3: Execution should be 'platform', 'virtual', 'pool: N' or 'tick'"));
+    }
+}
@@ -0,0 +1,67 @@
+package commands;
+
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.AgentRuntime.AgentInstance;
+import br.unicamp.cst.cli.runtime.HotReloader;
+import br.unicamp.cst.cli.runtime.MindAccess;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotReloaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Object memory(AgentInstance instance, String name) throws Exception {
+        for (Object memory : MindAccess.getMemories(instance.getMind())) {
+            if (name.equals(memory.getClass().getMethod("getName").invoke(memory)))
+                return memory;
+        }
+        throw new AssertionError("No memory " + name);
+    }
+
+    @Test
+    public void testReloadSwapsCodeletsOnlyWhenTheyCompile() throws Exception {
+        AgentClasspath classpath = TestAgents.compile(tempDir, Map.of(
+                "test.agent.AgentMind", TestAgents.relayAgentMind(10),
+                "test.agent.codelets.relay.Relay", TestAgents.relayCodelet(0)));
+        Path source = classpath.getCodeletsSourceDir().resolve("relay/Relay.java");
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        try {
+            AgentInstance instance = runtime.start("reload");
+            HotReloader reloader = new HotReloader(classpath, instance);
+            List<Object> codelets = MindAccess.getCodelets(instance.getMind());
+
+            Files.writeString(source, TestAgents.relayCodelet(0).replace("extends Codelet {", "extends Codelet {\n    int missing = ;"));
+            assertFalse(reloader.reload(List.of(source)));
+            assertEquals(codelets, MindAccess.getCodelets(instance.getMind()));
+
+            Files.writeString(source, TestAgents.relayCodelet(0));
+            assertTrue(reloader.reload(List.of(source)));
+            List<Object> reloaded = MindAccess.getCodelets(instance.getMind());
+            assertEquals(1, reloaded.size());
+            assertNotSame(codelets.get(0), reloaded.get(0));
+            assertEquals(codelets.get(0).getClass().getName(), reloaded.get(0).getClass().getName());
+            assertNotSame(codelets.get(0).getClass(), reloaded.get(0).getClass());
+
+            // The replacement is wired to the same memories and keeps relaying
+            Object input = memory(instance, "Input");
+            Object output = memory(instance, "Output");
+            input.getClass().getMethod("setI", Object.class).invoke(input, 42L);
+            long deadline = System.nanoTime() + 2_000_000_000L;
+            while (!Long.valueOf(42).equals(output.getClass().getMethod("getI").invoke(output)) && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(42L, output.getClass().getMethod("getI").invoke(output));
+        } finally {
+            runtime.shutDown();
+        }
+    }
+}
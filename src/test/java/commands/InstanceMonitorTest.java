@@ -0,0 +1,59 @@
+package commands;
+
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.InstanceMonitor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstanceMonitorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> threadNames() {
+        return Thread.getAllStackTraces().keySet().stream().map(Thread::getName).toList();
+    }
+
+    @Test
+    public void testReportPerInstance() throws Exception {
+        AgentClasspath classpath = TestAgents.compile(tempDir, Map.of(
+                "test.agent.AgentMind", TestAgents.relayAgentMind(10),
+                "test.agent.codelets.relay.Relay", TestAgents.relayCodelet(1)));
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        try {
+            runtime.start("alpha");
+            runtime.start("beta");
+            InstanceMonitor monitor = new InstanceMonitor(runtime);
+            monitor.nameThreads();
+            monitor.nameThreads();
+
+            // The timer threads of each instance carry its name once, threads of the CLI keep theirs
+            List<String> names = threadNames();
+            assertTrue(names.stream().anyMatch(name -> name.startsWith("alpha/")));
+            assertTrue(names.stream().anyMatch(name -> name.startsWith("beta/")));
+            assertTrue(names.stream().noneMatch(name -> name.startsWith("alpha/alpha/")));
+            assertTrue(names.contains(Thread.currentThread().getName()));
+
+            Thread.sleep(100);
+            List<String> report = monitor.report();
+            assertTrue(report.get(0).contains("cycles/s"));
+            assertTrue(report.get(1).startsWith("alpha"));
+            assertTrue(report.get(2).startsWith("beta"));
+            assertTrue(report.get(3).startsWith("total"));
+            // The relay agent counts no cycles, its rows show none and the report tells how to get them
+            assertTrue(report.get(1).trim().endsWith("-"));
+            assertTrue(report.stream().anyMatch(line -> line.equals(
+                    "cycles/s: alpha, beta count no cycles, generate the project with 'cst init --metrics'")));
+            assertTrue(report.stream().noneMatch(line -> line.startsWith("threads:")));
+        } finally {
+            runtime.shutDown();
+        }
+    }
+}
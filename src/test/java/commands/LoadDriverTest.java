@@ -0,0 +1,54 @@
+package commands;
+
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+import br.unicamp.cst.cli.runtime.AgentRuntime;
+import br.unicamp.cst.cli.runtime.LoadDriver;
+import br.unicamp.cst.cli.runtime.LoadDriver.Step;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadDriverTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLatencyFollowsProcessingNotTimeStep() throws Exception {
+        // Relay rewrites Output every cycle, it takes 100 ms to copy an input and runs every 10 ms
+        AgentClasspath classpath = TestAgents.compile(tempDir, Map.of(
+                "test.agent.AgentMind", TestAgents.relayAgentMind(10),
+                "test.agent.codelets.relay.Relay", TestAgents.relayCodelet(100)));
+        AgentRuntime runtime = new AgentRuntime(classpath);
+        try {
+            LoadDriver driver = new LoadDriver(runtime.start("loadtest"), List.of("Input"), List.of("Output"), Map.of());
+            Step step = driver.run(20, TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(1));
+
+            assertTrue(step.getLatency().getCount() > 0);
+            // Stale rewrites answer nothing, every answer comes after a cycle that read the input
+            assertTrue(step.getLatency().percentile(0) >= TimeUnit.MILLISECONDS.toNanos(100),
+                    "fastest answer " + step.getLatency().percentile(0) + " ns");
+            assertEquals(step.getLatency().getCount(), step.getSinkUpdates());
+            // Inputs arrive faster than the relay copies them, it skips the ones overwritten meanwhile
+            assertTrue(step.getSuperseded() > 0);
+            assertEquals(0, step.getLost());
+            assertEquals(step.getSent(), step.getLatency().getCount() + step.getSuperseded());
+
+            // Output is both the sink and the output of Relay, the codelet reacts with the sink
+            assertEquals(List.of("Relay"), List.copyOf(step.getCodelets().keySet()));
+            assertEquals(step.getLatency().getCount(), step.getCodelets().get("Relay").getCount());
+            double[] rates = step.getRateSamples();
+            assertTrue(rates.length > 1);
+            assertEquals(step.getAchievedRate(), Arrays.stream(rates).average().orElse(0), 1e-6 * step.getAchievedRate());
+        } finally {
+            runtime.shutDown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package commands;
+
+import br.unicamp.cst.cli.runtime.AgentClasspath;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Small agents for the tests that run them inside the CLI JVM. The CLI does not depend on CST, the
+ * test task passes the CST core classpath in cst.test.classpath and the sources are compiled
+ * against it, laid out like a built project.
+ */
+public class TestAgents {
+
+    public static final String PACKAGE = "test.agent";
+
+    /**
+     * A periodic codelet of group relay copying Input to Output, {@code millis} after reading it.
+     */
+    public static String relayCodelet(long millis) {
+        return """
+                package test.agent.codelets.relay;
+
+                import br.unicamp.cst.core.entities.Codelet;
+
+                public class Relay extends Codelet {
+                    @Override
+                    public void accessMemoryObjects() {
+                    }
+
+                    @Override
+                    public void calculateActivation() {
+                    }
+
+                    @Override
+                    public void proc() {
+                        Object value = getInput("Input").getI();
+                        try {
+                            Thread.sleep(%d);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        getOutput("Output").setI(value);
+                    }
+                }
+                """.formatted(millis);
+    }
+
+    /**
+     * An AgentMind running one Relay every {@code timeStep} ms between the Input and Output memories.
+     */
+    public static String relayAgentMind(long timeStep) {
+        return """
+                package test.agent;
+
+                import br.unicamp.cst.core.entities.Codelet;
+                import br.unicamp.cst.core.entities.Memory;
+                import br.unicamp.cst.core.entities.Mind;
+                import test.agent.codelets.relay.Relay;
+
+                public class AgentMind extends Mind {
+                    AgentMind() {
+                        super();
+                        Memory input = createMemoryObject("Input", -1L);
+                        Memory output = createMemoryObject("Output", -1L);
+                        Codelet relay = new Relay();
+                        relay.addInput(input);
+                        relay.addOutput(output);
+                        relay.setTimeStep(%d);
+                        insertCodelet(relay);
+                        start();
+                    }
+                }
+                """.formatted(timeStep);
+    }
+
+    /**
+     * An AgentMind running one Relay every {@code timeStep} ms on a pool of {@code threads} threads of
+     * the generated CodeletExecutor, which must be compiled with it, instead of a CST timer.
+     */
+    public static String pooledRelayAgentMind(long timeStep, int threads) {
+        return """
+                package test.agent;
+
+                import br.unicamp.cst.core.entities.Codelet;
+                import br.unicamp.cst.core.entities.Memory;
+                import br.unicamp.cst.core.entities.Mind;
+                import test.agent.codelets.relay.Relay;
+                import test.agent.execution.CodeletExecutor;
+
+                public class AgentMind extends Mind {
+                    private CodeletExecutor codeletExecutor;
+
+                    AgentMind() {
+                        super();
+                        Memory input = createMemoryObject("Input", -1L);
+                        Memory output = createMemoryObject("Output", -1L);
+                        Codelet relay = new Relay();
+                        relay.addInput(input);
+                        relay.addOutput(output);
+                        relay.setTimeStep(%d);
+                        insertCodelet(relay);
+                        codeletExecutor = CodeletExecutor.pool(this, %d);
+                    }
+
+                    public CodeletExecutor getCodeletExecutor() {
+                        return codeletExecutor;
+                    }
+
+                    @Override
+                    public void shutDown() {
+                        codeletExecutor.close();
+                        super.shutDown();
+                    }
+                }
+                """.formatted(timeStep, threads);
+    }
+
+    /**
+     * Writes the sources, given by class name, under src/main/java of {@code projectRoot} and compiles
+     * them to build/classes/java/main. Skips the test outside the test task.
+     */
+    public static AgentClasspath compile(Path projectRoot, Map<String, String> sources) throws IOException {
+        String cst = System.getProperty("cst.test.classpath");
+        assumeTrue(cst != null && !cst.isBlank(), "Runs in the Gradle test task, which sets cst.test.classpath");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeTrue(compiler != null, "Needs a JDK");
+
+        List<Path> libraries = Arrays.stream(cst.split(File.pathSeparator)).map(Path::of).toList();
+        Path classesDir = Files.createDirectories(projectRoot.resolve("build/classes/java/main"));
+        AgentClasspath classpath = new AgentClasspath(projectRoot, PACKAGE, libraries, classesDir);
+        List<String> arguments = new ArrayList<>(List.of("-d", classesDir.toString(), "-classpath", classpath.getClasspathString()));
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            Path file = classpath.getProjectRoot().resolve("src/main/java").resolve(source.getKey().replace('.', '/') + ".java");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, source.getValue());
+            arguments.add(file.toString());
+        }
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        assertEquals(0, compiler.run(null, null, errors, arguments.toArray(String[]::new)), errors.toString());
+        return classpath;
+    }
+}